@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.embeddable.CommandResult;
+
+
+/**
+ * The result of an {@code asadmin} command, including how long it took.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class AsadminResult
+{
+	private final Command command;
+	private final CommandResult.ExitStatus exitStatus;
+	private final String output;
+	private final Throwable failureCause;
+	private final long durationNanos;
+
+
+	public AsadminResult(Command command, CommandResult result, long durationNanos)
+	{
+		this.command = command;
+		this.exitStatus = result.getExitStatus();
+		this.output = result.getOutput();
+		this.failureCause = result.getFailureCause();
+		this.durationNanos = durationNanos;
+	}
+
+
+	public Command getCommand()
+	{
+		return command;
+	}
+
+
+	public CommandResult.ExitStatus getExitStatus()
+	{
+		return exitStatus;
+	}
+
+
+	public boolean isFailure()
+	{
+		return exitStatus == CommandResult.ExitStatus.FAILURE;
+	}
+
+
+	public String getOutput()
+	{
+		return output;
+	}
+
+
+	public Throwable getFailureCause()
+	{
+		return failureCause;
+	}
+
+
+	public long getDuration(TimeUnit unit)
+	{
+		return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %s in %dms", command, exitStatus, getDuration(TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+
+/**
+ * MOJO to compare the results of the {@code load} goal with a baseline, and fail the build if the performance
+ * regressed more than allowed.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+@Mojo(name = "check-performance", defaultPhase = LifecyclePhase.VERIFY)
+public class CheckPerformanceMojo extends AbstractMojo
+{
+	/**
+	 * The results of the load test.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-load.properties", required = true)
+	private File resultsFile;
+	/**
+	 * The baseline to compare the results with. Typically, this file is kept in version control.
+	 */
+	@Parameter(defaultValue = "${project.basedir}/src/test/performance/glassfish-load.properties", required = true)
+	private File baselineFile;
+	/**
+	 * The latency metrics to compare: any of mean, p50, p90, p99, p999 and max. Defaults to p99.
+	 */
+	@Parameter
+	private String[] latencyMetrics;
+	/**
+	 * The maximum allowed increase of the latencies, in percent. Defaults to 15.
+	 */
+	@Parameter(property = "glassfish.performance.maxLatencyIncrease", defaultValue = "15")
+	private double maxLatencyIncrease;
+	/**
+	 * The maximum allowed decrease of the throughput, in percent. Defaults to 15.
+	 */
+	@Parameter(property = "glassfish.performance.maxThroughputDecrease", defaultValue = "15")
+	private double maxThroughputDecrease;
+	/**
+	 * If true, metrics from the baseline that are missing from the results (for example after an empty run) fail the
+	 * build, as does a comparison without any metrics. Otherwise, they're only logged as warning.
+	 */
+	@Parameter(property = "glassfish.performance.failOnMissingMetric", defaultValue = "true")
+	private boolean failOnMissingMetric;
+	/**
+	 * If true, the results replace the baseline instead of being compared with it.
+	 */
+	@Parameter(property = "glassfish.performance.updateBaseline", defaultValue = "false")
+	private boolean updateBaseline;
+	/**
+	 * If true, the results are not checked.
+	 */
+	@Parameter(property = "glassfish.performance.skip", defaultValue = "false")
+	private boolean skip;
+
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException
+	{
+		if (skip)
+		{
+			getLog().info("Skipping performance check.");
+			return;
+		}
+		if (!resultsFile.isFile())
+		{
+			throw new MojoFailureException("There are no load test results: " + resultsFile + " does not exist.");
+		}
+		if (updateBaseline)
+		{
+			copyResultsToBaseline();
+			return;
+		}
+		if (!baselineFile.isFile())
+		{
+			getLog().warn("There is no performance baseline to compare with: " + baselineFile + " does not exist. " +
+			              "Use -Dglassfish.performance.updateBaseline=true to create it.");
+			return;
+		}
+
+		List<PerformanceComparison.Difference> differences;
+		try
+		{
+			PerformanceComparison comparison = new PerformanceComparison(PerformanceComparison.load(baselineFile),
+			                                                             PerformanceComparison.load(resultsFile));
+			List<String> metrics = Arrays.asList(latencyMetrics == null ? new String[]{"p99"} : latencyMetrics);
+			differences = comparison.compare(metrics, maxLatencyIncrease, maxThroughputDecrease);
+		}
+		catch (IOException e)
+		{
+			throw new MojoExecutionException("Failed to read the load test results.", e);
+		}
+
+		int regressions = 0;
+		int missing = 0;
+		for (PerformanceComparison.Difference difference : differences)
+		{
+			if (difference.isRegression())
+			{
+				regressions++;
+				getLog().error("Regression: " + difference);
+			}
+			else if (difference.isMissing())
+			{
+				missing++;
+				if (failOnMissingMetric)
+				{
+					getLog().error("Missing: " + difference);
+				}
+				else
+				{
+					getLog().warn(difference.toString());
+				}
+			}
+			else
+			{
+				getLog().info(difference.toString());
+			}
+		}
+		if (regressions > 0)
+		{
+			throw new MojoFailureException(String.format("Performance regressed: %d of %d metric(s) exceed the " +
+			                                             "allowed change.", regressions, differences.size()));
+		}
+		if (failOnMissingMetric && missing > 0)
+		{
+			throw new MojoFailureException(String.format("%d of %d metric(s) are missing from the load test results.",
+			                                             missing, differences.size()));
+		}
+		if (failOnMissingMetric && differences.isEmpty())
+		{
+			throw new MojoFailureException("No metrics were compared: the baseline has none of the configured " +
+			                               "metrics.");
+		}
+	}
+
+
+	private void copyResultsToBaseline() throws MojoExecutionException
+	{
+		try
+		{
+			Files.createDirectories(baselineFile.getAbsoluteFile().toPath().getParent());
+			Files.copy(resultsFile.toPath(), baselineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			getLog().info("Updated the performance baseline " + baselineFile);
+		}
+		catch (IOException e)
+		{
+			throw new MojoExecutionException("Failed to update the performance baseline.", e);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>A class data sharing (AppCDS) archive for the classpath of a forked JVM, which lets the JVM map the classes of
+ * GlassFish from the archive instead of loading and verifying them from the jar files. The first forked JVM creates a
+ * dynamic archive when it exits; later ones use it.</p>
+ *
+ * <p>The archive is stored in a file per key (of the classpath) and JVM version, so it is recreated only when the
+ * dependencies (or the JVM) change. Dynamic archives need Java 13 or later.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ClassDataSharingArchive
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ClassDataSharingArchive.class.getName());
+	/**
+	 * The first Java version that can create a dynamic archive at exit.
+	 */
+	private static final int DYNAMIC_ARCHIVE_JAVA_VERSION = 13;
+	private final Path archive;
+	/**
+	 * The file the forked JVM creates the archive in, so an incomplete archive is never used.
+	 */
+	private final Path newArchive;
+
+
+	/**
+	 * Create a class data sharing archive (it need not exist yet).
+	 *
+	 * @param directory  the directory to store the archive in
+	 * @param key        the key of the classpath of the forked JVM
+	 * @param jvmVersion the version of the forked JVM
+	 */
+	public ClassDataSharingArchive(File directory, String key, String jvmVersion)
+	{
+		String fileName = key + '-' + jvmVersion.replaceAll("[^\\w.-]", "_");
+		archive = directory.toPath().resolve(fileName + ".jsa");
+		newArchive = directory.toPath().resolve(fileName + ".jsa.new");
+	}
+
+
+	/**
+	 * Determine if a JVM can create dynamic class data sharing archives.
+	 *
+	 * @param javaSpecificationVersion the specification version of the JVM, like {@code 1.8} or {@code 17}
+	 * @return true if the JVM supports dynamic archives
+	 */
+	public static boolean isSupported(String javaSpecificationVersion)
+	{
+		String version = javaSpecificationVersion.startsWith("1.") ? javaSpecificationVersion.substring(2) :
+		                 javaSpecificationVersion;
+		int dot = version.indexOf('.');
+		try
+		{
+			return Integer.parseInt(dot == -1 ? version : version.substring(0, dot)) >= DYNAMIC_ARCHIVE_JAVA_VERSION;
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+
+
+	public Path getArchive()
+	{
+		return archive;
+	}
+
+
+	/**
+	 * Determine the options for the forked JVM: use the archive if it exists, and create it otherwise.
+	 *
+	 * @return the JVM options for class data sharing
+	 * @throws IOException when the directory for the archive cannot be created
+	 */
+	public List<String> getJvmArgs() throws IOException
+	{
+		List<String> jvmArgs = new ArrayList<>();
+		if (Files.isRegularFile(archive))
+		{
+			LOGGER.log(Level.INFO, "Using the class data sharing archive {0}", archive);
+			jvmArgs.add("-XX:SharedArchiveFile=" + archive);
+		}
+		else
+		{
+			LOGGER.log(Level.INFO, "Creating the class data sharing archive {0} when GlassFish shuts down", archive);
+			Files.createDirectories(archive.getParent());
+			Files.deleteIfExists(newArchive);
+			jvmArgs.add("-XX:ArchiveClassesAtExit=" + newArchive);
+		}
+		return jvmArgs;
+	}
+
+
+	/**
+	 * Complete the archive after the forked JVM has exited, if it created one.
+	 *
+	 * @throws IOException when the archive cannot be moved in place
+	 */
+	public void forkedJvmExited() throws IOException
+	{
+		if (Files.isRegularFile(newArchive))
+		{
+			Files.move(newArchive, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			LOGGER.log(Level.INFO, "Created the class data sharing archive {0} ({1} bytes)",
+			           new Object[]{archive, Files.size(archive)});
+		}
+	}
+}
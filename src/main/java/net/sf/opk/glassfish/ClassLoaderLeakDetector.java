@@ -0,0 +1,357 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>Detects class loaders of undeployed applications that are not garbage collected. Each deployment of an
+ * application uses a new class loader. When something outside the application (a thread, a thread local, a logging
+ * handler, ...) still references the old class loader after undeployment, the class loader and all its classes stay
+ * in memory, and repeated redeploys eventually exhaust the metaspace.</p>
+ *
+ * <p>Class loaders are tracked using weak references, so tracking does not keep them reachable. To name the GC roots
+ * of a leaked class loader, the common leak paths are searched: threads (their class and context class loader),
+ * thread locals, logging handlers and security providers. Other leak paths can only be found using a heap dump.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ClassLoaderLeakDetector
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ClassLoaderLeakDetector.class.getName());
+	/**
+	 * The number of times to run the garbage collector before class loaders that are still reachable are leaked.
+	 */
+	private static final int GC_ATTEMPTS = 3;
+	private static final long GC_PAUSE_MILLIS = 100;
+	private final ReferenceQueue<ClassLoader> collectedClassLoaders;
+	private final List<TrackedClassLoader> trackedClassLoaders;
+	private int undeployCount;
+	/**
+	 * The metaspace in use when the baseline was recorded, in bytes.
+	 */
+	private long metaspaceBaseline;
+
+
+	public ClassLoaderLeakDetector()
+	{
+		collectedClassLoaders = new ReferenceQueue<>();
+		trackedClassLoaders = new ArrayList<>();
+		undeployCount = 0;
+		metaspaceBaseline = 0;
+	}
+
+
+	/**
+	 * Record the metaspace in use as baseline for {@link #getRetainedMetaspace()}. Call this after the application is
+	 * deployed for the first time (or after the server is recycled), and check for leaks with the application deployed
+	 * as well, so the retained metaspace excludes that of the application itself. This runs the garbage collector.
+	 */
+	public void recordMetaspaceBaseline()
+	{
+		collectGarbage();
+		metaspaceBaseline = getMetaspaceUsed();
+	}
+
+
+	/**
+	 * Track the class loader of an undeployed application. The caller should not keep a reference to it.
+	 *
+	 * @param application the name of the application
+	 * @param classLoader the class loader of the application
+	 */
+	public void track(String application, ClassLoader classLoader)
+	{
+		undeployCount++;
+		trackedClassLoaders.add(new TrackedClassLoader(classLoader, collectedClassLoaders, application,
+		                                               undeployCount));
+	}
+
+
+	/**
+	 * Stop tracking the class loaders tracked so far. Call this after the server is recycled: class loaders that are
+	 * still reachable then are not released by recycling, and reporting them again on every check adds nothing.
+	 */
+	public void forgetTrackedClassLoaders()
+	{
+		trackedClassLoaders.clear();
+		while (collectedClassLoaders.poll() != null)
+		{
+			// Also forget the class loaders that were collected in the meantime.
+		}
+	}
+
+
+	/**
+	 * Find the tracked class loaders that are still reachable. This runs the garbage collector, and logs a warning
+	 * for each leaked class loader, with the leak paths that were found.
+	 *
+	 * @return the number of leaked class loaders
+	 */
+	public int findLeaks()
+	{
+		collectGarbage();
+		for (TrackedClassLoader trackedClassLoader : trackedClassLoaders)
+		{
+			List<String> leakPaths = findLeakPaths(trackedClassLoader.get());
+			if (leakPaths.isEmpty())
+			{
+				LOGGER.log(Level.WARNING, "The class loader of {0} (undeploy #{1}) is still reachable; no known leak " +
+				                          "path found: use a heap dump to find the GC roots",
+				           new Object[]{trackedClassLoader.application, trackedClassLoader.undeployNumber});
+			}
+			else
+			{
+				LOGGER.log(Level.WARNING, "The class loader of {0} (undeploy #{1}) is still reachable via: {2}",
+				           new Object[]{trackedClassLoader.application, trackedClassLoader.undeployNumber,
+				                        leakPaths});
+			}
+		}
+		if (!trackedClassLoaders.isEmpty())
+		{
+			LOGGER.log(Level.WARNING, "{0} class loader(s) of undeployed applications leaked; " +
+			                          "retained metaspace: {1}MB",
+			           new Object[]{trackedClassLoaders.size(), getRetainedMetaspace() / (1024 * 1024)});
+		}
+		return trackedClassLoaders.size();
+	}
+
+
+	/**
+	 * Determine the metaspace in use since the baseline was recorded. The result is only accurate right after
+	 * {@link #findLeaks()}, as that runs the garbage collector.
+	 *
+	 * @return the metaspace used since the baseline, in bytes (0 if it cannot be determined)
+	 * @see #recordMetaspaceBaseline()
+	 */
+	public long getRetainedMetaspace()
+	{
+		return Math.max(0, getMetaspaceUsed() - metaspaceBaseline);
+	}
+
+
+	/**
+	 * Determine the memory used for class metadata: the metaspace, or the permanent generation before Java 8.
+	 *
+	 * @return the memory in use, in bytes (0 if it cannot be determined)
+	 */
+	static long getMetaspaceUsed()
+	{
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			String name = memoryPool.getName();
+			if (memoryPool.getType() == MemoryType.NON_HEAP && (name.equals("Metaspace") || name.endsWith("Perm Gen")))
+			{
+				return memoryPool.getUsage().getUsed();
+			}
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Run the garbage collector until all tracked class loaders have been collected, or the maximum number of
+	 * attempts is reached.
+	 */
+	private void collectGarbage()
+	{
+		for (int attempt = 0; attempt < GC_ATTEMPTS; attempt++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(GC_PAUSE_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			Reference<? extends ClassLoader> collected;
+			while ((collected = collectedClassLoaders.poll()) != null)
+			{
+				trackedClassLoaders.remove(collected);
+			}
+			if (trackedClassLoaders.isEmpty())
+			{
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Search the common leak paths for references to a class loader.
+	 *
+	 * @param classLoader the class loader to search references to ({@code null} yields no leak paths)
+	 * @return a description of each leak path that was found
+	 */
+	static List<String> findLeakPaths(ClassLoader classLoader)
+	{
+		List<String> leakPaths = new ArrayList<>();
+		if (classLoader == null)
+		{
+			return leakPaths;
+		}
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+		{
+			if (isLoadedBy(thread, classLoader))
+			{
+				leakPaths.add("thread '" + thread.getName() + "' (" + thread.getClass().getName() + ")");
+			}
+			if (isDescendant(thread.getContextClassLoader(), classLoader))
+			{
+				leakPaths.add("context class loader of thread '" + thread.getName() + "'");
+			}
+			findThreadLocalLeakPaths(thread, "threadLocals", classLoader, leakPaths);
+			findThreadLocalLeakPaths(thread, "inheritableThreadLocals", classLoader, leakPaths);
+		}
+		LogManager logManager = LogManager.getLogManager();
+		for (Enumeration<String> loggerNames = logManager.getLoggerNames(); loggerNames.hasMoreElements(); )
+		{
+			String loggerName = loggerNames.nextElement();
+			Logger logger = logManager.getLogger(loggerName);
+			for (Handler handler : logger == null ? new Handler[0] : logger.getHandlers())
+			{
+				if (isLoadedBy(handler, classLoader))
+				{
+					leakPaths.add("logging handler " + handler.getClass().getName() + " of logger '" + loggerName +
+					              "'");
+				}
+			}
+		}
+		for (Provider provider : Security.getProviders())
+		{
+			if (isLoadedBy(provider, classLoader))
+			{
+				leakPaths.add("security provider " + provider.getName());
+			}
+		}
+		return leakPaths;
+	}
+
+
+	/**
+	 * Search the thread locals of a thread for references to a class loader. This uses reflection on JVM internals;
+	 * if that is not allowed, the thread locals are not searched.
+	 *
+	 * @param thread          the thread to search
+	 * @param threadLocalsMap the name of the field in {@link Thread} with the thread local map
+	 * @param classLoader     the class loader to search references to
+	 * @param leakPaths       the leak paths found so far
+	 */
+	private static void findThreadLocalLeakPaths(Thread thread, String threadLocalsMap, ClassLoader classLoader,
+	                                             List<String> leakPaths)
+	{
+		try
+		{
+			Object threadLocals = readField(Thread.class, thread, threadLocalsMap);
+			Object[] table = threadLocals == null ? new Object[0] : (Object[])readField(threadLocals.getClass(),
+			                                                                                 threadLocals, "table");
+			for (Object entry : table)
+			{
+				if (entry == null)
+				{
+					continue;
+				}
+				Object threadLocal = ((Reference<?>)entry).get();
+				Object value = readField(entry.getClass(), entry, "value");
+				if (isLoadedBy(threadLocal, classLoader) || isLoadedBy(value, classLoader))
+				{
+					String threadLocalType = threadLocal == null ? "(stale)" : threadLocal.getClass().getName();
+					String valueType = value == null ? "null" : value.getClass().getName();
+					leakPaths.add("thread local " + threadLocalType + " with a " + valueType + " of thread '" +
+					              thread.getName() + "'");
+				}
+			}
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			LOGGER.log(Level.FINE, "Cannot search the thread locals of thread " + thread.getName(), e);
+		}
+	}
+
+
+	private static Object readField(Class<?> type, Object instance, String fieldName)
+			throws ReflectiveOperationException
+	{
+		Field field = type.getDeclaredField(fieldName);
+		field.setAccessible(true);
+		return field.get(instance);
+	}
+
+
+	/**
+	 * Determine if the class of an object was loaded by a class loader or one of its descendants.
+	 */
+	private static boolean isLoadedBy(Object object, ClassLoader classLoader)
+	{
+		return object != null && isDescendant(object.getClass().getClassLoader(), classLoader);
+	}
+
+
+	/**
+	 * Determine if a class loader is (a descendant of) another class loader.
+	 */
+	private static boolean isDescendant(ClassLoader candidate, ClassLoader classLoader)
+	{
+		for (ClassLoader current = candidate; current != null; current = current.getParent())
+		{
+			if (current == classLoader)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	private static class TrackedClassLoader extends WeakReference<ClassLoader>
+	{
+		private final String application;
+		private final int undeployNumber;
+
+
+		private TrackedClassLoader(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue, String application,
+		                           int undeployNumber)
+		{
+			super(classLoader, queue);
+			this.application = application;
+			this.undeployNumber = undeployNumber;
+		}
+	}
+}
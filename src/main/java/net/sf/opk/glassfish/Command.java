@@ -15,7 +15,9 @@
  */
 package net.sf.opk.glassfish;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 
 
@@ -24,7 +26,7 @@ import java.util.Arrays;
  *
  * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
  */
-public class Command implements Serializable
+public class Command
 {
 	/**
 	 * The command to execute.
@@ -36,6 +38,19 @@ public class Command implements Serializable
 	private String[] parameters;
 
 
+	public Command()
+	{
+		// Needed to configure commands in the POM.
+	}
+
+
+	public Command(String command, String... parameters)
+	{
+		this.command = command;
+		this.parameters = parameters;
+	}
+
+
 	public String getCommand()
 	{
 		return command;
@@ -60,6 +75,36 @@ public class Command implements Serializable
 	}
 
 
+	/**
+	 * Write this command in the binary configuration format.
+	 *
+	 * @param output the output to write to
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(DataOutput output) throws IOException
+	{
+		ConfigurationFormat.writeString(output, command);
+		ConfigurationFormat.writeStrings(output, parameters);
+	}
+
+
+	/**
+	 * Read a command in the binary configuration format.
+	 *
+	 * @param input the input to read from
+	 * @return the command
+	 * @throws IOException when reading fails
+	 */
+	public static Command readFrom(DataInput input) throws IOException
+	{
+		String command = ConfigurationFormat.readString(input);
+		Command result = new Command();
+		result.setCommand(command);
+		result.setParameters(ConfigurationFormat.readStrings(input));
+		return result;
+	}
+
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -84,4 +129,19 @@ public class Command implements Serializable
 		result = 31 * result + Arrays.hashCode(parameters);
 		return result;
 	}
+
+
+	@Override
+	public String toString()
+	{
+		StringBuilder buffer = new StringBuilder(command);
+		if (parameters != null)
+		{
+			for (String parameter : parameters)
+			{
+				buffer.append(' ').append(parameter);
+			}
+		}
+		return buffer.toString();
+	}
 }
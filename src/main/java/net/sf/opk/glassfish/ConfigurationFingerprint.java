@@ -0,0 +1,353 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.crypto.Mac;
+
+
+/**
+ * <p>A content fingerprint of a {@link GlassFishConfiguration}. The fingerprint consists of a digest per input (like the
+ * HTTP port, a resource file or a classpath entry), so it can be determined which inputs changed. Files are digested
+ * by their content; directories by their path only.</p>
+ *
+ * <p>The digests of the inputs that determine the domain configuration (ports, network settings, realms and extra
+ * commands) are also combined separately, to identify {@linkplain DomainSnapshot domain snapshots}.</p>
+ *
+ * <p>The passwords of file realms (including the users files) are not digested with the other inputs: the fingerprint
+ * is saved in the build directory, and a plain digest would allow offline password guessing. Instead, they form a
+ * separate input per realm, an HMAC keyed with the {@link LocalSecret} of the user.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ConfigurationFingerprint
+{
+	/**
+	 * The names (or name prefixes) of the inputs that determine the domain configuration. Resource files are not
+	 * included: changes to them are applied to the domain snapshot (see {@link DomainSnapshot}).
+	 */
+	private static final List<String> DOMAIN_INPUTS = Arrays.asList("httpPort", "httpsPort", "networkSettings",
+	                                                                "startupProfile", "fileRealm[", "extraCommands");
+	/**
+	 * Digests of files, by path, size and modification time. Avoids digesting unchanged jar files again.
+	 */
+	private static final ConcurrentMap<String, String> FILE_DIGESTS = new ConcurrentHashMap<>();
+	/**
+	 * The digest of each input, by input name.
+	 */
+	private final SortedMap<String, String> inputDigests;
+
+
+	/**
+	 * Calculate the fingerprint of a configuration.
+	 *
+	 * @param configuration the configuration
+	 * @throws IOException when a file in the configuration cannot be read
+	 */
+	public ConfigurationFingerprint(GlassFishConfiguration configuration) throws IOException
+	{
+		this(configuration, LocalSecret.defaultLocation());
+	}
+
+
+	/**
+	 * Calculate the fingerprint of a configuration.
+	 *
+	 * @param configuration the configuration
+	 * @param secretFile    the file with the secret for the passwords of file realms (created if needed)
+	 * @throws IOException when a file in the configuration or the secret cannot be read
+	 */
+	ConfigurationFingerprint(GlassFishConfiguration configuration, Path secretFile) throws IOException
+	{
+		inputDigests = new TreeMap<>();
+		addInput("httpPort", configuration.getHttpPort());
+		addInput("httpsPort", configuration.getHttpsPort());
+		List<Object> networkSettings = new ArrayList<>();
+		Map<String, Integer> networkAttributes = configuration.getNetworkSettings().toAttributes("http-listener");
+		for (Map.Entry<String, Integer> attribute : networkAttributes.entrySet())
+		{
+			networkSettings.add(attribute.getKey());
+			networkSettings.add(attribute.getValue());
+		}
+		addInput("networkSettings", networkSettings.toArray());
+		addInput("startupProfile", configuration.getStartupProfile());
+		addInput("contextRoot", configuration.getContextRoot());
+		addInput("webApplicationSourceDirectory", configuration.getWebApplicationSourceDirectory());
+		for (File file : configuration.getLoggingProperties())
+		{
+			addFileInput("loggingProperties", file);
+		}
+		for (File file : configuration.getGlassFishResources())
+		{
+			addFileInput("glassFishResources", file);
+		}
+		Mac credentialsMac = null;
+		for (FileRealm fileRealm : configuration.getFileRealms())
+		{
+			String name = "fileRealm[" + fileRealm.getRealmName() + ']';
+			List<Object> users = new ArrayList<>();
+			List<String> credentials = new ArrayList<>();
+			if (fileRealm.getUsers() != null)
+			{
+				for (User user : fileRealm.getUsers())
+				{
+					users.add(user.getUsername());
+					users.add(user.getRoles() == null ? null : Arrays.asList(user.getRoles()));
+					credentials.add(String.valueOf(user.getPassword()));
+				}
+			}
+			UserGenerator generator = fileRealm.getGeneratedUsers();
+			if (generator != null)
+			{
+				users.add(generator.getCount());
+				users.add(generator.getUsernamePattern());
+				users.add(generator.getRoles() == null ? null : Arrays.asList(generator.getRoles()));
+				credentials.add(String.valueOf(generator.getPasswordPattern()));
+			}
+			if (fileRealm.getUsersFile() != null)
+			{
+				Path usersFile = fileRealm.getUsersFile().toPath();
+				users.add(fileRealm.getUsersFile().getPath());
+				credentials.add(Files.isRegularFile(usersFile) ? digestFile(usersFile) : "missing");
+			}
+			addInput(name, users.toArray());
+			if (!credentials.isEmpty())
+			{
+				if (credentialsMac == null)
+				{
+					credentialsMac = LocalSecret.createMac(secretFile);
+				}
+				inputDigests.put(name + ".credentials",
+				                 LocalSecret.hex(credentialsMac, credentials.toArray(new String[credentials.size()])));
+			}
+		}
+		List<Object> commands = new ArrayList<>();
+		for (Command command : configuration.getExtraCommands())
+		{
+			commands.add(command.toString());
+		}
+		addInput("extraCommands", commands.toArray());
+		for (File file : configuration.getExtraApplications())
+		{
+			addFileInput("extraApplication", file);
+		}
+		for (File file : configuration.getWebApplicationClassPath())
+		{
+			addFileInput("classPath", file);
+		}
+		addInput("warmUp", configuration.getWarmUpRequests(), configuration.isWarmUpJsps(),
+		         configuration.getWarmUpIterations(), configuration.getWarmUpConcurrency());
+		addInput("jspPrecompilation", configuration.isPrecompileJsps(), configuration.getPrecompileJspThreads());
+		addInput("connectionPoolWarmUp", configuration.isWarmUpConnectionPools());
+		addInput("metrics", configuration.getMetricsFile(), configuration.getMetricsInterval());
+		addInput("requestLatencies", configuration.getRequestLatenciesFile());
+		addInput("classLoaderLeakDetection", configuration.isDetectClassLoaderLeaks(),
+		         configuration.getMaxRetainedMetaspace());
+		addInput("versionedRedeploy", configuration.isVersionedRedeploy());
+		addInput("watchExtraApplications", configuration.isWatchExtraApplications());
+		addInput("redeployOnLibraryChange", configuration.isRedeployOnLibraryChange());
+	}
+
+
+	private ConfigurationFingerprint(SortedMap<String, String> inputDigests)
+	{
+		this.inputDigests = inputDigests;
+	}
+
+
+	private void addInput(String name, Object... values)
+	{
+		MessageDigest digest = Digests.createDigest();
+		for (Object value : values)
+		{
+			// The separator prevents different values from yielding the same input (like "ab", "c" and "a", "bc").
+			digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+		}
+		inputDigests.put(name, Digests.toHex(digest.digest()));
+	}
+
+
+	private void addFileInput(String type, File file) throws IOException
+	{
+		String name = type + '[' + file.getPath() + ']';
+		Path path = file.toPath();
+		if (Files.isRegularFile(path))
+		{
+			inputDigests.put(name, digestFile(path));
+		}
+		else
+		{
+			addInput(name, Files.isDirectory(path) ? "directory" : "missing");
+		}
+	}
+
+
+	private static String digestFile(Path path) throws IOException
+	{
+		String key = path.toAbsolutePath() + "|" + Files.size(path) + '|' + Files.getLastModifiedTime(path);
+		String fileDigest = FILE_DIGESTS.get(key);
+		if (fileDigest == null)
+		{
+			fileDigest = Digests.digestFile(path);
+			FILE_DIGESTS.put(key, fileDigest);
+		}
+		return fileDigest;
+	}
+
+
+	/**
+	 * Return the digest of each input.
+	 *
+	 * @return the digests by input name, sorted by name
+	 */
+	public SortedMap<String, String> getInputDigests()
+	{
+		return Collections.unmodifiableSortedMap(inputDigests);
+	}
+
+
+	/**
+	 * Return the fingerprint of the entire configuration.
+	 *
+	 * @return the fingerprint, as hexadecimal string
+	 */
+	public String getFingerprint()
+	{
+		return combine(inputDigests);
+	}
+
+
+	/**
+	 * Return the fingerprint of the inputs that determine the domain configuration.
+	 *
+	 * @return the fingerprint, as hexadecimal string
+	 */
+	public String getDomainFingerprint()
+	{
+		SortedMap<String, String> domainInputDigests = new TreeMap<>();
+		for (Map.Entry<String, String> entry : inputDigests.entrySet())
+		{
+			for (String domainInput : DOMAIN_INPUTS)
+			{
+				if (entry.getKey().startsWith(domainInput))
+				{
+					domainInputDigests.put(entry.getKey(), entry.getValue());
+					break;
+				}
+			}
+		}
+		return combine(domainInputDigests);
+	}
+
+
+	private static String combine(SortedMap<String, String> digests)
+	{
+		MessageDigest digest = Digests.createDigest();
+		for (Map.Entry<String, String> entry : digests.entrySet())
+		{
+			digest.update((entry.getKey() + '=' + entry.getValue() + '\n').getBytes(StandardCharsets.UTF_8));
+		}
+		return Digests.toHex(digest.digest());
+	}
+
+
+	/**
+	 * Determine which inputs differ from another fingerprint: inputs that changed, were added or were removed.
+	 *
+	 * @param other the fingerprint to compare with
+	 * @return the names of the inputs that differ, sorted
+	 */
+	public List<String> getChangedInputs(ConfigurationFingerprint other)
+	{
+		TreeSet<String> names = new TreeSet<>(inputDigests.keySet());
+		names.addAll(other.inputDigests.keySet());
+		List<String> changedInputs = new ArrayList<>();
+		for (String name : names)
+		{
+			String digest = inputDigests.get(name);
+			if (digest == null || !digest.equals(other.inputDigests.get(name)))
+			{
+				changedInputs.add(name);
+			}
+		}
+		return changedInputs;
+	}
+
+
+	/**
+	 * Save the fingerprint, so it can be compared with the fingerprint of the next configuration.
+	 *
+	 * @param file the file to save to
+	 * @throws IOException when the file cannot be written
+	 */
+	public void save(File file) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.putAll(inputDigests);
+		Files.createDirectories(file.getAbsoluteFile().toPath().getParent());
+		// Storing to a stream escapes the characters outside ISO 8859-1 (like those in file names).
+		try (OutputStream output = Files.newOutputStream(file.toPath()))
+		{
+			properties.store(output, "Configuration fingerprint of the GlassFish plugin");
+		}
+	}
+
+
+	/**
+	 * Load a saved fingerprint.
+	 *
+	 * @param file the file to load
+	 * @return the fingerprint, or {@code null} if the file does not exist
+	 * @throws IOException when the file cannot be read
+	 */
+	public static ConfigurationFingerprint load(File file) throws IOException
+	{
+		if (!file.isFile())
+		{
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream input = Files.newInputStream(file.toPath()))
+		{
+			properties.load(input);
+		}
+		SortedMap<String, String> inputDigests = new TreeMap<>();
+		for (String name : properties.stringPropertyNames())
+		{
+			inputDigests.put(name, properties.getProperty(name));
+		}
+		return new ConfigurationFingerprint(inputDigests);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Helper methods for the binary configuration format. All values can be {@code null}, except primitives. Strings are
+ * written as UTF-8, without the 64KB limit of {@link DataOutput#writeUTF(String)}.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+final class ConfigurationFormat
+{
+	/**
+	 * The length written instead of a size or length to denote {@code null}.
+	 */
+	private static final int NULL_LENGTH = -1;
+
+
+	private ConfigurationFormat()
+	{
+		// Utility class: do not instantiate.
+	}
+
+
+	static void writeString(DataOutput output, String value) throws IOException
+	{
+		if (value == null)
+		{
+			output.writeInt(NULL_LENGTH);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+
+	static String readString(DataInput input) throws IOException
+	{
+		int length = readLength(input);
+		if (length == NULL_LENGTH)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	static void writeStrings(DataOutput output, String[] values) throws IOException
+	{
+		if (values == null)
+		{
+			output.writeInt(NULL_LENGTH);
+		}
+		else
+		{
+			output.writeInt(values.length);
+			for (String value : values)
+			{
+				writeString(output, value);
+			}
+		}
+	}
+
+
+	static String[] readStrings(DataInput input) throws IOException
+	{
+		int length = readLength(input);
+		if (length == NULL_LENGTH)
+		{
+			return null;
+		}
+		String[] values = new String[length];
+		for (int i = 0; i < length; i++)
+		{
+			values[i] = readString(input);
+		}
+		return values;
+	}
+
+
+	static void writeInteger(DataOutput output, Integer value) throws IOException
+	{
+		output.writeBoolean(value != null);
+		if (value != null)
+		{
+			output.writeInt(value);
+		}
+	}
+
+
+	static Integer readInteger(DataInput input) throws IOException
+	{
+		return input.readBoolean() ? input.readInt() : null;
+	}
+
+
+	static void writeFile(DataOutput output, File file) throws IOException
+	{
+		writeString(output, file == null ? null : file.getPath());
+	}
+
+
+	static File readFile(DataInput input) throws IOException
+	{
+		String path = readString(input);
+		return path == null ? null : new File(path);
+	}
+
+
+	static void writeFiles(DataOutput output, List<File> files) throws IOException
+	{
+		output.writeInt(files.size());
+		for (File file : files)
+		{
+			writeFile(output, file);
+		}
+	}
+
+
+	static List<File> readFiles(DataInput input) throws IOException
+	{
+		int size = readLength(input);
+		List<File> files = new ArrayList<>(Math.max(size, 0));
+		for (int i = 0; i < size; i++)
+		{
+			files.add(readFile(input));
+		}
+		return files;
+	}
+
+
+	/**
+	 * Read a size or length.
+	 *
+	 * @param input the input to read from
+	 * @return the length, or {@link #NULL_LENGTH}
+	 * @throws IOException when the length cannot be read, or is invalid
+	 */
+	static int readLength(DataInput input) throws IOException
+	{
+		int length = input.readInt();
+		if (length < NULL_LENGTH)
+		{
+			throw new IOException("Corrupt configuration: invalid length " + length);
+		}
+		return length;
+	}
+}
@@ -46,6 +46,14 @@ import org.apache.maven.project.MavenProject;
  */
 public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfish.EmbeddedGlassFishMojo
 {
+	/**
+	 * The file (in the target directory) with the configuration fingerprint of the last start.
+	 */
+	private static final String FINGERPRINT_FILE = "glassfish-fingerprint.properties";
+	/**
+	 * The prefix of the artifact IDs of embedded GlassFish, like {@code glassfish-embedded-web}.
+	 */
+	private static final String GLASSFISH_ARTIFACT_PREFIX = "glassfish-embedded";
 	/**
 	 * This plugin, as configured.
 	 */
@@ -56,6 +64,18 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 	 */
 	@Parameter(defaultValue = "${executedProject}", required = true, readonly = true)
 	private MavenProject project;
+	/**
+	 * The projects in the reactor.
+	 */
+	@Parameter(defaultValue = "${reactorProjects}", readonly = true)
+	private List<MavenProject> reactorProjects;
+	/**
+	 * If true, {@code jar} dependencies that are modules in the reactor are added using their classes directory
+	 * instead of their packaged jar, if it exists. Like the classes of the web application, the classes directories
+	 * are watched, so changes are propagated to the running application without packaging the module.
+	 */
+	@Parameter(property = "glassfish.useReactorClassesDirectories", defaultValue = "true")
+	private boolean useReactorClassesDirectories;
 	/**
 	 * The context root to deploy the application at. Defaults to the artifact.
 	 */
@@ -124,6 +144,170 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 	 */
 	@Parameter(defaultValue = "8443")
 	private int httpsPort;
+	/**
+	 * Paths (relative to the context root) to request after the application is (re)deployed, to warm it up before it
+	 * is used: the first requests pay for JSP compilation, class loading and JIT compilation.
+	 */
+	@Parameter
+	private String[] warmUpRequests;
+	/**
+	 * If true, all JSP files in &lt;webAppSourceDirectory&gt; (except those in <code>WEB-INF</code> and
+	 * <code>META-INF</code>) are requested as well when warming up the application.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean warmUpJsps;
+	/**
+	 * The number of times each warm-up path is requested. The latencies of each iteration are logged, to show when the
+	 * application has reached a steady state.
+	 */
+	@Parameter(defaultValue = "1")
+	private int warmUpIterations;
+	/**
+	 * The maximum number of warm-up requests that are in flight simultaneously.
+	 */
+	@Parameter(defaultValue = "1")
+	private int warmUpConcurrency;
+	/**
+	 * If true, all JSP files in &lt;webAppSourceDirectory&gt; are precompiled in the background after the application
+	 * is (re)deployed, and changed JSP files are precompiled as soon as the change is picked up.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean precompileJsps;
+	/**
+	 * The number of threads used to precompile JSP files. Defaults to 0, meaning one thread per processor.
+	 */
+	@Parameter(defaultValue = "0")
+	private int precompileJspThreads;
+	/**
+	 * If true, the connection pools defined in &lt;glassFishResources&gt; are pinged before the applications are
+	 * deployed. This fills each pool to its steady size, so the first requests need not wait for new connections.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean warmUpConnectionPools;
+	/**
+	 * If true, GlassFish monitoring is enabled, and the monitoring data (HTTP service, thread pools, connection pools
+	 * and web container) is periodically recorded in &lt;metricsFile&gt;, together with JVM heap, garbage collection
+	 * and thread data.
+	 */
+	@Parameter(property = "glassfish.recordMetrics", defaultValue = "false")
+	private boolean recordMetrics;
+	/**
+	 * The file to record metrics in, as JSON Lines: one JSON object per sample.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-metrics.jsonl")
+	private File metricsFile;
+	/**
+	 * The time between metrics samples, in seconds.
+	 */
+	@Parameter(defaultValue = "5")
+	private int metricsInterval;
+	/**
+	 * If true, a servlet filter is added to the web application (as web fragment) that records the latency of each
+	 * request per servlet path. The latencies are written to &lt;requestLatenciesFile&gt; when the web application is
+	 * undeployed.
+	 */
+	@Parameter(property = "glassfish.recordRequestLatencies", defaultValue = "false")
+	private boolean recordRequestLatencies;
+	/**
+	 * The file to write the request latencies to, as properties.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-request-latencies.properties")
+	private File requestLatenciesFile;
+	/**
+	 * If true, the class loaders of the web application are tracked after it is undeployed (on redeploy). Class
+	 * loaders that are not garbage collected are reported, with the leak paths that keep them reachable (as far as
+	 * they can be found).
+	 */
+	@Parameter(property = "glassfish.detectClassLoaderLeaks", defaultValue = "false")
+	private boolean detectClassLoaderLeaks;
+	/**
+	 * The metaspace (in MB) that leaked class loaders may retain before GlassFish is restarted on redeploy. Only used
+	 * when &lt;detectClassLoaderLeaks&gt; is true. Defaults to 0, meaning GlassFish is never restarted.
+	 */
+	@Parameter(property = "glassfish.maxRetainedMetaspace", defaultValue = "0")
+	private int maxRetainedMetaspace;
+	/**
+	 * If true, the web application is redeployed as new version of the application: the new version is deployed
+	 * disabled, then enabled in place of the old version, which is undeployed after its requests finished. This keeps
+	 * the context root available for most of the redeploy, whereas undeploying first makes it return 404 until the
+	 * new deployment is done.
+	 */
+	@Parameter(property = "glassfish.versionedRedeploy", defaultValue = "false")
+	private boolean versionedRedeploy;
+	/**
+	 * If true, the files of the extra applications (the {@code war} and {@code ear} dependencies) are watched, and an
+	 * application is redeployed as soon as its file changed (for example because its module was rebuilt). Otherwise,
+	 * changed extra applications are only redeployed when the web application is redeployed.
+	 */
+	@Parameter(property = "glassfish.watchExtraApplications", defaultValue = "false")
+	private boolean watchExtraApplications;
+	/**
+	 * If true, the web application is redeployed as soon as one of its libraries (a jar dependency) is rebuilt, for
+	 * example by a build of its module. Otherwise, the rebuilt library is used the next time the web application is
+	 * redeployed.
+	 */
+	@Parameter(property = "glassfish.redeployOnLibraryChange", defaultValue = "false")
+	private boolean redeployOnLibraryChange;
+	/**
+	 * Tuning of the HTTP listeners and their thread pool: minThreads, maxThreads, maxQueueSize, acceptorThreads,
+	 * keepAliveTimeout (in seconds) and maxKeepAliveRequests. Settings that are not specified keep their default.
+	 */
+	@Parameter
+	private NetworkSettings networkSettings;
+	/**
+	 * The startup profile, which trims the services GlassFish starts to what the application needs: {@code servlet}
+	 * (servlets and JSP only), {@code web-cdi} (servlets, JSP and CDI) or {@code full-web} (everything).
+	 */
+	@Parameter(property = "glassfish.startupProfile", defaultValue = "full-web")
+	private String startupProfile;
+	/**
+	 * If true, the domain configuration (resources, realms and extra commands) is saved as snapshot after it has been
+	 * set up, and later starts with the same configuration boot from the snapshot instead of setting it up again.
+	 */
+	@Parameter(property = "glassfish.reuseDomainSnapshots", defaultValue = "false")
+	private boolean reuseDomainSnapshots;
+	/**
+	 * The directory to store the domain snapshots in.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-domains")
+	private File domainSnapshotDirectory;
+	/**
+	 * If true, GlassFish uses a persistent install root, which is created once per GlassFish version and plugin
+	 * classpath, instead of creating a fresh one on every start.
+	 */
+	@Parameter(property = "glassfish.reuseInstallRoot", defaultValue = "false")
+	private boolean reuseInstallRoot;
+	/**
+	 * The directory to store the persistent install roots in. As an install root only depends on the GlassFish
+	 * version and plugin classpath, this directory can be shared between projects.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-install-roots")
+	private File installRootsDirectory;
+	/**
+	 * If true, GlassFish runs in a forked JVM instead of the Maven JVM, so it does not share the heap, garbage
+	 * collection and JIT compilation with Maven, and can be tuned with &lt;jvmArgs&gt;.
+	 */
+	@Parameter(property = "glassfish.fork", defaultValue = "false")
+	private boolean fork;
+	/**
+	 * The options for the forked JVM, separated by whitespace, like {@code -Xmx2g -XX:+UseG1GC}. Only used when
+	 * &lt;fork&gt; is true.
+	 */
+	@Parameter(property = "glassfish.jvmArgs")
+	private String jvmArgs;
+	/**
+	 * If true, the forked JVM uses a class data sharing (AppCDS) archive for the plugin classpath, which speeds up
+	 * starting GlassFish. The archive is created when GlassFish shuts down, and is recreated when the dependencies
+	 * change. Only used when &lt;fork&gt; is true, and needs Java 13 or later.
+	 */
+	@Parameter(property = "glassfish.classDataSharing", defaultValue = "false")
+	private boolean classDataSharing;
+	/**
+	 * The directory to store the class data sharing archives in. As an archive only depends on the plugin classpath
+	 * and the JVM, this directory can be shared between projects.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-cds")
+	private File classDataSharingDirectory;
 	/**
 	 * All dependencies, by type, in the iteration order of {@link MavenProject#getArtifacts()}.
 	 */
@@ -139,10 +323,39 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 
 
 	/**
-	 * Configures and starts GlassFish.
+	 * Configures and starts GlassFish. If GlassFish is already running with the same configuration, the web
+	 * application is redeployed instead.
 	 */
 	protected void startup() throws MojoExecutionException
 	{
+		ConfigurationFingerprint fingerprint = null;
+		if (glassFishWebPluginRunner == null)
+		{
+			try
+			{
+				GlassFishConfiguration configuration = buildConfiguration();
+				fingerprint = checkFingerprint(configuration);
+				Callable<Void> runningRedeployHook = getRunningRedeployHook(fingerprint.getFingerprint());
+				if (runningRedeployHook != null)
+				{
+					getLog().info("GlassFish is already running with the same configuration: redeploying instead.");
+					webApplicationRedeployHook = runningRedeployHook;
+					redeploy();
+					return;
+				}
+				// A running instance with a different configuration would claim the same ports.
+				shutdown();
+				glassFishWebPluginRunner = createGlassFishWebPluginRunner(configuration.toByteArray());
+			}
+			catch (MojoExecutionException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new MojoExecutionException("Failed to create the plugin runner.", e);
+			}
+		}
 		Callable<Void> glassFishWebPluginRunner = getGlassFishWebPluginRunner();
 
 		try
@@ -155,6 +368,58 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 		{
 			throw new MojoExecutionException("Failed to start GlassFish.", e);
 		}
+		if (fingerprint != null)
+		{
+			saveFingerprint(fingerprint);
+		}
+		setRunningConfiguration(fingerprint == null ? null : fingerprint.getFingerprint(), webApplicationRedeployHook);
+	}
+
+
+	/**
+	 * Calculate the fingerprint of a configuration, and log which inputs changed since the last (successful) start.
+	 *
+	 * @param configuration the configuration
+	 * @return the fingerprint of the configuration
+	 * @throws IOException when a file in the configuration cannot be read
+	 */
+	private ConfigurationFingerprint checkFingerprint(GlassFishConfiguration configuration) throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(configuration);
+		File fingerprintFile = new File(targetDirectory, FINGERPRINT_FILE);
+		ConfigurationFingerprint previousFingerprint = ConfigurationFingerprint.load(fingerprintFile);
+		if (previousFingerprint != null)
+		{
+			List<String> changedInputs = fingerprint.getChangedInputs(previousFingerprint);
+			if (changedInputs.isEmpty())
+			{
+				getLog().info("The configuration did not change since the last start.");
+			}
+			else
+			{
+				getLog().info("The configuration changed since the last start: " + changedInputs);
+			}
+		}
+		return fingerprint;
+	}
+
+
+	/**
+	 * Save the fingerprint of the configuration GlassFish started with, to compare with on the next start.
+	 *
+	 * @param fingerprint the fingerprint to save
+	 */
+	private void saveFingerprint(ConfigurationFingerprint fingerprint)
+	{
+		try
+		{
+			fingerprint.save(new File(targetDirectory, FINGERPRINT_FILE));
+		}
+		catch (IOException e)
+		{
+			// GlassFish is running, so this only affects the logging of the next start.
+			getLog().warn("Failed to save the configuration fingerprint.", e);
+		}
 	}
 
 
@@ -164,7 +429,7 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 		{
 			if (glassFishWebPluginRunner == null)
 			{
-				byte[] configurationBytes = buildConfiguration();
+				byte[] configurationBytes = buildConfiguration().toByteArray();
 				glassFishWebPluginRunner = createGlassFishWebPluginRunner(configurationBytes);
 			}
 			return glassFishWebPluginRunner;
@@ -176,7 +441,7 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 	}
 
 
-	byte[] buildConfiguration() throws IOException
+	GlassFishConfiguration buildConfiguration() throws IOException
 	{
 		Integer actualHttpsPort = null;
 		if (httpsPort != 0)
@@ -198,8 +463,24 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 		}
 		for (Artifact artifact : findDependencies("jar"))
 		{
-			configuration.addToWebApplicationClassPath(artifact.getFile());
-			getLog().info("Adding artifact " + artifact.getFile().getName() + " to WEB-INF/lib");
+			File moduleClassesDirectory = findReactorClassesDirectory(artifact);
+			if (moduleClassesDirectory != null)
+			{
+				configuration.addToWebApplicationClassPath(moduleClassesDirectory);
+				getLog().info("Adding directory " + moduleClassesDirectory + " of reactor module " +
+				              artifact.getArtifactId() + " to WEB-INF/classes");
+			}
+			else if (artifact.getFile().isDirectory())
+			{
+				// Without packaging, Maven resolves reactor modules to their classes directory.
+				configuration.addToWebApplicationClassPath(artifact.getFile());
+				getLog().info("Adding directory " + artifact.getFile() + " to WEB-INF/classes");
+			}
+			else
+			{
+				configuration.addToWebApplicationClassPath(artifact.getFile());
+				getLog().info("Adding artifact " + artifact.getFile().getName() + " to WEB-INF/lib");
+			}
 		}
 
 		if (loggingProperties != null)
@@ -212,6 +493,27 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 		}
 		configuration.addFileRealms(fileRealms);
 		configuration.addExtraCommands(extraCommands);
+		configuration.addWarmUpRequests(warmUpRequests);
+		configuration.configureWarmUp(warmUpJsps, warmUpIterations, warmUpConcurrency);
+		configuration.configureJspPrecompilation(precompileJsps, precompileJspThreads);
+		configuration.setWarmUpConnectionPools(warmUpConnectionPools);
+		if (recordMetrics)
+		{
+			configuration.configureMetrics(metricsFile, metricsInterval);
+		}
+		if (recordRequestLatencies)
+		{
+			configuration.setRequestLatenciesFile(requestLatenciesFile);
+		}
+		configuration.configureClassLoaderLeakDetection(detectClassLoaderLeaks, maxRetainedMetaspace);
+		configuration.setVersionedRedeploy(versionedRedeploy);
+		configuration.setWatchExtraApplications(watchExtraApplications);
+		configuration.setRedeployOnLibraryChange(redeployOnLibraryChange);
+		configuration.setNetworkSettings(networkSettings);
+		if (startupProfile != null)
+		{
+			configuration.setStartupProfile(StartupProfile.forName(startupProfile));
+		}
 
 		for (Artifact artifact : findDependencies("war", "ear"))
 		{
@@ -221,7 +523,65 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 			getLog().info("Deployed dependency " + file.getName());
 		}
 
-		return configuration.toByteArray();
+		if (reuseDomainSnapshots)
+		{
+			String domainFingerprint = new ConfigurationFingerprint(configuration).getDomainFingerprint();
+			configuration.setDomainSnapshotDirectory(new File(domainSnapshotDirectory, domainFingerprint));
+		}
+		if (reuseInstallRoot)
+		{
+			configuration.setInstallRootDirectory(new File(installRootsDirectory, getPluginClassPathKey()));
+		}
+		return configuration;
+	}
+
+
+	/**
+	 * Determine the key of the GlassFish version and classpath of this plugin, for the install root and class data
+	 * sharing archive.
+	 *
+	 * @return the key of the plugin classpath
+	 */
+	private String getPluginClassPathKey()
+	{
+		String glassFishVersion = "unknown";
+		List<File> classPath = new ArrayList<>();
+		for (Artifact artifact : plugin.getArtifacts())
+		{
+			if (artifact.getArtifactId().startsWith(GLASSFISH_ARTIFACT_PREFIX))
+			{
+				glassFishVersion = artifact.getBaseVersion();
+			}
+			classPath.add(artifact.getFile());
+		}
+		return InstallRoot.key(glassFishVersion, classPath);
+	}
+
+
+	/**
+	 * Find the classes directory of a dependency that is a module in the reactor.
+	 *
+	 * @param artifact a {@code jar} dependency
+	 * @return the classes directory of the module, or {@code null} if the dependency is not a module in the reactor
+	 * (or the module has no classes directory)
+	 */
+	File findReactorClassesDirectory(Artifact artifact)
+	{
+		if (!useReactorClassesDirectories || reactorProjects == null || artifact.hasClassifier())
+		{
+			return null;
+		}
+		for (MavenProject reactorProject : reactorProjects)
+		{
+			if (reactorProject.getArtifactId().equals(artifact.getArtifactId()) &&
+			    reactorProject.getGroupId().equals(artifact.getGroupId()) &&
+			    reactorProject.getVersion().equals(artifact.getBaseVersion()))
+			{
+				File outputDirectory = new File(reactorProject.getBuild().getOutputDirectory());
+				return outputDirectory.isDirectory() ? outputDirectory : null;
+			}
+		}
+		return null;
 	}
 
 
@@ -276,6 +636,32 @@ public abstract class ConfiguredEmbeddedGlassFishMojo extends net.sf.opk.glassfi
 			throws MalformedURLException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
 			       InvocationTargetException, InstantiationException
 	{
+		if (fork)
+		{
+			File javaExecutable = new File(new File(System.getProperty("java.home"), "bin"), "java");
+			List<File> classPath = new ArrayList<>();
+			for (Artifact artifact : plugin.getArtifacts())
+			{
+				classPath.add(artifact.getFile());
+			}
+			ForkedGlassFishWebPluginRunner runner = new ForkedGlassFishWebPluginRunner(
+					javaExecutable, ForkedGlassFishWebPluginRunner.splitJvmArgs(jvmArgs), classPath,
+					configurationBytes);
+			if (classDataSharing)
+			{
+				if (ClassDataSharingArchive.isSupported(System.getProperty("java.specification.version")))
+				{
+					runner.setClassDataSharingArchive(new ClassDataSharingArchive(
+							classDataSharingDirectory, getPluginClassPathKey(), System.getProperty("java.vm.version")));
+				}
+				else
+				{
+					getLog().warn("Class data sharing archives need Java 13 or later: starting GlassFish without.");
+				}
+			}
+			return runner;
+		}
+
 		// The JVM always has these ClassLoaders:
 		// - bootstrap - all Java classes
 		// - extended  - bootstrap, plus all extended (jre/lib/ext) classes
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * Helper methods for the (SHA-1) digests used to detect changes: of files, configuration and resource definitions.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+final class Digests
+{
+	private Digests()
+	{
+		// Utility class.
+	}
+
+
+	/**
+	 * Create a new digest.
+	 *
+	 * @return a SHA-1 digest
+	 */
+	static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("Every JVM supports SHA-1", e);
+		}
+	}
+
+
+	/**
+	 * Calculate the digest of the content of a file.
+	 *
+	 * @param file the file to digest
+	 * @return the digest of the file content, as hexadecimal string
+	 * @throws IOException when the file cannot be read
+	 */
+	static String digestFile(Path file) throws IOException
+	{
+		MessageDigest digest = createDigest();
+		try (InputStream input = Files.newInputStream(file))
+		{
+			byte[] buffer = new byte[65536];
+			int count;
+			while ((count = input.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, count);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+
+	/**
+	 * Convert bytes (like a digest) to a hexadecimal string.
+	 *
+	 * @param bytes the bytes to convert
+	 * @return the bytes as hexadecimal string, using lowercase letters
+	 */
+	static String toHex(byte[] bytes)
+	{
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes)
+		{
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>A snapshot of a configured GlassFish domain: the {@code domain.xml} and the key files of the file realms, taken
+ * after the resources, realms and extra commands have been applied. A later start with the same configuration boots
+ * from the snapshot, and skips the setup. Only changes to the resources are applied, using the digests of the
+ * resource definitions that are saved with the snapshot.</p>
+ *
+ * <p>Snapshots are stored in a directory per {@linkplain ConfigurationFingerprint#getDomainFingerprint() domain
+ * fingerprint} of the configuration. The key files of custom realms are created in that directory directly, as the
+ * {@code domain.xml} refers to them by their absolute path.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class DomainSnapshot
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(DomainSnapshot.class.getName());
+	private static final String DOMAIN_XML = "domain.xml";
+	/**
+	 * The key files of the predefined realms, in the config directory of the instance.
+	 */
+	private static final String[] KEY_FILES = {"keyfile", "admin-keyfile"};
+	/**
+	 * The digests of the resource definitions in the snapshot (see {@link ResourceDefinitions}).
+	 */
+	private static final String RESOURCE_LEDGER = "resources.properties";
+	private final Path directory;
+
+
+	/**
+	 * Create a domain snapshot (it need not exist yet).
+	 *
+	 * @param directory the directory of the snapshot
+	 */
+	public DomainSnapshot(File directory)
+	{
+		this.directory = directory.toPath();
+	}
+
+
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+
+	/**
+	 * Determine if the snapshot exists, i.e. if it was completely saved.
+	 *
+	 * @return true if the snapshot can be restored
+	 */
+	public boolean exists()
+	{
+		return Files.isRegularFile(directory.resolve(DOMAIN_XML));
+	}
+
+
+	/**
+	 * Return the domain configuration file of the snapshot.
+	 *
+	 * @return the {@code domain.xml} of the snapshot
+	 */
+	public File getDomainXml()
+	{
+		return directory.resolve(DOMAIN_XML).toFile();
+	}
+
+
+	/**
+	 * Create a new, empty key file for a custom file realm.
+	 *
+	 * @param realmName the name of the realm
+	 * @return the key file for the realm
+	 * @throws IOException when the key file cannot be created
+	 */
+	public File createKeyFile(String realmName) throws IOException
+	{
+		Files.createDirectories(directory);
+		Path keyFile = directory.resolve("keyfile-" + realmName);
+		Files.deleteIfExists(keyFile);
+		return Files.createFile(keyFile).toFile();
+	}
+
+
+	/**
+	 * Copy the key files of the predefined realms from the snapshot to an instance.
+	 *
+	 * @param configDirectory the config directory of the instance
+	 * @throws IOException when the key files cannot be copied
+	 */
+	public void restoreKeyFiles(File configDirectory) throws IOException
+	{
+		for (String keyFile : KEY_FILES)
+		{
+			Path source = directory.resolve(keyFile);
+			if (Files.exists(source))
+			{
+				Files.copy(source, configDirectory.toPath().resolve(keyFile), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+
+	/**
+	 * Load the digests of the resource definitions in the snapshot.
+	 *
+	 * @return the digest of each resource definition, by key (empty if the snapshot has no resources)
+	 * @throws IOException when the digests cannot be read
+	 */
+	public Map<String, String> loadResourceLedger() throws IOException
+	{
+		Map<String, String> resourceLedger = new HashMap<>();
+		Path ledgerFile = directory.resolve(RESOURCE_LEDGER);
+		if (Files.exists(ledgerFile))
+		{
+			Properties properties = new Properties();
+			try (InputStream input = Files.newInputStream(ledgerFile))
+			{
+				properties.load(input);
+			}
+			for (String key : properties.stringPropertyNames())
+			{
+				resourceLedger.put(key, properties.getProperty(key));
+			}
+		}
+		return resourceLedger;
+	}
+
+
+	/**
+	 * Save the snapshot. The {@code domain.xml} is saved last (and atomically), so an incomplete snapshot is never
+	 * restored.
+	 *
+	 * @param domainXml       the domain configuration of the instance
+	 * @param configDirectory the config directory of the instance, containing the key files
+	 * @param resourceLedger  the digests of the resource definitions in the domain, by key
+	 * @throws IOException when the snapshot cannot be saved
+	 */
+	public void save(File domainXml, File configDirectory, Map<String, String> resourceLedger) throws IOException
+	{
+		Files.createDirectories(directory);
+		Properties properties = new Properties();
+		properties.putAll(resourceLedger);
+		try (OutputStream output = Files.newOutputStream(directory.resolve(RESOURCE_LEDGER)))
+		{
+			properties.store(output, "Resource definitions in the snapshot");
+		}
+		for (String keyFile : KEY_FILES)
+		{
+			Path source = configDirectory.toPath().resolve(keyFile);
+			if (Files.exists(source))
+			{
+				Files.copy(source, directory.resolve(keyFile), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Path temporaryDomainXml = Files.createTempFile(directory, DOMAIN_XML, ".tmp");
+		Files.copy(domainXml.toPath(), temporaryDomainXml, StandardCopyOption.REPLACE_EXISTING);
+		Files.move(temporaryDomainXml, directory.resolve(DOMAIN_XML), StandardCopyOption.ATOMIC_MOVE,
+		           StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.log(Level.INFO, "Saved a snapshot of the domain configuration in {0}", directory);
+	}
+}
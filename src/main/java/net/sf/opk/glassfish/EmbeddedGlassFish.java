@@ -15,18 +15,31 @@
  */
 package net.sf.opk.glassfish;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URI;
-import java.nio.charset.Charset;
-import java.security.SecureRandom;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +51,8 @@ import org.glassfish.embeddable.GlassFish;
 import org.glassfish.embeddable.GlassFishException;
 import org.glassfish.embeddable.GlassFishProperties;
 import org.glassfish.embeddable.GlassFishRuntime;
-import org.glassfish.security.common.SSHA;
+import org.glassfish.internal.data.ApplicationInfo;
+import org.glassfish.internal.data.ApplicationRegistry;
 
 
 /**
@@ -56,13 +70,45 @@ public class EmbeddedGlassFish
 	private static final String DEFAULT_REALM_FILE = "file";
 	private static final String DEFAULT_REALM_ADMIN = "admin-realm";
 	private static final String DEFAULT_REALM_CERTIFICATE = "certificate";
-	private static final SecureRandom rng = new SecureRandom();
+	private static final String EMBEDDED_CONFIG_PREFIX = "embedded-glassfish-config.server.";
+	private static final String SERVER_CONFIG_PREFIX = "configs.config.server-config.";
+	private static final String EMBEDDED_TEMP_DIRECTORY = "target";
+	/**
+	 * The monitoring modules needed for the metrics: the HTTP service, the thread pools, the connection pools and the
+	 * web container.
+	 */
+	private static final String[] MONITORED_MODULES = {"http-service", "thread-pool", "jdbc-connection-pool",
+	                                                   "web-container"};
 	private File configDir;
 	private GlassFishRuntime runtime;
 	private GlassFish glassfish;
 	private Deployer deployer;
 	private CommandRunner commandRunner;
 	private Deque<String> deployedArtifacts;
+	/**
+	 * The version of the last artifact redeployed with {@link #redeployArtifact(URI, String)}.
+	 */
+	private int artifactVersion;
+	private DomainSnapshot snapshot;
+	private boolean restoredFromSnapshot;
+	/**
+	 * Whether resource changes were applied to the domain after it booted from the snapshot.
+	 */
+	private boolean snapshotOutdated;
+	private UserHasher userHasher = new UserHasher(null);
+	/**
+	 * The digests of the resource definitions in the domain, by key.
+	 */
+	private Map<String, String> resourceLedger = new HashMap<>();
+	private MetricsRecorder metricsRecorder;
+	/**
+	 * The instance root created from the instance template of a persistent install root, if any.
+	 */
+	private File reusedInstanceRoot;
+	/**
+	 * The extra parameters to deploy applications with, as determined by the startup profile.
+	 */
+	private List<String> deployParameters;
 
 
 	static
@@ -84,13 +130,90 @@ public class EmbeddedGlassFish
 	 */
 	public EmbeddedGlassFish(int httpPort, Integer httpsPort) throws GlassFishException
 	{
+		this(httpPort, httpsPort, new NetworkSettings());
+	}
+
+
+	/**
+	 * Create and initialize an embedded GlassFish instance.
+	 *
+	 * @param httpPort        the port to use to listen to HTTP requests
+	 * @param httpsPort       the port to use to listen to HTTPS requests, if any
+	 * @param networkSettings the tuning of the HTTP listeners and their thread pool
+	 * @throws GlassFishException       when the server cannot be initialized
+	 * @throws IllegalArgumentException when the network settings are invalid
+	 */
+	public EmbeddedGlassFish(int httpPort, Integer httpsPort, NetworkSettings networkSettings)
+			throws GlassFishException
+	{
+		this(httpPort, httpsPort, networkSettings, null);
+	}
+
+
+	/**
+	 * Create and initialize an embedded GlassFish instance. If the domain snapshot exists, the instance boots from it.
+	 * Otherwise, it can be saved with {@link #saveSnapshot()} after configuring the instance.
+	 *
+	 * @param httpPort        the port to use to listen to HTTP requests
+	 * @param httpsPort       the port to use to listen to HTTPS requests, if any
+	 * @param networkSettings the tuning of the HTTP listeners and their thread pool
+	 * @param snapshot        the snapshot of the domain configuration to use, if any
+	 * @throws GlassFishException       when the server cannot be initialized
+	 * @throws IllegalArgumentException when the network settings are invalid
+	 */
+	public EmbeddedGlassFish(int httpPort, Integer httpsPort, NetworkSettings networkSettings,
+	                         DomainSnapshot snapshot) throws GlassFishException
+	{
+		this(httpPort, httpsPort, networkSettings, snapshot, null, StartupProfile.FULL_WEB);
+	}
+
+
+	/**
+	 * Create and initialize an embedded GlassFish instance. If the domain snapshot exists, the instance boots from it.
+	 * Otherwise, it can be saved with {@link #saveSnapshot()} after configuring the instance. If a persistent install
+	 * root is given, the instance boots from a copy of its instance template (which is created if needed).
+	 *
+	 * @param httpPort        the port to use to listen to HTTP requests
+	 * @param httpsPort       the port to use to listen to HTTPS requests, if any
+	 * @param networkSettings the tuning of the HTTP listeners and their thread pool
+	 * @param snapshot        the snapshot of the domain configuration to use, if any
+	 * @param installRoot     the persistent install root to use, if any
+	 * @param startupProfile  the startup profile, which determines the services to start
+	 * @throws GlassFishException       when the server cannot be initialized
+	 * @throws IllegalArgumentException when the network settings are invalid
+	 */
+	public EmbeddedGlassFish(int httpPort, Integer httpsPort, NetworkSettings networkSettings,
+	                         DomainSnapshot snapshot, InstallRoot installRoot, StartupProfile startupProfile)
+			throws GlassFishException
+	{
+		networkSettings.validate();
+		deployParameters = startupProfile.getDeployParameters();
+		this.snapshot = snapshot;
+		restoredFromSnapshot = snapshot != null && snapshot.exists();
 		deployer = null;
 		commandRunner = null;
 		deployedArtifacts = new ArrayDeque<>();
+		artifactVersion = 1;
 
-		System.setProperty("glassfish.embedded.tmpdir", "target");
+		System.setProperty("glassfish.embedded.tmpdir", EMBEDDED_TEMP_DIRECTORY);
 
 		BootstrapProperties bootstrapProperties = new BootstrapProperties();
+		boolean reuseInstanceTemplate = installRoot != null && installRoot.hasInstanceTemplate();
+		if (installRoot != null)
+		{
+			try
+			{
+				bootstrapProperties.setInstallRoot(installRoot.getInstallDirectory().getAbsolutePath());
+				if (reuseInstanceTemplate)
+				{
+					reusedInstanceRoot = installRoot.createInstanceRoot(new File(EMBEDDED_TEMP_DIRECTORY));
+				}
+			}
+			catch (IOException e)
+			{
+				throw new GlassFishException("Failed to use the install root " + installRoot.getDirectory(), e);
+			}
+		}
 		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 		runtime = GlassFishRuntime.bootstrap(bootstrapProperties, classLoader);
 
@@ -100,19 +223,89 @@ public class EmbeddedGlassFish
 		{
 			glassFishProperties.setPort("https-listener", httpsPort);
 		}
+		String[] protocols = httpsPort == null ? new String[]{"http-listener"} :
+		                     new String[]{"http-listener", "https-listener"};
+		Map<String, Integer> networkAttributes = networkSettings.toAttributes(protocols);
+		for (Map.Entry<String, Integer> attribute : networkAttributes.entrySet())
+		{
+			if (attribute.getValue() != null)
+			{
+				glassFishProperties.setProperty(EMBEDDED_CONFIG_PREFIX + attribute.getKey(),
+				                                attribute.getValue().toString());
+			}
+		}
+		for (Map.Entry<String, String> setting : startupProfile.getServerSettings().entrySet())
+		{
+			glassFishProperties.setProperty(EMBEDDED_CONFIG_PREFIX + setting.getKey(), setting.getValue());
+		}
+		if (restoredFromSnapshot)
+		{
+			// Read-only, so changes like deployments are not written to the snapshot.
+			glassFishProperties.setConfigFileURI(snapshot.getDomainXml().toURI().toString());
+			glassFishProperties.setConfigFileReadOnly(true);
+		}
+		if (reusedInstanceRoot != null)
+		{
+			glassFishProperties.setInstanceRoot(reusedInstanceRoot.getAbsolutePath());
+			LOGGER.log(Level.INFO, "Booting from the instance template in {0}", installRoot.getDirectory());
+		}
 		glassfish = runtime.newGlassFish(glassFishProperties);
+		if (installRoot != null && !reuseInstanceTemplate)
+		{
+			// GlassFish has created the instance root, but not modified it yet.
+			try
+			{
+				installRoot.saveInstanceTemplate(new File(System.getProperty("com.sun.aas.instanceRoot")));
+			}
+			catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Failed to save the instance template in " + installRoot.getDirectory(), e);
+			}
+		}
 
 		// Workaround for a bug: GlassFish can't always find its own JAAS config...
 		System.setProperty("java.security.auth.login.config", getClass().getResource("/config/login.conf").toString());
 		javax.security.auth.login.Configuration.getConfiguration().refresh();
 
 		// Bootstrapping GlassFish points this system property a directory. The mkdirs() thus always succeeds.
-		configDir = new File(System.getProperty("com.sun.aas.installRoot"), "config");
+		// Embedded GlassFish uses the same directory as install and instance root, unless the install root is given.
+		configDir = new File(System.getProperty("com.sun.aas.instanceRoot"), "config");
 		configDir.mkdirs();
+		if (restoredFromSnapshot)
+		{
+			try
+			{
+				snapshot.restoreKeyFiles(configDir);
+			}
+			catch (IOException e)
+			{
+				throw new GlassFishException("Failed to restore the domain snapshot " + snapshot.getDirectory(), e);
+			}
+			LOGGER.log(Level.INFO, "Booting from the domain snapshot in {0}", snapshot.getDirectory());
+		}
 
 		glassfish.start();
 		deployer = glassfish.getDeployer();
 		commandRunner = glassfish.getCommandRunner();
+
+		logNetworkSettings(networkAttributes.keySet());
+	}
+
+
+	/**
+	 * Log the effective values of the network settings.
+	 *
+	 * @param attributes the attributes to log, as dotted names relative to the server configuration
+	 */
+	private void logNetworkSettings(Collection<String> attributes)
+	{
+		List<String> dottedNames = new ArrayList<>(attributes.size());
+		for (String attribute : attributes)
+		{
+			dottedNames.add(SERVER_CONFIG_PREFIX + attribute);
+		}
+		CommandResult result = commandRunner.run("get", dottedNames.toArray(new String[dottedNames.size()]));
+		LOGGER.log(Level.INFO, "Effective network settings:\n{0}", result.getOutput());
 	}
 
 
@@ -145,29 +338,23 @@ public class EmbeddedGlassFish
 		}
 		else
 		{
-			keyFile = new File(writeStringToConfigFile("keyfile", ""));
+			// The domain configuration refers to the key file, so it must survive the instance if snapshotted.
+			keyFile = snapshot == null ? new File(writeStringToConfigFile("keyfile", "")) :
+			          snapshot.createKeyFile(realmName);
 			createRealm = true;
 		}
 
-		try (PrintWriter writer = new PrintWriter(new FileWriter(keyFile, true)))
+		try (Writer writer = new BufferedWriter(new FileWriter(keyFile, true)))
 		{
-			for (User user : fileRealm.getUsers())
-			{
-				byte[] salt = new byte[8];
-				rng.nextBytes(salt);
-				byte[] password = user.getPassword().getBytes(Charset.defaultCharset());
-				byte[] hash = SSHA.compute(salt, password, "SHA");
-				String ssha = SSHA.encode(salt, hash, "SHA");
-				// anonymous;{SSHA}w9WBMj/jphXlgDWPgozFSSzUgy5Fd/ONd7nPtw==;asadmin
-
-				writer.println(user.getUsername() + ';' + ssha + ';' + join(user.getRoles(), ","));
-			}
+			int userCount = userHasher.writeKeyFile(fileRealm, writer);
+			LOGGER.log(Level.INFO, "Added {0} user(s) to the realm {1}", new Object[]{userCount, realmName});
 		}
 		if (createRealm)
 		{
 			String keyFilePath = keyFile.getPath().replace("\\", "/").replace(":", "\\:");
-			asadmin("create-auth-realm", "--classname", "com.sun.enterprise.security.auth.realm.file.FileRealm",
-			        "--property", "file=" + keyFilePath + ":jaas-context=fileRealm", realmName);
+			asadmin(Collections.singletonList(new Command(
+					"create-auth-realm", "--classname", "com.sun.enterprise.security.auth.realm.file.FileRealm",
+					"--property", "file=" + keyFilePath + ":jaas-context=fileRealm", realmName)));
 		}
 	}
 
@@ -199,41 +386,327 @@ public class EmbeddedGlassFish
 	 *
 	 * @param command   the command to execute
 	 * @param arguments any arguments for the command
+	 * @return the result of the command
+	 */
+	public AsadminResult asadmin(String command, String... arguments)
+	{
+		return asadmin(new Command(command, arguments));
+	}
+
+
+	/**
+	 * Execute asadmin commands in order, and log the results. Execution stops at the first command that fails.
+	 *
+	 * <p>Consecutive {@code set} commands are combined into a single command, as each command has a fixed overhead.
+	 * The commands are not executed concurrently: each one is a transaction on the domain configuration, so they are
+	 * effectively serialized anyway.</p>
+	 *
+	 * @param commands the commands to execute
+	 * @return the results of the executed commands (after combining {@code set} commands)
+	 * @throws GlassFishException when a command fails
 	 */
-	public void asadmin(String command, String... arguments)
+	public List<AsadminResult> asadmin(List<Command> commands) throws GlassFishException
+	{
+		List<AsadminResult> results = new ArrayList<>();
+		for (Command command : combineSetCommands(commands))
+		{
+			AsadminResult result = asadmin(command);
+			results.add(result);
+			if (result.isFailure())
+			{
+				throw new GlassFishException("Command failed: asadmin " + command + "\n" + result.getOutput(),
+				                             result.getFailureCause());
+			}
+		}
+		return results;
+	}
+
+
+	private AsadminResult asadmin(Command command)
 	{
-		CommandResult result = commandRunner.run(command, arguments);
+		String[] parameters = command.getParameters() == null ? new String[0] : command.getParameters();
+		long start = System.nanoTime();
+		CommandResult commandResult = commandRunner.run(command.getCommand(), parameters);
+		AsadminResult result = new AsadminResult(command, commandResult, System.nanoTime() - start);
+
 		Level level = ASADMIN_RESULT_LOG_LEVELS.get(result.getExitStatus());
 		LOGGER.log(level, result.getOutput(), result.getFailureCause());
+		LOGGER.log(Level.FINE, "asadmin {0}", result);
+		return result;
 	}
 
 
 	/**
-	 * Join the elements of a String array using a separator.
+	 * Combine consecutive {@code set} commands into a single command. Commands with options, and commands that set an
+	 * attribute that is already set by the command being combined, are not combined.
 	 *
-	 * @param array     a String array
-	 * @param separator the separator to use
-	 * @return the joined String
+	 * @param commands the commands to combine
+	 * @return the combined commands
 	 */
-	private static String join(String[] array, String separator)
+	static List<Command> combineSetCommands(List<Command> commands)
+	{
+		List<Command> result = new ArrayList<>(commands.size());
+		List<String> assignments = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for (Command command : commands)
+		{
+			if (!isPlainSetCommand(command))
+			{
+				addSetCommand(result, assignments, names);
+				result.add(command);
+				continue;
+			}
+			for (String assignment : command.getParameters())
+			{
+				int equalsIndex = assignment.indexOf('=');
+				String name = equalsIndex == -1 ? assignment : assignment.substring(0, equalsIndex);
+				if (!names.add(name))
+				{
+					addSetCommand(result, assignments, names);
+					names.add(name);
+				}
+				assignments.add(assignment);
+			}
+		}
+		addSetCommand(result, assignments, names);
+		return result;
+	}
+
+
+	private static boolean isPlainSetCommand(Command command)
+	{
+		if (!"set".equals(command.getCommand()) || command.getParameters() == null)
+		{
+			return false;
+		}
+		for (String parameter : command.getParameters())
+		{
+			if (parameter.startsWith("-"))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static void addSetCommand(List<Command> result, List<String> assignments, Set<String> names)
 	{
-		StringBuilder buffer = new StringBuilder();
-		for (String element : array)
+		if (!assignments.isEmpty())
 		{
-			buffer.append(separator).append(element);
+			result.add(new Command("set", assignments.toArray(new String[assignments.size()])));
+			assignments.clear();
+			names.clear();
 		}
-		return buffer.substring(separator.length());
 	}
 
 
 	/**
-	 * Add resources from a resource file to the embedded GlassFish instance.
+	 * Cache the hashed passwords of file realm users in a directory, so unchanged users need not be hashed again.
 	 *
-	 * @param resourceFile the resource file
+	 * @param cacheDirectory the directory to cache hashed passwords in
 	 */
-	public void addResources(File resourceFile) throws GlassFishException
+	public void setUserHashCacheDirectory(File cacheDirectory)
 	{
-		asadmin("add-resources", resourceFile.getPath());
+		userHasher = new UserHasher(cacheDirectory);
+	}
+
+
+	/**
+	 * Determine if this instance booted from a domain snapshot. If so, it is already configured.
+	 *
+	 * @return true if the instance booted from a domain snapshot
+	 */
+	public boolean isRestoredFromSnapshot()
+	{
+		return restoredFromSnapshot;
+	}
+
+
+	/**
+	 * Save the domain configuration as snapshot, unless this instance booted from it and no resource changes were
+	 * applied since (or there is no snapshot).
+	 *
+	 * @throws IOException when the snapshot cannot be saved
+	 */
+	public void saveSnapshot() throws IOException
+	{
+		if (snapshot != null && (!restoredFromSnapshot || snapshotOutdated))
+		{
+			File domainXml = new File(System.getProperty("com.sun.aas.instanceRoot"), "config/domain.xml");
+			snapshot.save(domainXml, configDir, resourceLedger);
+			snapshotOutdated = false;
+		}
+	}
+
+
+	/**
+	 * Add the resources from resource files to the embedded GlassFish instance. If the instance booted from a domain
+	 * snapshot, only the resources that changed since the snapshot was taken are (re)created, and the resources that
+	 * are no longer defined are deleted; {@link #saveSnapshot()} then saves the changes in the snapshot.
+	 *
+	 * @param resourceFiles the resource files
+	 * @throws IOException        when the resource files cannot be read
+	 * @throws GlassFishException when the resources cannot be added
+	 */
+	public void addResources(List<File> resourceFiles) throws IOException, GlassFishException
+	{
+		Map<String, String> appliedResources = restoredFromSnapshot ? snapshot.loadResourceLedger() :
+		                                       Collections.<String, String>emptyMap();
+		List<ResourceDefinitions> definitions = new ArrayList<>();
+		Map<String, String> currentResources = new HashMap<>();
+		for (File resourceFile : resourceFiles)
+		{
+			ResourceDefinitions resourceDefinitions = ResourceDefinitions.parse(resourceFile);
+			definitions.add(resourceDefinitions);
+			currentResources.putAll(resourceDefinitions.getDigests());
+		}
+		Set<String> changedResources = changedResources(definitions, appliedResources);
+
+		// Delete the resources before the pools: deleting a pool also deletes its resources.
+		List<Command> commands = new ArrayList<>();
+		for (boolean deletePools : new boolean[]{false, true})
+		{
+			for (String key : appliedResources.keySet())
+			{
+				boolean isPool = key.contains("-connection-pool:");
+				if (isPool == deletePools && (changedResources.contains(key) || !currentResources.containsKey(key)))
+				{
+					Command command = ResourceDefinitions.deleteCommand(key);
+					if (command == null)
+					{
+						LOGGER.log(Level.WARNING, "Cannot update or delete the resource {0}; delete the domain " +
+						                          "snapshot to apply the change", key);
+						changedResources.remove(key);
+					}
+					else
+					{
+						commands.add(command);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < definitions.size(); i++)
+		{
+			ResourceDefinitions resourceDefinitions = definitions.get(i);
+			List<String> keys = resourceDefinitions.getKeys();
+			keys.retainAll(changedResources);
+			if (keys.size() == resourceDefinitions.getKeys().size())
+			{
+				commands.add(new Command("add-resources", resourceFiles.get(i).getPath()));
+			}
+			else if (!keys.isEmpty())
+			{
+				Path subset = Files.createTempFile(configDir.toPath(), "resources", ".xml");
+				subset.toFile().deleteOnExit();
+				try (OutputStream output = Files.newOutputStream(subset))
+				{
+					resourceDefinitions.writeSubset(keys, output);
+				}
+				commands.add(new Command("add-resources", subset.toString()));
+			}
+		}
+
+		if (restoredFromSnapshot)
+		{
+			LOGGER.log(Level.INFO, "Applying {0} resource change(s) to the domain snapshot", commands.size());
+		}
+		asadmin(commands);
+		resourceLedger = currentResources;
+		snapshotOutdated = restoredFromSnapshot && !commands.isEmpty();
+	}
+
+
+	/**
+	 * Fill the connection pools defined by the resource files, by pinging them. Pinging initializes a pool, which
+	 * creates its steady number of connections.
+	 *
+	 * @return the time it took to fill each pool (in milliseconds), by pool name
+	 */
+	public Map<String, Long> warmUpConnectionPools()
+	{
+		Map<String, Long> fillTimes = new LinkedHashMap<>();
+		for (String key : new TreeSet<>(resourceLedger.keySet()))
+		{
+			if (key.contains("-connection-pool:"))
+			{
+				String poolName = key.substring(key.indexOf(':') + 1);
+				AsadminResult result = asadmin("ping-connection-pool", poolName);
+				if (result.isFailure())
+				{
+					LOGGER.log(Level.WARNING, "Cannot fill the connection pool {0}: the ping failed", poolName);
+				}
+				else
+				{
+					long fillTime = result.getDuration(TimeUnit.MILLISECONDS);
+					LOGGER.log(Level.INFO, "Filled the connection pool {0} in {1}ms", new Object[]{poolName, fillTime});
+					fillTimes.put(poolName, fillTime);
+				}
+			}
+		}
+		return fillTimes;
+	}
+
+
+	/**
+	 * Enable monitoring, and start recording metrics in a file until the instance is shut down.
+	 *
+	 * @param metricsFile    the file to append the metrics to
+	 * @param intervalMillis the time between samples, in milliseconds
+	 * @throws IOException        when the metrics file cannot be opened
+	 * @throws GlassFishException when monitoring cannot be enabled
+	 * @see MetricsRecorder
+	 */
+	public void recordMetrics(File metricsFile, long intervalMillis) throws IOException, GlassFishException
+	{
+		String[] monitoringLevels = new String[MONITORED_MODULES.length];
+		for (int i = 0; i < MONITORED_MODULES.length; i++)
+		{
+			monitoringLevels[i] = SERVER_CONFIG_PREFIX + "monitoring-service.module-monitoring-levels." +
+			                      MONITORED_MODULES[i] + "=HIGH";
+		}
+		asadmin(Collections.singletonList(new Command("set", monitoringLevels)));
+		// A separate command runner, as this instance is not thread-safe.
+		metricsRecorder = new MetricsRecorder(glassfish.getCommandRunner(), metricsFile, intervalMillis);
+	}
+
+
+	/**
+	 * Determine which resources must be (re)created: those that are new or changed, and those that use a connection
+	 * pool that is deleted or recreated (as deleting a pool deletes its resources).
+	 *
+	 * @param definitions      the resource definitions
+	 * @param appliedResources the digests of the resource definitions already in the domain, by key
+	 * @return the keys of the resources to create
+	 */
+	static Set<String> changedResources(List<ResourceDefinitions> definitions, Map<String, String> appliedResources)
+	{
+		Set<String> currentResources = new HashSet<>();
+		Set<String> changedResources = new LinkedHashSet<>();
+		for (ResourceDefinitions resourceDefinitions : definitions)
+		{
+			for (Map.Entry<String, String> resource : resourceDefinitions.getDigests().entrySet())
+			{
+				currentResources.add(resource.getKey());
+				if (!resource.getValue().equals(appliedResources.get(resource.getKey())))
+				{
+					changedResources.add(resource.getKey());
+				}
+			}
+		}
+		for (ResourceDefinitions resourceDefinitions : definitions)
+		{
+			for (String key : resourceDefinitions.getKeys())
+			{
+				String poolKey = resourceDefinitions.getPoolKey(key);
+				if (poolKey != null && appliedResources.containsKey(poolKey) &&
+				    (changedResources.contains(poolKey) || !currentResources.contains(poolKey)))
+				{
+					changedResources.add(key);
+				}
+			}
+		}
+		return changedResources;
 	}
 
 
@@ -241,11 +714,27 @@ public class EmbeddedGlassFish
 	 * Deploy an application from a file. Undeploying is only done by {@link #shutdown()}.
 	 *
 	 * @param file the file to deploy
+	 * @return the name of the deployed application
 	 * @throws GlassFishException when deployment fails
 	 */
-	public void deployApplication(File file) throws GlassFishException
+	public String deployApplication(File file) throws GlassFishException
 	{
-		deployer.deploy(file);
+		return deployer.deploy(file, deployParameters.toArray(new String[deployParameters.size()]));
+	}
+
+
+	/**
+	 * Redeploy an application deployed with {@link #deployApplication(File)} from a (changed) file.
+	 *
+	 * @param application the name of the deployed application
+	 * @param file        the file to deploy
+	 * @throws GlassFishException when deployment fails
+	 */
+	public void redeployApplication(String application, File file) throws GlassFishException
+	{
+		List<String> parameters = new ArrayList<>(deployParameters);
+		Collections.addAll(parameters, "--name", application, "--force", "true");
+		deployer.deploy(file, parameters.toArray(new String[parameters.size()]));
 	}
 
 
@@ -259,11 +748,89 @@ public class EmbeddedGlassFish
 	 */
 	public void deployArtifact(URI artifactLocation, String contextRoot) throws IOException, GlassFishException
 	{
-		String application = deployer.deploy(artifactLocation, "--contextroot", contextRoot, "--createtables", "true");
+		List<String> parameters = new ArrayList<>(deployParameters);
+		Collections.addAll(parameters, "--contextroot", contextRoot, "--createtables", "true");
+		String application = deployer.deploy(artifactLocation, parameters.toArray(new String[parameters.size()]));
 		deployedArtifacts.push(application);
 	}
 
 
+	/**
+	 * Redeploy the artifact that was the last one deployed, as new version of the application. Unlike undeploying
+	 * and deploying it again, this keeps the context root available for most of the redeploy:
+	 * <ol>
+	 * <li>The new version is deployed disabled, so GlassFish prepares it while the old version handles requests.</li>
+	 * <li>The new version is enabled, which disables the old version. The web container stops accepting requests for
+	 * the old version, and waits for the requests in progress before stopping it.</li>
+	 * <li>The old version is undeployed. Its tables are not dropped, as the new version uses them.</li>
+	 * </ol>
+	 *
+	 * @param artifactLocation the location of the artifact to deploy
+	 * @param contextRoot      the context root to use
+	 * @throws IOException        when the artifact is unavailable
+	 * @throws GlassFishException when deployment fails
+	 */
+	public void redeployArtifact(URI artifactLocation, String contextRoot) throws IOException, GlassFishException
+	{
+		String previousVersion = deployedArtifacts.peek();
+		if (previousVersion == null)
+		{
+			deployArtifact(artifactLocation, contextRoot);
+			return;
+		}
+		artifactVersion++;
+		String newVersion = versionedName(previousVersion, artifactVersion);
+		List<String> parameters = new ArrayList<>(deployParameters);
+		Collections.addAll(parameters, "--name", newVersion, "--contextroot", contextRoot, "--createtables", "true",
+		                   "--enabled", "false");
+		deployer.deploy(artifactLocation, parameters.toArray(new String[parameters.size()]));
+		asadmin(Collections.singletonList(new Command("enable", newVersion)));
+		deployedArtifacts.pop();
+		deployedArtifacts.push(newVersion);
+		deployer.undeploy(previousVersion);
+		LOGGER.log(Level.INFO, "Replaced application {0} with {1}", new Object[]{previousVersion, newVersion});
+	}
+
+
+	/**
+	 * Determine the name of a version of an application, using the version syntax of GlassFish:
+	 * {@code name:version}.
+	 *
+	 * @param applicationName the name of (any version of) the application
+	 * @param version         the version
+	 * @return the name of the application version
+	 */
+	static String versionedName(String applicationName, int version)
+	{
+		int versionSeparator = applicationName.indexOf(':');
+		String untaggedName = versionSeparator == -1 ? applicationName : applicationName.substring(0, versionSeparator);
+		return untaggedName + ':' + version;
+	}
+
+
+	/**
+	 * Find the class loaders of the artifacts deployed with {@link #deployArtifact(URI, String)}. Call this before
+	 * undeploying them, to check if their class loaders are garbage collected afterwards.
+	 *
+	 * @return the class loader of each deployed artifact, by application name
+	 * @throws GlassFishException when the application registry is unavailable
+	 */
+	public Map<String, ClassLoader> getArtifactClassLoaders() throws GlassFishException
+	{
+		Map<String, ClassLoader> classLoaders = new LinkedHashMap<>();
+		ApplicationRegistry applicationRegistry = glassfish.getService(ApplicationRegistry.class);
+		for (String deployedArtifact : deployedArtifacts)
+		{
+			ApplicationInfo applicationInfo = applicationRegistry.get(deployedArtifact);
+			if (applicationInfo != null && applicationInfo.getAppClassLoader() != null)
+			{
+				classLoaders.put(deployedArtifact, applicationInfo.getAppClassLoader());
+			}
+		}
+		return classLoaders;
+	}
+
+
 	/**
 	 * Undeploy the artifact that was the last one deployed with {@link #deployArtifact(URI, String)}.
 	 * Calling this method again undeploys the artifact deployed before that, etc.
@@ -272,9 +839,9 @@ public class EmbeddedGlassFish
 	 */
 	public void undeployArtifacts() throws GlassFishException
 	{
-		for (String deployedArtifact : deployedArtifacts)
+		if (!deployedArtifacts.isEmpty())
 		{
-			deployer.undeploy(deployedArtifact, "--droptables", "true");
+			deployer.undeploy(deployedArtifacts.pop(), "--droptables", "true");
 		}
 	}
 
@@ -286,9 +853,33 @@ public class EmbeddedGlassFish
 	 */
 	public void shutdown() throws GlassFishException
 	{
+		if (metricsRecorder != null)
+		{
+			try
+			{
+				metricsRecorder.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Failed to close the metrics file", e);
+			}
+			metricsRecorder = null;
+		}
 		deployer = null;
 		glassfish.stop();
 		glassfish.dispose();
 		runtime.shutdown();
+		if (reusedInstanceRoot != null)
+		{
+			try
+			{
+				InstallRoot.deleteDirectory(reusedInstanceRoot.toPath());
+			}
+			catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Failed to delete the instance root " + reusedInstanceRoot, e);
+			}
+			reusedInstanceRoot = null;
+		}
 	}
 }
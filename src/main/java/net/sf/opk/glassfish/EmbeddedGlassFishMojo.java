@@ -31,6 +31,14 @@ public abstract class EmbeddedGlassFishMojo extends AbstractMojo
 	 * Shutdown hook for the embedded GlassFish instance.
 	 */
 	private static Callable<?> glassFishShutdownHook = null;
+	/**
+	 * The configuration fingerprint of the embedded GlassFish instance, if known.
+	 */
+	private static String runningFingerprint = null;
+	/**
+	 * Redeploy hook for the web application in the embedded GlassFish instance.
+	 */
+	private static Callable<Void> runningRedeployHook = null;
 
 
 	protected void setGlassFishShutdownHook(Callable<?> glassFishShutdownHook)
@@ -39,6 +47,29 @@ public abstract class EmbeddedGlassFishMojo extends AbstractMojo
 	}
 
 
+	protected void setRunningConfiguration(String fingerprint, Callable<Void> redeployHook)
+	{
+		runningFingerprint = fingerprint;
+		runningRedeployHook = redeployHook;
+	}
+
+
+	/**
+	 * Find the redeploy hook of the running embedded GlassFish instance, if it has the specified configuration.
+	 *
+	 * @param fingerprint the fingerprint of the configuration
+	 * @return the redeploy hook of the running instance, or {@code null} if there is none with the configuration
+	 */
+	protected Callable<Void> getRunningRedeployHook(String fingerprint)
+	{
+		if (glassFishShutdownHook != null && fingerprint != null && fingerprint.equals(runningFingerprint))
+		{
+			return runningRedeployHook;
+		}
+		return null;
+	}
+
+
 	protected void shutdown()
 	{
 		try
@@ -47,6 +78,7 @@ public abstract class EmbeddedGlassFishMojo extends AbstractMojo
 			{
 				glassFishShutdownHook.call();
 				glassFishShutdownHook = null;
+				setRunningConfiguration(null, null);
 			}
 		}
 		catch (Exception e)
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.embeddable.GlassFishException;
+
+
+/**
+ * <p>Ledger of the extra applications (the {@code war} and {@code ear} dependencies) deployed in GlassFish, with the
+ * checksum of their files. This allows redeploying only the applications whose file changed, for example because a
+ * sibling module in the reactor was rebuilt, instead of restarting GlassFish.</p>
+ *
+ * <p>The directories containing the files can be watched, to redeploy changed applications automatically. The methods
+ * of this class are synchronized, but the callers must ensure the {@link EmbeddedGlassFish} instance is not used
+ * concurrently.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ExtraApplications implements AutoCloseable
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ExtraApplications.class.getName());
+	/**
+	 * The time without file changes to wait for before handling them, as files are written in steps.
+	 */
+	private static final long QUIET_PERIOD_MILLIS = 1000;
+	/**
+	 * The deployed applications, by absolute file.
+	 */
+	private final Map<Path, DeployedApplication> ledger;
+	private WatchService watchService;
+
+
+	public ExtraApplications()
+	{
+		ledger = new LinkedHashMap<>();
+		watchService = null;
+	}
+
+
+	/**
+	 * Deploy applications, and record them in the ledger (replacing what was recorded before).
+	 *
+	 * @param glassFish the GlassFish instance to deploy the applications in
+	 * @param files     the files of the applications to deploy
+	 * @throws IOException        when a file cannot be read
+	 * @throws GlassFishException when deployment fails
+	 */
+	public synchronized void deployAll(EmbeddedGlassFish glassFish, List<File> files)
+			throws IOException, GlassFishException
+	{
+		ledger.clear();
+		for (File file : files)
+		{
+			LOGGER.log(Level.FINE, "Deploying dependency {0}", file.getName());
+			Path path = file.toPath().toAbsolutePath();
+			String checksum = Digests.digestFile(path);
+			String application = glassFish.deployApplication(file);
+			ledger.put(path, new DeployedApplication(application, checksum));
+			LOGGER.log(Level.INFO, "Deployed dependency {0} as {1}", new Object[]{file.getName(), application});
+		}
+	}
+
+
+	/**
+	 * Redeploy the applications whose file changed since it was deployed. Applications whose file is missing (for
+	 * example while it is being rebuilt) are skipped.
+	 *
+	 * @param glassFish the GlassFish instance the applications are deployed in
+	 * @return the names of the redeployed applications
+	 * @throws IOException        when a file cannot be read
+	 * @throws GlassFishException when deployment fails
+	 */
+	public synchronized List<String> redeployChanged(EmbeddedGlassFish glassFish)
+			throws IOException, GlassFishException
+	{
+		List<String> redeployed = new ArrayList<>();
+		for (Map.Entry<Path, DeployedApplication> entry : ledger.entrySet())
+		{
+			Path path = entry.getKey();
+			DeployedApplication deployedApplication = entry.getValue();
+			if (!Files.isRegularFile(path))
+			{
+				continue;
+			}
+			String checksum = Digests.digestFile(path);
+			if (!checksum.equals(deployedApplication.checksum))
+			{
+				long start = System.nanoTime();
+				glassFish.redeployApplication(deployedApplication.name, path.toFile());
+				entry.setValue(new DeployedApplication(deployedApplication.name, checksum));
+				redeployed.add(deployedApplication.name);
+				LOGGER.log(Level.INFO, "Redeployed {0} in {1}ms: {2} changed", new Object[]{deployedApplication.name,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), path.getFileName()});
+			}
+		}
+		return redeployed;
+	}
+
+
+	/**
+	 * Watch the files of the deployed applications, and call a callback when they change. The callback should call
+	 * {@link #redeployChanged(EmbeddedGlassFish)}. Does nothing if the files are already watched.
+	 *
+	 * @param callback the callback to call when files of deployed applications change
+	 * @throws IOException when the directories of the files cannot be watched
+	 */
+	public synchronized void watch(final Callable<?> callback) throws IOException
+	{
+		if (watchService != null || ledger.isEmpty())
+		{
+			return;
+		}
+		final WatchService newWatchService = FileSystems.getDefault().newWatchService();
+		final Set<Path> files = new LinkedHashSet<>(ledger.keySet());
+		for (Path directory : parentDirectories(files))
+		{
+			directory.register(newWatchService, StandardWatchEventKinds.ENTRY_CREATE,
+			                   StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		watchService = newWatchService;
+
+		Thread watcherThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!Thread.currentThread().isInterrupted())
+					{
+						awaitChange(newWatchService, files);
+						try
+						{
+							callback.call();
+						}
+						catch (Exception e)
+						{
+							LOGGER.log(Level.WARNING, "Failed to redeploy the changed extra applications", e);
+						}
+					}
+				}
+				catch (InterruptedException | ClosedWatchServiceException ignored)
+				{
+					// Ignore: we're closed.
+				}
+			}
+		}, "extra-application-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		LOGGER.log(Level.INFO, "Watching {0} extra application(s) for changes", files.size());
+	}
+
+
+	/**
+	 * Wait until one of the watched files changes, and then until the changes have stopped.
+	 *
+	 * @param watchService the watch service to take events from
+	 * @param files        the files to wait for
+	 * @throws InterruptedException when interrupted while waiting
+	 */
+	private static void awaitChange(WatchService watchService, Set<Path> files) throws InterruptedException
+	{
+		boolean changed = false;
+		WatchKey watchKey = watchService.take();
+		while (watchKey != null)
+		{
+			Path directory = (Path)watchKey.watchable();
+			for (WatchEvent<?> event : watchKey.pollEvents())
+			{
+				Object context = event.context();
+				changed |= context != null && files.contains(directory.resolve((Path)context));
+			}
+			if (!watchKey.reset())
+			{
+				LOGGER.log(Level.WARNING, "Cannot watch {0} for changes anymore", directory);
+			}
+			// Once a file changed, wait for a quiet period: the build may still be writing it.
+			watchKey = changed ? watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS) : watchService.take();
+		}
+	}
+
+
+	static Set<Path> parentDirectories(Iterable<Path> files)
+	{
+		Set<Path> directories = new LinkedHashSet<>();
+		for (Path file : files)
+		{
+			directories.add(file.toAbsolutePath().getParent());
+		}
+		return directories;
+	}
+
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (watchService != null)
+		{
+			watchService.close();
+			watchService = null;
+		}
+	}
+
+
+	private static class DeployedApplication
+	{
+		private final String name;
+		private final String checksum;
+
+
+		private DeployedApplication(String name, String checksum)
+		{
+			this.name = name;
+			this.checksum = checksum;
+		}
+	}
+}
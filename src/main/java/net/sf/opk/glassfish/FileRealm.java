@@ -15,7 +15,10 @@
  */
 package net.sf.opk.glassfish;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 
@@ -24,7 +27,7 @@ import java.util.Arrays;
  *
  * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
  */
-public class FileRealm implements Serializable
+public class FileRealm
 {
 	/**
 	 * The name of the realm as used in the {@code web.xml} of a web application.
@@ -34,6 +37,14 @@ public class FileRealm implements Serializable
 	 * The users to add to the realm.
 	 */
 	private User[] users;
+	/**
+	 * A CSV or TSV file with more users to add to the realm (see {@link UserFileReader}).
+	 */
+	private File usersFile;
+	/**
+	 * Generated users to add to the realm.
+	 */
+	private UserGenerator generatedUsers;
 
 
 	public String getRealmName()
@@ -60,6 +71,86 @@ public class FileRealm implements Serializable
 	}
 
 
+	public File getUsersFile()
+	{
+		return usersFile;
+	}
+
+
+	public void setUsersFile(File usersFile)
+	{
+		this.usersFile = usersFile;
+	}
+
+
+	public UserGenerator getGeneratedUsers()
+	{
+		return generatedUsers;
+	}
+
+
+	public void setGeneratedUsers(UserGenerator generatedUsers)
+	{
+		this.generatedUsers = generatedUsers;
+	}
+
+
+	/**
+	 * Write this realm in the binary configuration format.
+	 *
+	 * @param output the output to write to
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(DataOutput output) throws IOException
+	{
+		ConfigurationFormat.writeString(output, realmName);
+		output.writeBoolean(users != null);
+		if (users != null)
+		{
+			output.writeInt(users.length);
+			for (User user : users)
+			{
+				user.writeTo(output);
+			}
+		}
+		ConfigurationFormat.writeFile(output, usersFile);
+		output.writeBoolean(generatedUsers != null);
+		if (generatedUsers != null)
+		{
+			generatedUsers.writeTo(output);
+		}
+	}
+
+
+	/**
+	 * Read a realm in the binary configuration format.
+	 *
+	 * @param input the input to read from
+	 * @return the realm
+	 * @throws IOException when reading fails
+	 */
+	public static FileRealm readFrom(DataInput input) throws IOException
+	{
+		FileRealm fileRealm = new FileRealm();
+		fileRealm.setRealmName(ConfigurationFormat.readString(input));
+		if (input.readBoolean())
+		{
+			User[] users = new User[ConfigurationFormat.readLength(input)];
+			for (int i = 0; i < users.length; i++)
+			{
+				users[i] = User.readFrom(input);
+			}
+			fileRealm.setUsers(users);
+		}
+		fileRealm.setUsersFile(ConfigurationFormat.readFile(input));
+		if (input.readBoolean())
+		{
+			fileRealm.setGeneratedUsers(UserGenerator.readFrom(input));
+		}
+		return fileRealm;
+	}
+
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -73,7 +164,9 @@ public class FileRealm implements Serializable
 		}
 
 		FileRealm that = (FileRealm)o;
-		return this.realmName.equals(that.realmName) && Arrays.equals(this.users, that.users);
+		return this.realmName.equals(that.realmName) && Arrays.equals(this.users, that.users) &&
+		       (usersFile == null ? that.usersFile == null : usersFile.equals(that.usersFile)) &&
+		       (generatedUsers == null ? that.generatedUsers == null : generatedUsers.equals(that.generatedUsers));
 	}
 
 
@@ -82,6 +175,8 @@ public class FileRealm implements Serializable
 	{
 		int result = realmName.hashCode();
 		result = 31 * result + Arrays.hashCode(users);
+		result = 31 * result + (usersFile == null ? 0 : usersFile.hashCode());
+		result = 31 * result + (generatedUsers == null ? 0 : generatedUsers.hashCode());
 		return result;
 	}
 }
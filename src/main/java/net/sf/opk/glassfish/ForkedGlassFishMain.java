@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.DONE;
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.FAILED;
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.READY;
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.REDEPLOY;
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.RESPONSE_PREFIX;
+import static net.sf.opk.glassfish.ForkedGlassFishWebPluginRunner.SHUTDOWN;
+
+
+/**
+ * Main class of the JVM forked by {@link ForkedGlassFishWebPluginRunner}: runs a {@link GlassFishWebPluginRunner} as
+ * instructed via the standard input. When the standard input is closed (i.e. the Maven JVM has exited), GlassFish is
+ * shut down.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ForkedGlassFishMain
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ForkedGlassFishMain.class.getName());
+
+
+	private ForkedGlassFishMain()
+	{
+		// Utility class.
+	}
+
+
+	public static void main(String[] args) throws IOException
+	{
+		// Keep the standard output for the responses: anything else printed there goes to the standard error instead.
+		PrintStream responses = System.out;
+		System.setOut(System.err);
+		DataInputStream commands = new DataInputStream(new BufferedInputStream(System.in));
+
+		byte[] configurationBytes = new byte[commands.readInt()];
+		commands.readFully(configurationBytes);
+		GlassFishWebPluginRunner runner;
+		try
+		{
+			runner = new GlassFishWebPluginRunner(configurationBytes);
+			runner.call();
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.SEVERE, "Failed to start GlassFish", e);
+			respond(responses, FAILED + ' ' + e);
+			System.exit(1);
+			return;
+		}
+		respond(responses, READY);
+
+		while (true)
+		{
+			String command;
+			try
+			{
+				command = commands.readUTF();
+			}
+			catch (EOFException e)
+			{
+				LOGGER.log(Level.WARNING, "The Maven JVM has exited: shutting down GlassFish");
+				command = SHUTDOWN;
+			}
+			Callable<Void> hook = REDEPLOY.equals(command) ? runner.getRedeployHook() : runner.getShutdownHook();
+			try
+			{
+				hook.call();
+				respond(responses, DONE);
+			}
+			catch (Exception e)
+			{
+				LOGGER.log(Level.SEVERE, "Failed to " + command, e);
+				respond(responses, FAILED + ' ' + e);
+			}
+			if (!REDEPLOY.equals(command))
+			{
+				// Stop any non-daemon threads GlassFish or the application left behind.
+				System.exit(0);
+			}
+		}
+	}
+
+
+	private static void respond(PrintStream responses, String response)
+	{
+		responses.println(RESPONSE_PREFIX + response.replaceAll("\\s+", " "));
+		responses.flush();
+	}
+}
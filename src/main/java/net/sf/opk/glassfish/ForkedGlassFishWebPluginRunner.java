@@ -0,0 +1,385 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>Callable to run GlassFish in a forked JVM, with its own JVM options (like heap size and garbage collector). This
+ * keeps the heap, garbage collection and JIT compilation of GlassFish separate from those of Maven, so measurements
+ * reflect how the application behaves in production. Like {@link GlassFishWebPluginRunner}, it provides hooks to
+ * redeploy and shutdown.</p>
+ *
+ * <p>The forked JVM runs {@link ForkedGlassFishMain}, which is controlled using its standard input and output: the
+ * configuration (in its binary format) and the commands are sent to its input, and it replies on its output with
+ * lines starting with {@link #RESPONSE_PREFIX}. Its output is read continuously by a daemon thread, which forwards the
+ * other output lines (like GC logging) to the log: otherwise, the forked JVM blocks when it writes to a full pipe. The
+ * standard error stream (including the GlassFish logging) is inherited.</p>
+ *
+ * <p>A forked JVM that hangs must not hang the build: responses are awaited for a limited time, and after shutdown the
+ * forked JVM is destroyed if it does not exit in time.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ForkedGlassFishWebPluginRunner implements Callable<Void>
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ForkedGlassFishWebPluginRunner.class.getName());
+	/**
+	 * The prefix of the lines in the output of the forked JVM that are responses to the commands.
+	 */
+	static final String RESPONSE_PREFIX = "@glassfish-web-plugin:";
+	static final String REDEPLOY = "redeploy";
+	static final String SHUTDOWN = "shutdown";
+	static final String READY = "ready";
+	static final String DONE = "done";
+	static final String FAILED = "failed";
+	/**
+	 * Queued (as this instance) when the output of the forked JVM ends.
+	 */
+	private static final String END_OF_OUTPUT = new String("end of output");
+	/**
+	 * The default time to wait for a response. Starting or redeploying (including the warm-up) can take long, so this
+	 * is generous: it only protects against a forked JVM that hangs.
+	 */
+	private static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+	/**
+	 * The default time to wait for the forked JVM to exit after the shutdown command, before destroying it.
+	 */
+	private static final long DEFAULT_EXIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	/**
+	 * The time between checks whether the forked JVM has exited.
+	 */
+	private static final long EXIT_POLL_INTERVAL_MILLIS = 100;
+	private final List<String> command;
+	private final byte[] configurationBytes;
+	private ClassDataSharingArchive classDataSharingArchive;
+	private Process process;
+	private DataOutputStream commands;
+	/**
+	 * The responses of the forked JVM (without prefix), in the order they were received.
+	 */
+	private final BlockingQueue<String> responses;
+	private long responseTimeoutMillis;
+	private long exitTimeoutMillis;
+
+
+	/**
+	 * Create a runner for GlassFish in a forked JVM.
+	 *
+	 * @param javaExecutable     the java executable to fork
+	 * @param jvmArgs            the options for the forked JVM
+	 * @param classPath          the classpath of the plugin
+	 * @param configurationBytes the configuration, as byte array
+	 */
+	public ForkedGlassFishWebPluginRunner(File javaExecutable, List<String> jvmArgs, List<File> classPath,
+	                                      byte[] configurationBytes)
+	{
+		this(javaExecutable, jvmArgs, classPath, ForkedGlassFishMain.class.getName(), configurationBytes);
+	}
+
+
+	ForkedGlassFishWebPluginRunner(File javaExecutable, List<String> jvmArgs, List<File> classPath, String mainClass,
+	                               byte[] configurationBytes)
+	{
+		StringBuilder classPathArgument = new StringBuilder();
+		for (File file : classPath)
+		{
+			if (classPathArgument.length() > 0)
+			{
+				classPathArgument.append(File.pathSeparatorChar);
+			}
+			classPathArgument.append(file.getAbsolutePath());
+		}
+
+		command = new ArrayList<>();
+		command.add(javaExecutable.getPath());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(classPathArgument.toString());
+		command.add(mainClass);
+		this.configurationBytes = configurationBytes;
+		responses = new LinkedBlockingQueue<>();
+		responseTimeoutMillis = DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+		exitTimeoutMillis = DEFAULT_EXIT_TIMEOUT_MILLIS;
+	}
+
+
+	/**
+	 * Change the time to wait for the forked JVM.
+	 *
+	 * @param responseTimeoutMillis the time to wait for a response to a command, in milliseconds
+	 * @param exitTimeoutMillis     the time to wait for the forked JVM to exit after shutdown, in milliseconds
+	 */
+	void setTimeouts(long responseTimeoutMillis, long exitTimeoutMillis)
+	{
+		this.responseTimeoutMillis = responseTimeoutMillis;
+		this.exitTimeoutMillis = exitTimeoutMillis;
+	}
+
+
+	/**
+	 * Use a class data sharing archive for the forked JVM.
+	 *
+	 * @param classDataSharingArchive the archive to use (and create, if it does not exist yet)
+	 */
+	public void setClassDataSharingArchive(ClassDataSharingArchive classDataSharingArchive)
+	{
+		this.classDataSharingArchive = classDataSharingArchive;
+	}
+
+
+	/**
+	 * Split JVM options as given on the command line (separated by whitespace) into separate options.
+	 *
+	 * @param jvmArgs the JVM options, or {@code null}
+	 * @return the JVM options
+	 */
+	public static List<String> splitJvmArgs(String jvmArgs)
+	{
+		List<String> result = new ArrayList<>();
+		if (jvmArgs != null)
+		{
+			for (String jvmArg : jvmArgs.trim().split("\\s+"))
+			{
+				if (!jvmArg.isEmpty())
+				{
+					result.add(jvmArg);
+				}
+			}
+		}
+		return result;
+	}
+
+
+	@Override
+	public Void call() throws IOException
+	{
+		List<String> processCommand = new ArrayList<>(command);
+		if (classDataSharingArchive != null)
+		{
+			// Add the options before the classpath and main class.
+			processCommand.addAll(command.size() - 3, classDataSharingArchive.getJvmArgs());
+		}
+		LOGGER.log(Level.INFO, "Forking a JVM for GlassFish with options {0}",
+		           processCommand.subList(1, processCommand.size() - 3));
+		ProcessBuilder processBuilder = new ProcessBuilder(processCommand);
+		processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		process = processBuilder.start();
+		commands = new DataOutputStream(process.getOutputStream());
+		Thread outputPump = new Thread(new OutputPump(new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))), "forked-glassfish-output");
+		outputPump.setDaemon(true);
+		outputPump.start();
+
+		commands.writeInt(configurationBytes.length);
+		commands.write(configurationBytes);
+		commands.flush();
+		try
+		{
+			expectResponse(READY, "start GlassFish");
+		}
+		catch (IOException e)
+		{
+			process.destroy();
+			throw e;
+		}
+		return null;
+	}
+
+
+	private synchronized void sendCommand(String command, String description) throws IOException
+	{
+		commands.writeUTF(command);
+		commands.flush();
+		expectResponse(DONE, description);
+	}
+
+
+	private void expectResponse(String expectedResponse, String description) throws IOException
+	{
+		String response;
+		try
+		{
+			response = responses.poll(responseTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the forked JVM to " + description);
+		}
+		if (response == null)
+		{
+			throw new IOException(String.format("Failed to %s: the forked JVM did not respond within %d seconds",
+			                                    description, TimeUnit.MILLISECONDS.toSeconds(responseTimeoutMillis)));
+		}
+		if (response == END_OF_OUTPUT)
+		{
+			// Keep the marker for later commands.
+			responses.add(END_OF_OUTPUT);
+			throw new IOException("Failed to " + description + ": the forked JVM exited unexpectedly");
+		}
+
+		if (!response.equals(expectedResponse))
+		{
+			String reason = response.startsWith(FAILED) ? response.substring(FAILED.length()).trim() :
+			                "unexpected response " + response;
+			throw new IOException("Failed to " + description + " in the forked JVM: " + reason);
+		}
+	}
+
+
+	public Callable<Void> getShutdownHook()
+	{
+		return new Callable<Void>()
+		{
+			@Override
+			public Void call() throws IOException, InterruptedException
+			{
+				try
+				{
+					sendCommand(SHUTDOWN, "shutdown GlassFish");
+				}
+				finally
+				{
+					commands.close();
+					Integer exitValue = waitForExit();
+					if (exitValue == null)
+					{
+						LOGGER.log(Level.WARNING, "The forked JVM did not exit within {0} seconds: destroying it",
+						           TimeUnit.MILLISECONDS.toSeconds(exitTimeoutMillis));
+						process.destroy();
+						exitValue = waitForExit();
+					}
+					if (exitValue == null)
+					{
+						LOGGER.warning("The forked JVM could not be destroyed: it may still be running");
+					}
+					else
+					{
+						LOGGER.log(Level.FINE, "The forked JVM exited with exit value {0}", exitValue);
+					}
+					if (classDataSharingArchive != null)
+					{
+						classDataSharingArchive.forkedJvmExited();
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+
+	/**
+	 * Wait for the forked JVM to exit, for at most the exit timeout.
+	 *
+	 * @return the exit value of the forked JVM, or {@code null} if it is still running
+	 */
+	private Integer waitForExit() throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + exitTimeoutMillis;
+		while (true)
+		{
+			try
+			{
+				return process.exitValue();
+			}
+			catch (IllegalThreadStateException stillRunning)
+			{
+				if (System.currentTimeMillis() >= deadline)
+				{
+					return null;
+				}
+				Thread.sleep(EXIT_POLL_INTERVAL_MILLIS);
+			}
+		}
+	}
+
+
+	public Callable<Void> getRedeployHook()
+	{
+		return new Callable<Void>()
+		{
+			@Override
+			public Void call() throws IOException
+			{
+				sendCommand(REDEPLOY, "redeploy the web application");
+				return null;
+			}
+		};
+	}
+
+
+	/**
+	 * Reads the output of the forked JVM until it ends: queues the responses, and logs the other lines.
+	 */
+	private class OutputPump implements Runnable
+	{
+		private final BufferedReader output;
+
+
+		private OutputPump(BufferedReader output)
+		{
+			this.output = output;
+		}
+
+
+		@Override
+		public void run()
+		{
+			try (BufferedReader reader = output)
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					if (line.startsWith(RESPONSE_PREFIX))
+					{
+						responses.add(line.substring(RESPONSE_PREFIX.length()));
+					}
+					else
+					{
+						LOGGER.info(line);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Failed to read the output of the forked JVM", e);
+			}
+			finally
+			{
+				responses.add(END_OF_OUTPUT);
+			}
+		}
+	}
+}
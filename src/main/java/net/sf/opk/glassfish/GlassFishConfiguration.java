@@ -2,11 +2,12 @@ package net.sf.opk.glassfish;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -16,10 +17,22 @@ import java.util.List;
  * Simple class to hold the configuration for GlassFish. Capable of initializing itzelf from and serializing itself to a byte array. This class performs no
  * validation.
  *
+ * <p>The binary format starts with a magic number and a format version, followed by the fields in declaration order.
+ * When the format changes, the version is incremented, so an outdated reader fails clearly instead of misreading the
+ * data.</p>
+ *
  * @author <a href="mailto:owestra@bol.com">Oscar Westra van Holthe - Kind</a>
  */
-public class GlassFishConfiguration implements Serializable
+public class GlassFishConfiguration
 {
+	/**
+	 * The first bytes of the binary format: "GFWC" in ASCII.
+	 */
+	private static final int MAGIC = 0x47465743;
+	/**
+	 * The current version of the binary format.
+	 */
+	private static final int FORMAT_VERSION = 11;
 	/**
 	 * The HTTP port GlassFish should listen on.
 	 */
@@ -70,6 +83,83 @@ public class GlassFishConfiguration implements Serializable
 	 * The classpath entries for the web application to deploy.
 	 */
 	private final List<File> webApplicationClassPath;
+	/**
+	 * Paths (relative to the context root) to request after deploying the web application, to warm it up.
+	 */
+	private final List<String> warmUpRequests;
+	/**
+	 * Whether to also request all JSP files in the web application sources after deploying, to warm them up.
+	 */
+	private boolean warmUpJsps;
+	/**
+	 * The number of times to request each warm-up path.
+	 */
+	private int warmUpIterations;
+	/**
+	 * The maximum number of warm-up requests to have in flight.
+	 */
+	private int warmUpConcurrency;
+	/**
+	 * Whether to precompile all JSP files in the background after deploying the web application.
+	 */
+	private boolean precompileJsps;
+	/**
+	 * The number of threads to precompile JSP files with; 0 means one per processor.
+	 */
+	private int precompileJspThreads;
+	/**
+	 * Whether to fill the connection pools defined by the resource files before deploying the applications.
+	 */
+	private boolean warmUpConnectionPools;
+	/**
+	 * The file to record metrics in; {@code null} to not record metrics.
+	 */
+	private File metricsFile;
+	/**
+	 * The time between metrics samples, in seconds.
+	 */
+	private int metricsInterval;
+	/**
+	 * The file to record the latencies of requests to the web application in; {@code null} to not record them.
+	 */
+	private File requestLatenciesFile;
+	/**
+	 * Whether to check if the class loaders of undeployed applications are garbage collected.
+	 */
+	private boolean detectClassLoaderLeaks;
+	/**
+	 * The retained metaspace (in MB) at which GlassFish is restarted when redeploying; 0 to never restart.
+	 */
+	private int maxRetainedMetaspace;
+	/**
+	 * Whether to redeploy the web application as new version, instead of undeploying it and deploying it again.
+	 */
+	private boolean versionedRedeploy;
+	/**
+	 * Whether to watch the files of the extra applications, and redeploy them when they change.
+	 */
+	private boolean watchExtraApplications;
+	/**
+	 * Whether to redeploy the web application when a library is replaced because it was rebuilt.
+	 */
+	private boolean redeployOnLibraryChange;
+	/**
+	 * The tuning of the HTTP listeners and their thread pool.
+	 */
+	private NetworkSettings networkSettings;
+	/**
+	 * The startup profile, which determines the services GlassFish starts.
+	 */
+	private StartupProfile startupProfile;
+	/**
+	 * The directory with the snapshot of the configured domain (it need not exist yet); {@code null} to always
+	 * configure a fresh domain.
+	 */
+	private File domainSnapshotDirectory;
+	/**
+	 * The directory of the persistent install root (it need not exist yet); {@code null} to use a fresh install root.
+	 */
+	private File installRootDirectory;
 
 
 	public GlassFishConfiguration(int httpPort, Integer httpsPort, String contextRoot,
@@ -87,22 +177,165 @@ public class GlassFishConfiguration implements Serializable
 		this.extraCommands = new ArrayList<>();
 		this.extraApplications = new ArrayList<>();
 		this.webApplicationClassPath = new ArrayList<>();
+		this.warmUpRequests = new ArrayList<>();
+		this.warmUpJsps = false;
+		this.warmUpIterations = 1;
+		this.warmUpConcurrency = 1;
+		this.precompileJsps = false;
+		this.warmUpConnectionPools = false;
+		this.metricsFile = null;
+		this.metricsInterval = 5;
+		this.requestLatenciesFile = null;
+		this.detectClassLoaderLeaks = false;
+		this.maxRetainedMetaspace = 0;
+		this.versionedRedeploy = false;
+		this.watchExtraApplications = false;
+		this.redeployOnLibraryChange = false;
+		this.precompileJspThreads = 0;
+		this.networkSettings = new NetworkSettings();
+		this.startupProfile = StartupProfile.FULL_WEB;
+		this.domainSnapshotDirectory = null;
+		this.installRootDirectory = null;
 	}
 
 
 	public byte[] toByteArray() throws IOException
 	{
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ObjectOutputStream oos = new ObjectOutputStream(baos);
-		oos.writeObject(this);
+		writeTo(baos);
 		return baos.toByteArray();
 	}
 
 
-	public static GlassFishConfiguration fromByteArray(byte[] rawData) throws IOException, ClassNotFoundException
+	public static GlassFishConfiguration fromByteArray(byte[] rawData) throws IOException
+	{
+		return readFrom(new ByteArrayInputStream(rawData));
+	}
+
+
+	/**
+	 * Write this configuration in the binary format.
+	 *
+	 * @param stream the stream to write to; it is flushed, but not closed
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(OutputStream stream) throws IOException
+	{
+		DataOutputStream output = new DataOutputStream(stream);
+		output.writeInt(MAGIC);
+		output.writeInt(FORMAT_VERSION);
+
+		output.writeInt(httpPort);
+		ConfigurationFormat.writeInteger(output, httpsPort);
+		ConfigurationFormat.writeFiles(output, loggingProperties);
+		ConfigurationFormat.writeFiles(output, glassFishResources);
+		output.writeInt(fileRealms.size());
+		for (FileRealm fileRealm : fileRealms)
+		{
+			fileRealm.writeTo(output);
+		}
+		output.writeInt(extraCommands.size());
+		for (Command command : extraCommands)
+		{
+			command.writeTo(output);
+		}
+		ConfigurationFormat.writeFiles(output, extraApplications);
+		ConfigurationFormat.writeString(output, contextRoot);
+		ConfigurationFormat.writeFile(output, tempDirectory);
+		ConfigurationFormat.writeFile(output, webApplicationSourceDirectory);
+		ConfigurationFormat.writeFiles(output, webApplicationClassPath);
+		ConfigurationFormat.writeStrings(output, warmUpRequests.toArray(new String[warmUpRequests.size()]));
+		output.writeBoolean(warmUpJsps);
+		output.writeInt(warmUpIterations);
+		output.writeInt(warmUpConcurrency);
+		output.writeBoolean(precompileJsps);
+		output.writeInt(precompileJspThreads);
+		output.writeBoolean(warmUpConnectionPools);
+		ConfigurationFormat.writeFile(output, metricsFile);
+		output.writeInt(metricsInterval);
+		ConfigurationFormat.writeFile(output, requestLatenciesFile);
+		output.writeBoolean(detectClassLoaderLeaks);
+		output.writeInt(maxRetainedMetaspace);
+		output.writeBoolean(versionedRedeploy);
+		output.writeBoolean(watchExtraApplications);
+		output.writeBoolean(redeployOnLibraryChange);
+		networkSettings.writeTo(output);
+		ConfigurationFormat.writeString(output, startupProfile.name());
+		ConfigurationFormat.writeFile(output, domainSnapshotDirectory);
+		ConfigurationFormat.writeFile(output, installRootDirectory);
+		output.flush();
+	}
+
+
+	/**
+	 * Read a configuration in the binary format.
+	 *
+	 * @param stream the stream to read from; it is not closed
+	 * @return the configuration
+	 * @throws IOException when reading fails, or the data is not a configuration in a supported format version
+	 */
+	public static GlassFishConfiguration readFrom(InputStream stream) throws IOException
 	{
-		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(rawData));
-		return (GlassFishConfiguration)ois.readObject();
+		DataInputStream input = new DataInputStream(stream);
+		if (input.readInt() != MAGIC)
+		{
+			throw new IOException("Not a GlassFish plugin configuration.");
+		}
+		int version = input.readInt();
+		if (version != FORMAT_VERSION)
+		{
+			throw new IOException(String.format("Unsupported configuration format version %d (expected %d).",
+			                                    version, FORMAT_VERSION));
+		}
+
+		int httpPort = input.readInt();
+		Integer httpsPort = ConfigurationFormat.readInteger(input);
+		List<File> loggingProperties = ConfigurationFormat.readFiles(input);
+		List<File> glassFishResources = ConfigurationFormat.readFiles(input);
+		FileRealm[] fileRealms = new FileRealm[ConfigurationFormat.readLength(input)];
+		for (int i = 0; i < fileRealms.length; i++)
+		{
+			fileRealms[i] = FileRealm.readFrom(input);
+		}
+		Command[] extraCommands = new Command[ConfigurationFormat.readLength(input)];
+		for (int i = 0; i < extraCommands.length; i++)
+		{
+			extraCommands[i] = Command.readFrom(input);
+		}
+		List<File> extraApplications = ConfigurationFormat.readFiles(input);
+		String contextRoot = ConfigurationFormat.readString(input);
+		File tempDirectory = ConfigurationFormat.readFile(input);
+		File webApplicationSourceDirectory = ConfigurationFormat.readFile(input);
+
+		GlassFishConfiguration configuration = new GlassFishConfiguration(httpPort, httpsPort, contextRoot,
+		                                                                  webApplicationSourceDirectory,
+		                                                                  tempDirectory);
+		configuration.loggingProperties.addAll(loggingProperties);
+		configuration.glassFishResources.addAll(glassFishResources);
+		configuration.addFileRealms(fileRealms);
+		configuration.addExtraCommands(extraCommands);
+		configuration.extraApplications.addAll(extraApplications);
+		configuration.webApplicationClassPath.addAll(ConfigurationFormat.readFiles(input));
+		configuration.addWarmUpRequests(ConfigurationFormat.readStrings(input));
+		configuration.warmUpJsps = input.readBoolean();
+		configuration.warmUpIterations = input.readInt();
+		configuration.warmUpConcurrency = input.readInt();
+		configuration.precompileJsps = input.readBoolean();
+		configuration.precompileJspThreads = input.readInt();
+		configuration.warmUpConnectionPools = input.readBoolean();
+		configuration.metricsFile = ConfigurationFormat.readFile(input);
+		configuration.metricsInterval = input.readInt();
+		configuration.requestLatenciesFile = ConfigurationFormat.readFile(input);
+		configuration.detectClassLoaderLeaks = input.readBoolean();
+		configuration.maxRetainedMetaspace = input.readInt();
+		configuration.versionedRedeploy = input.readBoolean();
+		configuration.watchExtraApplications = input.readBoolean();
+		configuration.redeployOnLibraryChange = input.readBoolean();
+		configuration.networkSettings = NetworkSettings.readFrom(input);
+		configuration.startupProfile = StartupProfile.valueOf(ConfigurationFormat.readString(input));
+		configuration.domainSnapshotDirectory = ConfigurationFormat.readFile(input);
+		configuration.installRootDirectory = ConfigurationFormat.readFile(input);
+		return configuration;
 	}
 
 
@@ -212,4 +445,213 @@ public class GlassFishConfiguration implements Serializable
 	{
 		this.webApplicationClassPath.add(classPathentries);
 	}
+
+
+	public List<String> getWarmUpRequests()
+	{
+		return warmUpRequests;
+	}
+
+
+	public void addWarmUpRequests(String[] warmUpRequests)
+	{
+		if (warmUpRequests != null)
+		{
+			this.warmUpRequests.addAll(Arrays.asList(warmUpRequests));
+		}
+	}
+
+
+	public boolean isWarmUpJsps()
+	{
+		return warmUpJsps;
+	}
+
+
+	public int getWarmUpIterations()
+	{
+		return warmUpIterations;
+	}
+
+
+	public int getWarmUpConcurrency()
+	{
+		return warmUpConcurrency;
+	}
+
+
+	public void configureWarmUp(boolean warmUpJsps, int warmUpIterations, int warmUpConcurrency)
+	{
+		this.warmUpJsps = warmUpJsps;
+		this.warmUpIterations = warmUpIterations;
+		this.warmUpConcurrency = warmUpConcurrency;
+	}
+
+
+	public boolean isPrecompileJsps()
+	{
+		return precompileJsps;
+	}
+
+
+	public int getPrecompileJspThreads()
+	{
+		return precompileJspThreads;
+	}
+
+
+	public void configureJspPrecompilation(boolean precompileJsps, int precompileJspThreads)
+	{
+		this.precompileJsps = precompileJsps;
+		this.precompileJspThreads = precompileJspThreads;
+	}
+
+
+	public boolean isWarmUpConnectionPools()
+	{
+		return warmUpConnectionPools;
+	}
+
+
+	public void setWarmUpConnectionPools(boolean warmUpConnectionPools)
+	{
+		this.warmUpConnectionPools = warmUpConnectionPools;
+	}
+
+
+	public File getMetricsFile()
+	{
+		return metricsFile;
+	}
+
+
+	public int getMetricsInterval()
+	{
+		return metricsInterval;
+	}
+
+
+	public void configureMetrics(File metricsFile, int metricsInterval)
+	{
+		this.metricsFile = metricsFile;
+		this.metricsInterval = metricsInterval;
+	}
+
+
+	public File getRequestLatenciesFile()
+	{
+		return requestLatenciesFile;
+	}
+
+
+	public void setRequestLatenciesFile(File requestLatenciesFile)
+	{
+		this.requestLatenciesFile = requestLatenciesFile;
+	}
+
+
+	public boolean isDetectClassLoaderLeaks()
+	{
+		return detectClassLoaderLeaks;
+	}
+
+
+	public int getMaxRetainedMetaspace()
+	{
+		return maxRetainedMetaspace;
+	}
+
+
+	public void configureClassLoaderLeakDetection(boolean detectClassLoaderLeaks, int maxRetainedMetaspace)
+	{
+		this.detectClassLoaderLeaks = detectClassLoaderLeaks;
+		this.maxRetainedMetaspace = maxRetainedMetaspace;
+	}
+
+
+	public boolean isVersionedRedeploy()
+	{
+		return versionedRedeploy;
+	}
+
+
+	public void setVersionedRedeploy(boolean versionedRedeploy)
+	{
+		this.versionedRedeploy = versionedRedeploy;
+	}
+
+
+	public boolean isWatchExtraApplications()
+	{
+		return watchExtraApplications;
+	}
+
+
+	public void setWatchExtraApplications(boolean watchExtraApplications)
+	{
+		this.watchExtraApplications = watchExtraApplications;
+	}
+
+
+	public boolean isRedeployOnLibraryChange()
+	{
+		return redeployOnLibraryChange;
+	}
+
+
+	public void setRedeployOnLibraryChange(boolean redeployOnLibraryChange)
+	{
+		this.redeployOnLibraryChange = redeployOnLibraryChange;
+	}
+
+
+	public NetworkSettings getNetworkSettings()
+	{
+		return networkSettings;
+	}
+
+
+	public void setNetworkSettings(NetworkSettings networkSettings)
+	{
+		if (networkSettings != null)
+		{
+			this.networkSettings = networkSettings;
+		}
+	}
+
+
+	public StartupProfile getStartupProfile()
+	{
+		return startupProfile;
+	}
+
+
+	public void setStartupProfile(StartupProfile startupProfile)
+	{
+		this.startupProfile = startupProfile;
+	}
+
+
+	public File getDomainSnapshotDirectory()
+	{
+		return domainSnapshotDirectory;
+	}
+
+
+	public void setDomainSnapshotDirectory(File domainSnapshotDirectory)
+	{
+		this.domainSnapshotDirectory = domainSnapshotDirectory;
+	}
+
+
+	public File getInstallRootDirectory()
+	{
+		return installRootDirectory;
+	}
+
+
+	public void setInstallRootDirectory(File installRootDirectory)
+	{
+		this.installRootDirectory = installRootDirectory;
+	}
 }
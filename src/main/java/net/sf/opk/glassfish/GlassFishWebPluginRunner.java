@@ -3,15 +3,33 @@ package net.sf.opk.glassfish;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 
 import org.glassfish.embeddable.GlassFishException;
 
+import net.sf.opk.glassfish.archive.PathChangeListener;
 import net.sf.opk.glassfish.archive.RealScatteredArchive;
 
 
@@ -27,16 +45,39 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 	 */
 	private static final java.util.logging.Logger LOGGER = java.util.logging.Logger.getLogger(
 			GlassFishWebPluginRunner.class.getName());
+	/**
+	 * The time without rebuilt libraries to wait for before redeploying, as a build replaces libraries one by one.
+	 */
+	private static final long LIBRARY_QUIET_PERIOD_MILLIS = 1000;
 
 	private GlassFishConfiguration configuration;
+	private EmbeddedGlassFish glassFish;
+	/**
+	 * Detects leaked class loaders of the web application; {@code null} if not enabled.
+	 */
+	private ClassLoaderLeakDetector leakDetector;
+	private ExtraApplications extraApplications;
+	/**
+	 * Whether GlassFish was shut down; redeploys that were waiting for it are then skipped.
+	 */
+	private boolean shutDown;
+	/**
+	 * Redeploys the web application after libraries were rebuilt; {@code null} if not enabled.
+	 */
+	private ScheduledExecutorService libraryRedeployer;
+	/**
+	 * The scheduled redeploy after libraries were rebuilt, if any.
+	 */
+	private ScheduledFuture<?> pendingLibraryRedeploy;
 
 	private Callable<Void> shutdownHook;
 	private Callable<Void> redeployHook;
 
 
-	public GlassFishWebPluginRunner(byte[] configurationBytes) throws IOException, ClassNotFoundException, GlassFishException
+	public GlassFishWebPluginRunner(byte[] configurationBytes) throws IOException, GlassFishException
 	{
 		this.configuration = GlassFishConfiguration.fromByteArray(configurationBytes);
+		this.extraApplications = new ExtraApplications();
 	}
 
 
@@ -47,16 +88,7 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 
 		configureLogging();
 
-		final EmbeddedGlassFish glassFish = new EmbeddedGlassFish(configuration.getHttpPort(),
-		                                                          configuration.getHttpsPort());
-
-		deployResources(glassFish);
-		addFileRealms(glassFish);
-		executeExtraCommands(glassFish);
-
-		// Start the extra applications.
-
-		deployExtraApplications(glassFish);
+		final RealScatteredArchive webApplicationArchive = startGlassFishAndBuildArchive();
 
 		// Deploy the web application.
 
@@ -68,12 +100,47 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 		//	webApplicationArchive.addClassPath(classpathEntry);
 		//}
 		//glassFish.deployArtifact(webApplicationArchive.toURI(), configuration.getContextRoot());
-		Path tempDir = configuration.getTempDirectory().toPath();
-		Path webResourcesPath = configuration.getWebApplicationSourceDirectory().toPath();
-		List<Path> classPath = toPaths(configuration.getWebApplicationClassPath());
-		final RealScatteredArchive webApplicationArchive =
-				new RealScatteredArchive(tempDir, webResourcesPath, classPath);
 		glassFish.deployArtifact(webApplicationArchive.toPath().toUri(), configuration.getContextRoot());
+		if (configuration.isDetectClassLoaderLeaks())
+		{
+			leakDetector = new ClassLoaderLeakDetector();
+			leakDetector.recordMetaspaceBaseline();
+		}
+		final JspPrecompiler jspPrecompiler = createJspPrecompiler(webApplicationArchive);
+		warmUp();
+		if (configuration.isWatchExtraApplications())
+		{
+			extraApplications.watch(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws GlassFishException, IOException
+				{
+					redeployExtraApplications();
+					return null;
+				}
+			});
+		}
+		if (configuration.isRedeployOnLibraryChange())
+		{
+			libraryRedeployer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "glassfish-library-redeployer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			webApplicationArchive.addLibraryListener(new PathChangeListener()
+			{
+				@Override
+				public void pathChanged(Path root, Path path)
+				{
+					scheduleLibraryRedeploy(webApplicationArchive, jspPrecompiler);
+				}
+			});
+		}
 
 		// Configure the hooks to handle GlassFish after we exit.
 		shutdownHook = new Callable<Void>()
@@ -81,10 +148,30 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 			@Override
 			public Void call() throws GlassFishException, IOException
 			{
-				glassFish.shutdown();
+				// Redeploys run on watcher threads, and may replace GlassFish: stop them before shutting it down.
+				synchronized (GlassFishWebPluginRunner.this)
+				{
+					try
+					{
+						webApplicationArchive.close();
+						extraApplications.close();
+						if (libraryRedeployer != null)
+						{
+							libraryRedeployer.shutdownNow();
+						}
+						if (jspPrecompiler != null)
+						{
+							jspPrecompiler.close();
+						}
+					}
+					finally
+					{
+						shutDown = true;
+						glassFish.shutdown();
+					}
+				}
 				//LogManager.getLogManager().reset();
 				//Thread.currentThread().setContextClassLoader(ClassLoader.getSystemClassLoader());
-				webApplicationArchive.close();
 				return null;
 			}
 		};
@@ -93,8 +180,7 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 			@Override
 			public Void call() throws GlassFishException, IOException
 			{
-				glassFish.undeployArtifacts();
-				glassFish.deployArtifact(webApplicationArchive.toPath().toUri(), configuration.getContextRoot());
+				redeploy(webApplicationArchive, jspPrecompiler);
 				return null;
 			}
 		};
@@ -102,6 +188,313 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 	}
 
 
+	/**
+	 * Schedule a redeploy after a library was rebuilt. The redeploy waits for a quiet period, so rebuilding several
+	 * libraries causes a single redeploy. It also runs on its own thread, leaving the thread that watches the libraries
+	 * free to handle the next change.
+	 *
+	 * @param webApplicationArchive the archive of the web application
+	 * @param jspPrecompiler        the JSP precompiler, if precompiling JSP files
+	 */
+	private void scheduleLibraryRedeploy(final RealScatteredArchive webApplicationArchive,
+	                                     final JspPrecompiler jspPrecompiler)
+	{
+		synchronized (libraryRedeployer)
+		{
+			if (libraryRedeployer.isShutdown())
+			{
+				return;
+			}
+			if (pendingLibraryRedeploy != null)
+			{
+				pendingLibraryRedeploy.cancel(false);
+			}
+			pendingLibraryRedeploy = libraryRedeployer.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						redeploy(webApplicationArchive, jspPrecompiler);
+					}
+					catch (GlassFishException | IOException e)
+					{
+						LOGGER.log(Level.WARNING, "Failed to redeploy after libraries were rebuilt", e);
+					}
+				}
+			}, LIBRARY_QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * Redeploy the web application, and the extra applications that changed.
+	 *
+	 * @param webApplicationArchive the archive of the web application
+	 * @param jspPrecompiler        the JSP precompiler, if precompiling JSP files
+	 */
+	private synchronized void redeploy(RealScatteredArchive webApplicationArchive, JspPrecompiler jspPrecompiler)
+			throws GlassFishException, IOException
+	{
+		if (shutDown)
+		{
+			return;
+		}
+		extraApplications.redeployChanged(glassFish);
+		URI artifactLocation = webApplicationArchive.toPath().toUri();
+		trackWebApplicationClassLoaders();
+		if (configuration.isVersionedRedeploy())
+		{
+			glassFish.redeployArtifact(artifactLocation, configuration.getContextRoot());
+		}
+		else
+		{
+			glassFish.undeployArtifacts();
+			glassFish.deployArtifact(artifactLocation, configuration.getContextRoot());
+		}
+		// Like the baseline, measure with the (new) web application deployed.
+		if (checkClassLoaderLeaks())
+		{
+			glassFish.deployArtifact(artifactLocation, configuration.getContextRoot());
+			leakDetector.recordMetaspaceBaseline();
+		}
+		if (jspPrecompiler != null)
+		{
+			jspPrecompiler.reset();
+			jspPrecompiler.precompileAll();
+		}
+		warmUp();
+	}
+
+
+	private synchronized void redeployExtraApplications() throws GlassFishException, IOException
+	{
+		if (shutDown)
+		{
+			return;
+		}
+		extraApplications.redeployChanged(glassFish);
+	}
+
+
+	/**
+	 * Track the class loader of the deployed web application before it is replaced, if detecting class loader leaks.
+	 * This is a separate method to ensure no local variable keeps the class loader reachable.
+	 */
+	private void trackWebApplicationClassLoaders() throws GlassFishException
+	{
+		if (leakDetector != null)
+		{
+			for (Map.Entry<String, ClassLoader> entry : glassFish.getArtifactClassLoaders().entrySet())
+			{
+				leakDetector.track(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+
+	/**
+	 * Check for leaked class loaders, if enabled. When the leaked class loaders retain more metaspace than allowed,
+	 * GlassFish is restarted (without applications), to release what GlassFish holds of them. The class loaders that
+	 * leaked are not tracked anymore after a restart: those the restart did not release are not reported again.
+	 *
+	 * @return true if GlassFish was restarted, false otherwise
+	 */
+	private boolean checkClassLoaderLeaks() throws GlassFishException, IOException
+	{
+		if (leakDetector == null || leakDetector.findLeaks() == 0 || configuration.getMaxRetainedMetaspace() <= 0)
+		{
+			return false;
+		}
+		long retainedMegabytes = leakDetector.getRetainedMetaspace() / (1024 * 1024);
+		if (retainedMegabytes < configuration.getMaxRetainedMetaspace())
+		{
+			return false;
+		}
+		LOGGER.log(Level.WARNING, "Leaked class loaders retain {0}MB of metaspace (the maximum is {1}MB): " +
+		                          "restarting GlassFish", new Object[]{retainedMegabytes,
+		                                                               configuration.getMaxRetainedMetaspace()});
+		glassFish.shutdown();
+		glassFish = startGlassFish();
+		leakDetector.forgetTrackedClassLoaders();
+		return true;
+	}
+
+
+	EmbeddedGlassFish startGlassFish() throws GlassFishException, IOException
+	{
+		DomainSnapshot snapshot = null;
+		if (configuration.getDomainSnapshotDirectory() != null)
+		{
+			snapshot = new DomainSnapshot(configuration.getDomainSnapshotDirectory());
+		}
+		InstallRoot installRoot = null;
+		if (configuration.getInstallRootDirectory() != null)
+		{
+			installRoot = new InstallRoot(configuration.getInstallRootDirectory());
+		}
+		long start = System.nanoTime();
+		EmbeddedGlassFish glassFish = new EmbeddedGlassFish(configuration.getHttpPort(), configuration.getHttpsPort(),
+		                                                    configuration.getNetworkSettings(), snapshot, installRoot,
+		                                                    configuration.getStartupProfile());
+		logStartup(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		deployResources(glassFish);
+		if (glassFish.isRestoredFromSnapshot())
+		{
+			LOGGER.log(Level.INFO, "Skipping the realms and extra commands: the domain is already set up");
+		}
+		else
+		{
+			addFileRealms(glassFish);
+			executeExtraCommands(glassFish);
+		}
+		// Also when restored: this saves the resource changes, so they're not applied again on the next start.
+		glassFish.saveSnapshot();
+		if (configuration.isWarmUpConnectionPools())
+		{
+			glassFish.warmUpConnectionPools();
+		}
+		if (configuration.getMetricsFile() != null)
+		{
+			glassFish.recordMetrics(configuration.getMetricsFile(),
+			                        TimeUnit.SECONDS.toMillis(configuration.getMetricsInterval()));
+		}
+
+		// Start the extra applications.
+
+		extraApplications.deployAll(glassFish, configuration.getExtraApplications());
+		return glassFish;
+	}
+
+
+	/**
+	 * Log the startup time and memory use of GlassFish, to compare startup profiles. The resident memory is only
+	 * available on Linux, and includes Maven unless GlassFish runs in a forked JVM.
+	 *
+	 * @param startupMillis the time it took to start GlassFish
+	 */
+	private void logStartup(long startupMillis)
+	{
+		long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		String residentMemory = "unknown";
+		try
+		{
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII))
+			{
+				if (line.startsWith("VmRSS:"))
+				{
+					long kiloBytes = Long.parseLong(line.replaceAll("\\D", ""));
+					residentMemory = (kiloBytes / 1024) + "MB";
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			LOGGER.log(Level.FINE, "Cannot determine the resident memory", e);
+		}
+		LOGGER.log(Level.INFO, "Started GlassFish with startup profile {0} in {1}ms (heap used: {2}MB, resident: {3})",
+		           new Object[]{configuration.getStartupProfile().getName(), startupMillis, heapUsed / (1024 * 1024),
+		                        residentMemory});
+	}
+
+
+	/**
+	 * Start GlassFish, and build the archive of the web application while it starts: the two are independent. If
+	 * GlassFish fails to start, the archive is still awaited and closed, so its directory watcher stops.
+	 *
+	 * @return the archive of the web application, once GlassFish has started
+	 */
+	RealScatteredArchive startGlassFishAndBuildArchive() throws GlassFishException, IOException
+	{
+		FutureTask<RealScatteredArchive> archiveTask = new FutureTask<>(new Callable<RealScatteredArchive>()
+		{
+			@Override
+			public RealScatteredArchive call() throws IOException
+			{
+				return createWebApplicationArchive();
+			}
+		});
+		Thread archiveThread = new Thread(archiveTask, "web-application-archive");
+		archiveThread.setDaemon(true);
+		archiveThread.start();
+
+		boolean started = false;
+		try
+		{
+			glassFish = startGlassFish();
+			started = true;
+		}
+		finally
+		{
+			if (!started)
+			{
+				discardArchive(archiveTask);
+			}
+		}
+		return awaitArchive(archiveTask);
+	}
+
+
+	RealScatteredArchive createWebApplicationArchive() throws IOException
+	{
+		long start = System.nanoTime();
+		Path tempDir = configuration.getTempDirectory().toPath();
+		Path webResourcesPath = configuration.getWebApplicationSourceDirectory().toPath();
+		List<Path> classPath = toPaths(configuration.getWebApplicationClassPath());
+		RealScatteredArchive webApplicationArchive = new RealScatteredArchive(tempDir, webResourcesPath, classPath);
+		addLatencyRecordingFilter(webApplicationArchive);
+		LOGGER.log(Level.INFO, "Built the web application archive in {0}ms",
+		           TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return webApplicationArchive;
+	}
+
+
+	private static RealScatteredArchive awaitArchive(Future<RealScatteredArchive> archiveTask) throws IOException
+	{
+		try
+		{
+			return archiveTask.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while building the web application archive");
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new IOException("Failed to build the web application archive", cause);
+		}
+	}
+
+
+	private static void discardArchive(Future<RealScatteredArchive> archiveTask)
+	{
+		try
+		{
+			awaitArchive(archiveTask).close();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			LOGGER.log(Level.FINE, "Failed to discard the web application archive", e);
+		}
+	}
+
+
 	private List<Path> toPaths(List<File> files)
 	{
 		List<Path> paths = new ArrayList<>(files.size()); for (File file : files)
@@ -122,17 +515,29 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 	}
 
 
-	private void deployResources(EmbeddedGlassFish glassFish) throws GlassFishException
+	private void addLatencyRecordingFilter(RealScatteredArchive webApplicationArchive) throws IOException
 	{
-		for (File glassFishResources : configuration.getGlassFishResources())
+		File requestLatenciesFile = configuration.getRequestLatenciesFile();
+		if (requestLatenciesFile == null)
 		{
-			glassFish.addResources(glassFishResources);
+			return;
 		}
+		Path webFragment = configuration.getTempDirectory().toPath().resolve("glassfish-latency-recording.jar");
+		LatencyRecordingFilter.createWebFragment(webFragment, requestLatenciesFile);
+		webApplicationArchive.addLibrary(webFragment);
+		LOGGER.log(Level.INFO, "Recording request latencies in {0}", requestLatenciesFile);
+	}
+
+
+	private void deployResources(EmbeddedGlassFish glassFish) throws IOException, GlassFishException
+	{
+		glassFish.addResources(configuration.getGlassFishResources());
 	}
 
 
 	private void addFileRealms(EmbeddedGlassFish glassFish) throws IOException, GlassFishException
 	{
+		glassFish.setUserHashCacheDirectory(new File(configuration.getTempDirectory(), "glassfish-keyfiles"));
 		for (FileRealm fileRealm : configuration.getFileRealms())
 		{
 			glassFish.addFileRealmWithUsers(fileRealm);
@@ -140,22 +545,65 @@ public class GlassFishWebPluginRunner implements Callable<Void>
 	}
 
 
-	private void executeExtraCommands(EmbeddedGlassFish glassFish)
+	private void executeExtraCommands(EmbeddedGlassFish glassFish) throws GlassFishException
+	{
+		List<Command> commands = configuration.getExtraCommands();
+		if (commands.isEmpty())
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<AsadminResult> results = glassFish.asadmin(commands);
+		long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		LOGGER.log(Level.INFO, "Executed {0} extra command(s) as {1} asadmin call(s) in {2}ms",
+		           new Object[]{commands.size(), results.size(), duration});
+	}
+
+
+	private JspPrecompiler createJspPrecompiler(RealScatteredArchive webApplicationArchive) throws IOException
 	{
-		for (Command command : configuration.getExtraCommands())
+		if (!configuration.isPrecompileJsps())
 		{
-			glassFish.asadmin(command.getCommand(), command.getParameters());
+			return null;
 		}
+
+		JspPrecompiler jspPrecompiler = new JspPrecompiler(getBaseUrl(), webApplicationArchive.toPath(),
+		                                                   configuration.getPrecompileJspThreads());
+		webApplicationArchive.addWebResourceListener(jspPrecompiler);
+		jspPrecompiler.precompileAll();
+		return jspPrecompiler;
 	}
 
 
-	private void deployExtraApplications(EmbeddedGlassFish glassFish) throws GlassFishException
+	private URL getBaseUrl() throws MalformedURLException
 	{
-		for (File file : configuration.getExtraApplications())
+		return new URL("http", "localhost", configuration.getHttpPort(), configuration.getContextRoot());
+	}
+
+
+	private void warmUp() throws IOException
+	{
+		List<String> paths = new ArrayList<>(configuration.getWarmUpRequests());
+		if (configuration.isWarmUpJsps())
+		{
+			paths.addAll(WarmUp.findJsps(configuration.getWebApplicationSourceDirectory().toPath()));
+		}
+		if (paths.isEmpty())
+		{
+			return;
+		}
+
+		WarmUp warmUp = new WarmUp(getBaseUrl(), paths, configuration.getWarmUpConcurrency(),
+		                           configuration.getWarmUpIterations());
+		try
+		{
+			warmUp.run();
+		}
+		catch (InterruptedException e)
 		{
-			LOGGER.log(Level.FINE, "Deploying dependency {0}", file.getName());
-			glassFish.deployApplication(file);
-			LOGGER.log(Level.INFO, "Deployed dependency {0}", file.getName());
+			LOGGER.log(Level.WARNING, "Interrupted while warming up the web application");
+			Thread.currentThread().interrupt();
 		}
 	}
 
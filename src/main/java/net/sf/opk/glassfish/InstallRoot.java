@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>A persistent install root for embedded GlassFish, that is reused across runs. It holds the install directory,
+ * and a template of the instance root as GlassFish creates it before it is started. The first run creates the
+ * template; later runs boot from a copy of it, so GlassFish does not need to create the instance root again.</p>
+ *
+ * <p>Install roots are stored in a directory per {@linkplain #key(String, List) key}, which is based on the GlassFish
+ * version and the classpath of the plugin: another GlassFish version (or a changed classpath) uses another install
+ * root. As the key includes everything that determines the content of the install root, install roots can be shared
+ * between projects.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class InstallRoot
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InstallRoot.class.getName());
+	private static final String INSTALL_DIRECTORY = "install";
+	private static final String INSTANCE_TEMPLATE = "instance";
+	/**
+	 * The file that marks a complete install root. It is written last, so an incomplete install root is never used.
+	 */
+	private static final String MARKER_FILE = "install-root.properties";
+	private static final String DOMAIN_XML = "config/domain.xml";
+	private final Path directory;
+
+
+	/**
+	 * Create an install root (it need not exist yet).
+	 *
+	 * @param directory the directory of the install root
+	 */
+	public InstallRoot(File directory)
+	{
+		this.directory = directory.toPath();
+	}
+
+
+	/**
+	 * Determine the key of the install root for a GlassFish version and plugin classpath. To keep this cheap, the
+	 * classpath entries are identified by their name, size and modification time instead of their content.
+	 *
+	 * @param glassFishVersion the GlassFish version
+	 * @param classPath        the classpath of the plugin
+	 * @return the key of the install root, usable as directory name
+	 */
+	public static String key(String glassFishVersion, List<File> classPath)
+	{
+		MessageDigest digest = Digests.createDigest();
+		for (File file : classPath)
+		{
+			String entry = file.getAbsolutePath() + '\t' + file.length() + '\t' + file.lastModified() + '\n';
+			digest.update(entry.getBytes(StandardCharsets.UTF_8));
+		}
+		// A short key keeps paths short; collisions only cause an extra install root to be created.
+		byte[] hash = Arrays.copyOf(digest.digest(), 6);
+		return glassFishVersion.replaceAll("[^\\w.-]", "_") + '-' + Digests.toHex(hash);
+	}
+
+
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+
+	/**
+	 * Return the install directory. GlassFish uses it as {@code com.sun.aas.installRoot}.
+	 *
+	 * @return the install directory
+	 * @throws IOException when the install directory cannot be created
+	 */
+	public File getInstallDirectory() throws IOException
+	{
+		return Files.createDirectories(directory.resolve(INSTALL_DIRECTORY)).toFile();
+	}
+
+
+	/**
+	 * Determine if the install root has an instance template. This only checks that the template was completely
+	 * saved, and does not read it.
+	 *
+	 * @return true if the install root has an instance template
+	 */
+	public boolean hasInstanceTemplate()
+	{
+		return Files.isRegularFile(directory.resolve(MARKER_FILE)) &&
+		       Files.isRegularFile(directory.resolve(INSTANCE_TEMPLATE).resolve(DOMAIN_XML));
+	}
+
+
+	/**
+	 * Save the instance root of a GlassFish instance that has not been started yet as instance template. If another
+	 * process saved an instance template first, that template is kept.
+	 *
+	 * @param instanceRoot the instance root to save
+	 * @throws IOException when the instance template cannot be saved
+	 */
+	public void saveInstanceTemplate(File instanceRoot) throws IOException
+	{
+		Files.createDirectories(directory);
+		Path template = directory.resolve(INSTANCE_TEMPLATE);
+		if (Files.isDirectory(template))
+		{
+			LOGGER.log(Level.FINE, "Keeping the existing instance template in {0}", directory);
+		}
+		else
+		{
+			Path temporaryTemplate = Files.createTempDirectory(directory, INSTANCE_TEMPLATE);
+			copyDirectory(instanceRoot.toPath(), temporaryTemplate);
+			try
+			{
+				Files.move(temporaryTemplate, template, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (IOException e)
+			{
+				deleteDirectory(temporaryTemplate);
+				// Another process may have saved its instance template first.
+				if (!Files.isDirectory(template))
+				{
+					throw e;
+				}
+			}
+		}
+
+		Properties marker = new Properties();
+		marker.setProperty("instanceRoot", instanceRoot.getAbsolutePath());
+		Path temporaryMarker = Files.createTempFile(directory, MARKER_FILE, ".tmp");
+		try (OutputStream output = Files.newOutputStream(temporaryMarker))
+		{
+			marker.store(output, "Complete GlassFish install root");
+		}
+		Files.move(temporaryMarker, directory.resolve(MARKER_FILE), StandardCopyOption.ATOMIC_MOVE,
+		           StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.log(Level.INFO, "Saved the GlassFish instance template in {0}", directory);
+	}
+
+
+	/**
+	 * Create an instance root from the instance template.
+	 *
+	 * @param parentDirectory the directory to create the instance root in
+	 * @return the new instance root
+	 * @throws IOException when the instance root cannot be created
+	 */
+	public File createInstanceRoot(File parentDirectory) throws IOException
+	{
+		Files.createDirectories(parentDirectory.toPath());
+		Path instanceRoot = Files.createTempDirectory(parentDirectory.toPath(), "glassfish-instance-");
+		copyDirectory(directory.resolve(INSTANCE_TEMPLATE), instanceRoot);
+		return instanceRoot.toFile();
+	}
+
+
+	/**
+	 * Copy the content of a directory recursively.
+	 *
+	 * @param source the directory to copy
+	 * @param target the (existing) directory to copy into
+	 * @throws IOException when the directory cannot be copied
+	 */
+	private static void copyDirectory(final Path source, final Path target) throws IOException
+	{
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException
+			{
+				Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+			{
+				Files.copy(file, target.resolve(source.relativize(file).toString()),
+				           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+
+	/**
+	 * Delete a directory and its content.
+	 *
+	 * @param directory the directory to delete
+	 * @throws IOException when the directory cannot be deleted
+	 */
+	static void deleteDirectory(Path directory) throws IOException
+	{
+		if (!Files.exists(directory))
+		{
+			return;
+		}
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+			{
+				if (e != null)
+				{
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.opk.glassfish.archive.PathChangeListener;
+
+
+/**
+ * <p>Precompiles the JSP files of a deployed web application in the background, using a thread pool. Each JSP is
+ * requested using the {@code jsp_precompile} parameter from the JSP specification, which makes the container compile
+ * the page without executing it.</p>
+ *
+ * <p>The content hash of each compiled JSP is remembered, so JSP files that did not change are not compiled again when
+ * the web resources change. JSP fragments ({@code .jspf}) are included in other pages, so a change to a fragment causes
+ * all JSP files to be compiled again.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class JspPrecompiler implements PathChangeListener, AutoCloseable
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(JspPrecompiler.class.getName());
+	private static final String PRECOMPILE_PARAMETER = "?jsp_precompile=true";
+	private final URL baseUrl;
+	private final Path webResourcesRoot;
+	private final ExecutorService executor;
+	/**
+	 * The content hash of each compiled JSP file, by path relative to the context root.
+	 */
+	private final ConcurrentMap<String, String> compiledHashes;
+
+
+	/**
+	 * Create a JSP precompiler.
+	 *
+	 * @param baseUrl          the URL of the server, including the context root of the web application
+	 * @param webResourcesRoot the web resources directory that contains the JSP files
+	 * @param threads          the number of threads to compile with; 0 means one thread per processor
+	 */
+	public JspPrecompiler(URL baseUrl, Path webResourcesRoot, int threads)
+	{
+		this.baseUrl = baseUrl;
+		this.webResourcesRoot = webResourcesRoot;
+		int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+		{
+			private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "jsp-precompiler-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		compiledHashes = new ConcurrentHashMap<>();
+	}
+
+
+	/**
+	 * Forget which JSP files have been compiled. Call this after the web application is redeployed, as that discards
+	 * the compiled JSP files.
+	 */
+	public void reset()
+	{
+		compiledHashes.clear();
+	}
+
+
+	/**
+	 * Precompile all JSP files in the background (except those that did not change since they were last compiled).
+	 *
+	 * @throws IOException when the web resources cannot be read
+	 */
+	public void precompileAll() throws IOException
+	{
+		final List<String> jsps = WarmUp.findJsps(webResourcesRoot);
+		LOGGER.log(Level.INFO, "Precompiling {0} JSP file(s) in the background", jsps.size());
+
+		final long start = System.nanoTime();
+		final AtomicInteger remaining = new AtomicInteger(jsps.size());
+		for (final String jsp : jsps)
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					precompile(jsp);
+					if (remaining.decrementAndGet() == 0)
+					{
+						LOGGER.log(Level.INFO, "Precompiled {0} JSP file(s) in {1}ms", new Object[]{
+								jsps.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+					}
+				}
+			});
+		}
+	}
+
+
+	@Override
+	public void pathChanged(Path root, Path path) throws IOException
+	{
+		String fileName = path.getFileName().toString();
+		if (path.startsWith("WEB-INF") || path.startsWith("META-INF"))
+		{
+			// Pages here cannot be requested; they're compiled when forwarded to.
+			return;
+		}
+		if (fileName.endsWith(".jspf"))
+		{
+			reset();
+			precompileAll();
+		}
+		else if (fileName.endsWith(".jsp") || fileName.endsWith(".jspx"))
+		{
+			final StringBuilder jsp = new StringBuilder();
+			for (Path element : path)
+			{
+				jsp.append('/').append(element);
+			}
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					precompile(jsp.toString());
+				}
+			});
+		}
+	}
+
+
+	private void precompile(String jsp)
+	{
+		try
+		{
+			String hash = Digests.digestFile(webResourcesRoot.resolve(jsp.substring(1)));
+			// Registering the hash before compiling also prevents compiling the same content concurrently.
+			if (hash.equals(compiledHashes.put(jsp, hash)))
+			{
+				LOGGER.log(Level.FINE, "Skipping {0}: it has not changed since it was compiled", jsp);
+				return;
+			}
+
+			long start = System.nanoTime();
+			int status = SimpleHttpClient.get(SimpleHttpClient.resolve(baseUrl, jsp + PRECOMPILE_PARAMETER));
+			long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			if (status < 400)
+			{
+				LOGGER.log(Level.FINE, "Precompiled {0} in {1}ms", new Object[]{jsp, duration});
+			}
+			else
+			{
+				compiledHashes.remove(jsp, hash);
+				LOGGER.log(Level.WARNING, "Failed to precompile {0}: HTTP status {1}", new Object[]{jsp, status});
+			}
+		}
+		catch (IOException e)
+		{
+			compiledHashes.remove(jsp);
+			LOGGER.log(Level.WARNING, "Failed to precompile " + jsp, e);
+		}
+	}
+
+
+	@Override
+	public void close()
+	{
+		executor.shutdownNow();
+	}
+}
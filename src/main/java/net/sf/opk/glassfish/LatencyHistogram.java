@@ -0,0 +1,224 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+/**
+ * <p>Histogram of latencies (in microseconds), with buckets in the style of an HDR histogram: values below 128 are
+ * recorded exactly, and larger values in buckets that are at most 1/64th (about 1.6%) of the value wide. This gives
+ * accurate percentiles with a fixed, small memory footprint.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class LatencyHistogram
+{
+	/**
+	 * The number of bits used for the sub-buckets: values below {@code 1 << SUB_BUCKET_BITS} are recorded exactly.
+	 */
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+	/**
+	 * The number of buckets needed to record any non-negative {@code long}.
+	 */
+	static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+	private final long[] counts;
+	private long totalCount;
+	private long totalValue;
+	private long minValue;
+	private long maxValue;
+
+
+	public LatencyHistogram()
+	{
+		counts = new long[BUCKET_COUNT];
+		totalCount = 0;
+		totalValue = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+	}
+
+
+	/**
+	 * Determine the bucket for a value.
+	 *
+	 * @param value a value; negative values are treated as 0
+	 * @return the index of the bucket that records the value
+	 */
+	static int bucketIndex(long value)
+	{
+		if (value < 2 * SUB_BUCKET_HALF_COUNT)
+		{
+			return value < 0 ? 0 : (int)value;
+		}
+		int mostSignificantBit = 63 - Long.numberOfLeadingZeros(value);
+		int shift = mostSignificantBit - SUB_BUCKET_BITS + 1;
+		return shift * SUB_BUCKET_HALF_COUNT + (int)(value >>> shift);
+	}
+
+
+	/**
+	 * Determine the highest value recorded in a bucket.
+	 *
+	 * @param bucketIndex the index of a bucket
+	 * @return the highest value that is recorded in the bucket
+	 */
+	static long bucketUpperBound(int bucketIndex)
+	{
+		if (bucketIndex < 2 * SUB_BUCKET_HALF_COUNT)
+		{
+			return bucketIndex;
+		}
+		int shift = bucketIndex / SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = bucketIndex - shift * SUB_BUCKET_HALF_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param microseconds the latency to record
+	 */
+	public synchronized void record(long microseconds)
+	{
+		long value = Math.max(0, microseconds);
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		totalValue += value;
+		minValue = Math.min(minValue, value);
+		maxValue = Math.max(maxValue, value);
+	}
+
+
+	/**
+	 * Add all latencies recorded by another histogram to this one.
+	 *
+	 * @param other the histogram to add
+	 */
+	public void add(LatencyHistogram other)
+	{
+		long[] otherCounts;
+		long otherTotalCount, otherTotalValue, otherMin, otherMax;
+		synchronized (other)
+		{
+			otherCounts = other.counts.clone();
+			otherTotalCount = other.totalCount;
+			otherTotalValue = other.totalValue;
+			otherMin = other.minValue;
+			otherMax = other.maxValue;
+		}
+		synchronized (this)
+		{
+			for (int i = 0; i < BUCKET_COUNT; i++)
+			{
+				counts[i] += otherCounts[i];
+			}
+			totalCount += otherTotalCount;
+			totalValue += otherTotalValue;
+			minValue = Math.min(minValue, otherMin);
+			maxValue = Math.max(maxValue, otherMax);
+		}
+	}
+
+
+	/**
+	 * Add latencies by bucket, as recorded by a {@link StripedLatencyHistogram}. The minimum value is estimated as the
+	 * lowest value of the first non-empty bucket.
+	 *
+	 * @param bucketCounts the number of latencies recorded per bucket (the array may be shorter than the number of
+	 *                     buckets)
+	 * @param totalValue   the sum of the latencies
+	 * @param maxValue     the highest latency
+	 */
+	synchronized void addBucketCounts(long[] bucketCounts, long totalValue, long maxValue)
+	{
+		for (int i = 0; i < bucketCounts.length; i++)
+		{
+			if (bucketCounts[i] > 0)
+			{
+				long lowestValue = i == 0 ? 0 : bucketUpperBound(i - 1) + 1;
+				minValue = Math.min(minValue, lowestValue);
+				counts[i] += bucketCounts[i];
+				totalCount += bucketCounts[i];
+			}
+		}
+		this.totalValue += totalValue;
+		this.maxValue = Math.max(this.maxValue, maxValue);
+	}
+
+
+	public synchronized long getCount()
+	{
+		return totalCount;
+	}
+
+
+	public synchronized long getMin()
+	{
+		return totalCount == 0 ? 0 : minValue;
+	}
+
+
+	public synchronized long getMax()
+	{
+		return maxValue;
+	}
+
+
+	public synchronized double getMean()
+	{
+		return totalCount == 0 ? 0.0 : (double)totalValue / totalCount;
+	}
+
+
+	/**
+	 * Determine the value at a percentile. The result is the highest value in the bucket containing the percentile,
+	 * but never more than the maximum recorded value.
+	 *
+	 * @param percentile the percentile, between 0 and 100 (inclusive)
+	 * @return the value at the percentile, or 0 if nothing has been recorded
+	 */
+	public synchronized long getValueAtPercentile(double percentile)
+	{
+		if (totalCount == 0)
+		{
+			return 0;
+		}
+		double boundedPercentile = Math.min(100.0, Math.max(0.0, percentile));
+		long countAtPercentile = Math.max(1, (long)Math.ceil(boundedPercentile / 100.0 * totalCount));
+
+		long runningCount = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			runningCount += counts[i];
+			if (runningCount >= countAtPercentile)
+			{
+				return Math.min(bucketUpperBound(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("n=%d, min=%.1fms, mean=%.1fms, p50=%.1fms, p99=%.1fms, max=%.1fms", totalCount,
+		                     getMin() / 1000.0, getMean() / 1000.0, getValueAtPercentile(50) / 1000.0,
+		                     getValueAtPercentile(99) / 1000.0, getMax() / 1000.0);
+	}
+}
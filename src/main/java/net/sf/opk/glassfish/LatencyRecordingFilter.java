@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * <p>Servlet filter that records the latency of each request, per servlet path. Requests handled by a path mapping
+ * (like {@code /api/*}) are grouped by the mapping. The latencies are written to a properties file when the filter
+ * is destroyed (i.e. when the application is undeployed), in the same format as the results of the {@code load}
+ * goal.</p>
+ *
+ * <p>For asynchronous requests, the latency is recorded when the asynchronous processing completes, not when the
+ * (initial) dispatch returns.</p>
+ *
+ * <p>This filter is added to a web application as a web fragment (see {@link #createWebFragment(Path, File)}), so it
+ * runs in the class loader of the web application: it must only use the classes in the web fragment.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class LatencyRecordingFilter implements Filter
+{
+	/**
+	 * The init parameter with the file to write the latencies to.
+	 */
+	static final String RESULTS_FILE_PARAMETER = "resultsFile";
+	/**
+	 * The maximum number of servlet paths to record separately; other requests are recorded as {@code other}.
+	 */
+	private static final int MAX_PATHS = 1000;
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	/**
+	 * The classes needed in the web fragment.
+	 */
+	private static final Class<?>[] WEB_FRAGMENT_CLASSES = {LatencyRecordingFilter.class, AsyncLatencyRecorder.class,
+	                                                        StripedLatencyHistogram.class, LatencyHistogram.class};
+	private final ConcurrentMap<String, StripedLatencyHistogram> exactPaths;
+	private final ConcurrentMap<String, StripedLatencyHistogram> pathMappings;
+	private final StripedLatencyHistogram otherPaths;
+	private ServletContext servletContext;
+	private File resultsFile;
+
+
+	public LatencyRecordingFilter()
+	{
+		exactPaths = new ConcurrentHashMap<>();
+		pathMappings = new ConcurrentHashMap<>();
+		otherPaths = new StripedLatencyHistogram();
+	}
+
+
+	@Override
+	public void init(FilterConfig filterConfig)
+	{
+		servletContext = filterConfig.getServletContext();
+		resultsFile = new File(filterConfig.getInitParameter(RESULTS_FILE_PARAMETER));
+	}
+
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			chain.doFilter(request, response);
+		}
+		finally
+		{
+			StripedLatencyHistogram histogram = histogramFor(request);
+			if (request.isAsyncStarted())
+			{
+				request.getAsyncContext().addListener(new AsyncLatencyRecorder(histogram, start));
+			}
+			else
+			{
+				histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			}
+		}
+	}
+
+
+	private StripedLatencyHistogram histogramFor(ServletRequest request)
+	{
+		if (!(request instanceof HttpServletRequest))
+		{
+			return otherPaths;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest)request;
+		// Keep path mappings separate, instead of building a key, so recording does not allocate.
+		ConcurrentMap<String, StripedLatencyHistogram> histograms =
+				httpRequest.getPathInfo() == null ? exactPaths : pathMappings;
+		String servletPath = httpRequest.getServletPath();
+		StripedLatencyHistogram histogram = histograms.get(servletPath);
+		if (histogram == null)
+		{
+			if (exactPaths.size() + pathMappings.size() >= MAX_PATHS)
+			{
+				return otherPaths;
+			}
+			histogram = new StripedLatencyHistogram();
+			StripedLatencyHistogram existingHistogram = histograms.putIfAbsent(servletPath, histogram);
+			if (existingHistogram != null)
+			{
+				histogram = existingHistogram;
+			}
+		}
+		return histogram;
+	}
+
+
+	@Override
+	public void destroy()
+	{
+		SortedMap<String, LatencyHistogram> latencies = new TreeMap<>();
+		for (Map.Entry<String, StripedLatencyHistogram> entry : exactPaths.entrySet())
+		{
+			latencies.put(entry.getKey().isEmpty() ? "/" : entry.getKey(), entry.getValue().snapshot());
+		}
+		for (Map.Entry<String, StripedLatencyHistogram> entry : pathMappings.entrySet())
+		{
+			latencies.put(entry.getKey() + "/*", entry.getValue().snapshot());
+		}
+		LatencyHistogram other = otherPaths.snapshot();
+		if (other.getCount() > 0)
+		{
+			latencies.put("other", other);
+		}
+
+		try
+		{
+			writeResults(latencies);
+			servletContext.log(String.format("Recorded the latencies of %d path(s) in %s", latencies.size(),
+			                                 resultsFile));
+		}
+		catch (IOException e)
+		{
+			servletContext.log("Failed to write the request latencies to " + resultsFile, e);
+		}
+	}
+
+
+	private void writeResults(SortedMap<String, LatencyHistogram> latencies) throws IOException
+	{
+		Properties properties = new Properties();
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet())
+		{
+			String key = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			properties.setProperty(key + ".requests", Long.toString(histogram.getCount()));
+			properties.setProperty(key + ".latency.mean", format(histogram.getMean() / 1000.0));
+			for (int i = 0; i < PERCENTILES.length; i++)
+			{
+				properties.setProperty(key + ".latency." + PERCENTILE_NAMES[i],
+				                       format(histogram.getValueAtPercentile(PERCENTILES[i]) / 1000.0));
+			}
+			properties.setProperty(key + ".latency.max", format(histogram.getMax() / 1000.0));
+		}
+
+		Files.createDirectories(resultsFile.getAbsoluteFile().getParentFile().toPath());
+		// Storing to a stream escapes the characters that are special in keys, and those outside ISO 8859-1.
+		try (OutputStream output = Files.newOutputStream(resultsFile.toPath()))
+		{
+			properties.store(output, "Request latencies recorded by the GlassFish plugin");
+		}
+	}
+
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+	/**
+	 * Records the latency of an asynchronous request when it completes (also after a timeout or error).
+	 */
+	private static class AsyncLatencyRecorder implements AsyncListener
+	{
+		private final StripedLatencyHistogram histogram;
+		private final long start;
+
+
+		private AsyncLatencyRecorder(StripedLatencyHistogram histogram, long start)
+		{
+			this.histogram = histogram;
+			this.start = start;
+		}
+
+
+		@Override
+		public void onComplete(AsyncEvent event)
+		{
+			histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+		}
+
+
+		@Override
+		public void onTimeout(AsyncEvent event)
+		{
+			// Nothing to do: onComplete follows.
+		}
+
+
+		@Override
+		public void onError(AsyncEvent event)
+		{
+			// Nothing to do: onComplete follows.
+		}
+
+
+		@Override
+		public void onStartAsync(AsyncEvent event)
+		{
+			// Restarting asynchronous processing removes the listeners: keep recording.
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
+
+	/**
+	 * Create a web fragment jar with this filter, mapped to all requests.
+	 *
+	 * @param jarFile     the jar file to create
+	 * @param resultsFile the file the filter writes the latencies to
+	 * @throws IOException when the jar file cannot be written
+	 */
+	public static void createWebFragment(Path jarFile, File resultsFile) throws IOException
+	{
+		try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarFile)))
+		{
+			for (Class<?> webFragmentClass : WEB_FRAGMENT_CLASSES)
+			{
+				String classFile = webFragmentClass.getName().replace('.', '/') + ".class";
+				jar.putNextEntry(new JarEntry(classFile));
+				try (InputStream input = webFragmentClass.getClassLoader().getResourceAsStream(classFile))
+				{
+					copy(input, jar);
+				}
+				jar.closeEntry();
+			}
+			jar.putNextEntry(new JarEntry("META-INF/web-fragment.xml"));
+			jar.write(webFragmentXml(resultsFile).getBytes(StandardCharsets.UTF_8));
+			jar.closeEntry();
+		}
+	}
+
+
+	private static void copy(InputStream input, OutputStream output) throws IOException
+	{
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = input.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+	}
+
+
+	static String webFragmentXml(File resultsFile)
+	{
+		String path = resultsFile.getAbsolutePath().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		       "<web-fragment xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.0\"" +
+		       " metadata-complete=\"true\">\n" +
+		       "\t<name>glassfish_latency_recording</name>\n" +
+		       "\t<ordering><before><others/></before></ordering>\n" +
+		       "\t<filter>\n" +
+		       "\t\t<filter-name>LatencyRecordingFilter</filter-name>\n" +
+		       "\t\t<filter-class>" + LatencyRecordingFilter.class.getName() + "</filter-class>\n" +
+		       "\t\t<async-supported>true</async-supported>\n" +
+		       "\t\t<init-param>\n" +
+		       "\t\t\t<param-name>" + RESULTS_FILE_PARAMETER + "</param-name>\n" +
+		       "\t\t\t<param-value>" + path + "</param-value>\n" +
+		       "\t\t</init-param>\n" +
+		       "\t</filter>\n" +
+		       "\t<filter-mapping>\n" +
+		       "\t\t<filter-name>LatencyRecordingFilter</filter-name>\n" +
+		       "\t\t<url-pattern>/*</url-pattern>\n" +
+		       "\t</filter-mapping>\n" +
+		       "</web-fragment>\n";
+	}
+}
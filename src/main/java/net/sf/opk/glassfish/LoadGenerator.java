@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>Generates load on a deployed web application. A fixed number of workers each send requests in a closed loop (the
+ * next request is sent when the previous response has been read) for a fixed duration. For each request, a scenario is
+ * chosen at random, in proportion to the scenario weights.</p>
+ *
+ * <p>Each worker records its latencies in histograms of its own, which are combined at the end. This way, the workers
+ * do not contend with each other while measuring.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class LoadGenerator
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(LoadGenerator.class.getName());
+	private final URL baseUrl;
+	private final List<Scenario> scenarios;
+	private final int concurrency;
+	private final long durationMillis;
+	/**
+	 * The cumulative weights of the scenarios, used to choose a scenario.
+	 */
+	private final int[] cumulativeWeights;
+
+
+	/**
+	 * Create a load generator.
+	 *
+	 * @param baseUrl        the URL of the server, including the context root of the web application
+	 * @param scenarios      the scenarios to execute
+	 * @param concurrency    the number of workers (i.e. the maximum number of requests in flight)
+	 * @param durationMillis the duration of the load test
+	 * @throws IllegalArgumentException when there are no scenarios, or a scenario has no path or a negative weight
+	 */
+	public LoadGenerator(URL baseUrl, List<Scenario> scenarios, int concurrency, long durationMillis)
+	{
+		this.baseUrl = baseUrl;
+		this.scenarios = new ArrayList<>(scenarios);
+		this.concurrency = Math.max(1, concurrency);
+		this.durationMillis = durationMillis;
+
+		cumulativeWeights = new int[scenarios.size()];
+		int totalWeight = 0;
+		for (int i = 0; i < cumulativeWeights.length; i++)
+		{
+			Scenario scenario = this.scenarios.get(i);
+			if (scenario.getPath() == null)
+			{
+				throw new IllegalArgumentException("Scenario " + (i + 1) + " has no path.");
+			}
+			if (scenario.getWeight() < 0)
+			{
+				throw new IllegalArgumentException("Scenario " + scenario.getName() + " has a negative weight.");
+			}
+			totalWeight += scenario.getWeight();
+			cumulativeWeights[i] = totalWeight;
+		}
+		if (totalWeight == 0)
+		{
+			throw new IllegalArgumentException("There are no scenarios to execute.");
+		}
+	}
+
+
+	/**
+	 * Generate load.
+	 *
+	 * @return the results per scenario (by name), followed by the combined results (named {@code total})
+	 * @throws InterruptedException when interrupted while waiting for the workers to finish
+	 */
+	public Map<String, LoadResult> run() throws InterruptedException
+	{
+		LOGGER.log(Level.INFO, "Generating load on {0} with {1} worker(s) for {2}s",
+		           new Object[]{baseUrl, concurrency, durationMillis / 1000.0});
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		List<Future<Map<String, LoadResult>>> workerResults = new ArrayList<>(concurrency);
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		try
+		{
+			for (int i = 0; i < concurrency; i++)
+			{
+				workerResults.add(executor.submit(new Worker(deadline)));
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		long elapsedNanos = System.nanoTime() - start;
+
+		Map<String, LoadResult> results = new LinkedHashMap<>();
+		for (Scenario scenario : scenarios)
+		{
+			String name = scenario.getName();
+			if (!results.containsKey(name))
+			{
+				results.put(name, new LoadResult(name, elapsedNanos));
+			}
+		}
+		LoadResult total = new LoadResult("total", elapsedNanos);
+		for (Future<Map<String, LoadResult>> workerResult : workerResults)
+		{
+			for (LoadResult result : getResult(workerResult).values())
+			{
+				results.get(result.getName()).add(result);
+				total.add(result);
+			}
+		}
+		results.put(total.getName(), total);
+		return results;
+	}
+
+
+	private static Map<String, LoadResult> getResult(Future<Map<String, LoadResult>> workerResult)
+			throws InterruptedException
+	{
+		try
+		{
+			return workerResult.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("A load generating worker failed.", e.getCause());
+		}
+	}
+
+
+	private Scenario chooseScenario()
+	{
+		int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int index = 0;
+		while (cumulativeWeights[index] <= value)
+		{
+			index++;
+		}
+		return scenarios.get(index);
+	}
+
+
+	private class Worker implements Callable<Map<String, LoadResult>>
+	{
+		private final long deadline;
+
+
+		private Worker(long deadline)
+		{
+			this.deadline = deadline;
+		}
+
+
+		@Override
+		public Map<String, LoadResult> call() throws IOException
+		{
+			Map<String, LoadResult> results = new LinkedHashMap<>();
+			while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted())
+			{
+				Scenario scenario = chooseScenario();
+				LoadResult result = results.get(scenario.getName());
+				if (result == null)
+				{
+					result = new LoadResult(scenario.getName(), 0);
+					results.put(scenario.getName(), result);
+				}
+
+				URL url = SimpleHttpClient.resolve(baseUrl, scenario.getPath());
+				byte[] body = scenario.getBody() == null ? null : scenario.getBody().getBytes(StandardCharsets.UTF_8);
+				long start = System.nanoTime();
+				try
+				{
+					int status = SimpleHttpClient.execute(scenario.getMethod(), url, body, scenario.getContentType());
+					if (status < 400)
+					{
+						result.getLatencies().record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+					}
+					else
+					{
+						result.recordError();
+					}
+				}
+				catch (IOException e)
+				{
+					LOGGER.log(Level.FINE, "Request for " + scenario.getName() + " failed", e);
+					result.recordError();
+				}
+			}
+			return results;
+		}
+	}
+}
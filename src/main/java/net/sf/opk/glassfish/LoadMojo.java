@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+
+/**
+ * MOJO to generate load on the web application deployed by the {@code start} goal, and report the throughput and
+ * latency percentiles. The results are also written to a properties file, for use by the {@code check-performance}
+ * goal or other tools.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+@Mojo(name = "load", defaultPhase = LifecyclePhase.INTEGRATION_TEST)
+public class LoadMojo extends AbstractMojo
+{
+	/**
+	 * The HTTP port GlassFish listens on. Defaults to 8080.
+	 */
+	@Parameter(defaultValue = "8080")
+	private int httpPort;
+	/**
+	 * The context root of the application. Defaults to the artifact.
+	 */
+	@Parameter(defaultValue = "/${project.artifactId}")
+	private String contextRoot;
+	/**
+	 * The scenarios to execute. Each scenario has a path (relative to the context root), and optionally a name, a
+	 * method (default GET), a body, a content type and a weight (default 1).
+	 */
+	@Parameter(required = true)
+	private Scenario[] scenarios;
+	/**
+	 * The number of concurrent workers. Defaults to 10.
+	 */
+	@Parameter(property = "glassfish.load.concurrency", defaultValue = "10")
+	private int concurrency;
+	/**
+	 * The duration of the load test, in seconds. Defaults to 30.
+	 */
+	@Parameter(property = "glassfish.load.duration", defaultValue = "30")
+	private int duration;
+	/**
+	 * The file to write the results to.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/glassfish-load.properties", required = true)
+	private File resultsFile;
+	/**
+	 * If true, no load is generated.
+	 */
+	@Parameter(property = "glassfish.load.skip", defaultValue = "false")
+	private boolean skip;
+
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException
+	{
+		if (skip)
+		{
+			getLog().info("Skipping load test.");
+			return;
+		}
+		if (scenarios == null || scenarios.length == 0)
+		{
+			throw new MojoFailureException("No scenarios configured.");
+		}
+
+		Map<String, LoadResult> results;
+		try
+		{
+			URL baseUrl = new URL("http", "localhost", httpPort, contextRoot);
+			results = new LoadGenerator(baseUrl, Arrays.asList(scenarios), concurrency, duration * 1000L).run();
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new MojoFailureException(e.getMessage(), e);
+		}
+		catch (IOException | InterruptedException e)
+		{
+			throw new MojoExecutionException("Failed to generate load.", e);
+		}
+
+		for (LoadResult result : results.values())
+		{
+			getLog().info(result.toString());
+		}
+		writeResults(results);
+	}
+
+
+	private void writeResults(Map<String, LoadResult> results) throws MojoExecutionException
+	{
+		// A sorted map yields a stable file, which is easy to compare with (or commit as) a baseline.
+		Map<String, String> properties = new TreeMap<>();
+		for (LoadResult result : results.values())
+		{
+			result.addTo(propertyKey(result.getName()), properties);
+		}
+
+		try
+		{
+			Files.createDirectories(resultsFile.getAbsoluteFile().toPath().getParent());
+			try (Writer writer = Files.newBufferedWriter(resultsFile.toPath(), StandardCharsets.ISO_8859_1))
+			{
+				for (Map.Entry<String, String> entry : properties.entrySet())
+				{
+					writer.write(entry.getKey() + '=' + entry.getValue() + '\n');
+				}
+			}
+			getLog().info("Wrote the load test results to " + resultsFile);
+		}
+		catch (IOException e)
+		{
+			throw new MojoExecutionException("Failed to write " + resultsFile, e);
+		}
+	}
+
+
+	/**
+	 * Convert a scenario name to a key usable in a properties file.
+	 *
+	 * @param name a scenario name
+	 * @return the name, with all characters other than letters, digits, '-' and '_' replaced by '_'
+	 */
+	static String propertyKey(String name)
+	{
+		return name.replaceAll("[^A-Za-z0-9_-]", "_");
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The results of a load test for a single scenario (or for all scenarios combined).
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class LoadResult
+{
+	/**
+	 * The percentiles that are reported, with the suffix used in the property names.
+	 */
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	private final String name;
+	private final LatencyHistogram latencies;
+	private long errors;
+	private final long elapsedNanos;
+
+
+	public LoadResult(String name, long elapsedNanos)
+	{
+		this.name = name;
+		this.elapsedNanos = elapsedNanos;
+		latencies = new LatencyHistogram();
+		errors = 0;
+	}
+
+
+	/**
+	 * Add the latencies and errors of another result to this one.
+	 *
+	 * @param other the result to add
+	 */
+	public synchronized void add(LoadResult other)
+	{
+		latencies.add(other.latencies);
+		errors += other.getErrors();
+	}
+
+
+	public synchronized void recordError()
+	{
+		errors++;
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public LatencyHistogram getLatencies()
+	{
+		return latencies;
+	}
+
+
+	/**
+	 * Return the number of requests, including those that failed.
+	 *
+	 * @return the number of requests
+	 */
+	public synchronized long getRequests()
+	{
+		return latencies.getCount() + errors;
+	}
+
+
+	public synchronized long getErrors()
+	{
+		return errors;
+	}
+
+
+	/**
+	 * Return the throughput: the number of successful requests per second.
+	 *
+	 * @return the number of successful requests per second
+	 */
+	public double getThroughput()
+	{
+		return elapsedNanos == 0 ? 0.0 : latencies.getCount() * (double)TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+
+	/**
+	 * Add the metrics of this result to a set of properties. The property names are the key of the result, followed by
+	 * the name of the metric. Latencies are in milliseconds.
+	 *
+	 * @param key        the key to use for this result
+	 * @param properties the properties to add to
+	 */
+	public void addTo(String key, Map<String, String> properties)
+	{
+		properties.put(key + ".requests", Long.toString(getRequests()));
+		properties.put(key + ".errors", Long.toString(getErrors()));
+		properties.put(key + ".throughput", format(getThroughput()));
+		properties.put(key + ".latency.mean", format(latencies.getMean() / 1000.0));
+		for (int i = 0; i < PERCENTILES.length; i++)
+		{
+			properties.put(key + ".latency." + PERCENTILE_NAMES[i],
+			               format(latencies.getValueAtPercentile(PERCENTILES[i]) / 1000.0));
+		}
+		properties.put(key + ".latency.max", format(latencies.getMax() / 1000.0));
+	}
+
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %d requests, %d errors, %.1f req/s, mean=%.1fms, p50=%.1fms, p90=%.1fms, " +
+		                     "p99=%.1fms, p99.9=%.1fms, max=%.1fms", name, getRequests(), getErrors(), getThroughput(),
+		                     latencies.getMean() / 1000.0, latencies.getValueAtPercentile(50) / 1000.0,
+		                     latencies.getValueAtPercentile(90) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+		                     latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMax() / 1000.0);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * <p>A random secret of the current user, used to key digests of credentials that are stored in the build directory
+ * (the password hash cache and the configuration fingerprint). The secret is stored in the home directory of the user,
+ * readable only by its owner, so a copy of the build directory cannot be used to test password guesses.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+final class LocalSecret
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(LocalSecret.class.getName());
+	/**
+	 * The number of random bytes in a secret.
+	 */
+	private static final int SECRET_LENGTH = 32;
+	/**
+	 * The algorithm to key digests with.
+	 */
+	private static final String ALGORITHM = "HmacSHA256";
+
+
+	private LocalSecret()
+	{
+		// Utility class.
+	}
+
+
+	/**
+	 * Determine the default location of the secret: {@code ~/.glassfish-web-plugin/secret}.
+	 *
+	 * @return the file with the secret of the current user
+	 */
+	static Path defaultLocation()
+	{
+		return Paths.get(System.getProperty("user.home"), ".glassfish-web-plugin", "secret");
+	}
+
+
+	/**
+	 * Create an HMAC keyed with a secret. The secret is created if it does not exist yet, readable only by its owner
+	 * if the file system supports it.
+	 *
+	 * @param secretFile the file with the secret
+	 * @return an initialized HMAC
+	 * @throws IOException when the secret cannot be read or created
+	 */
+	static Mac createMac(Path secretFile) throws IOException
+	{
+		byte[] secret = Files.isRegularFile(secretFile) ? Files.readAllBytes(secretFile) : createSecret(secretFile);
+		try
+		{
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(new SecretKeySpec(secret, ALGORITHM));
+			return mac;
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new IllegalStateException("Every JVM supports " + ALGORITHM, e);
+		}
+	}
+
+
+	/**
+	 * Calculate the HMAC of a number of values, and return it as a hexadecimal string. The values are separated by
+	 * zero bytes, so moving text from one value to the next changes the result.
+	 *
+	 * @param mac    the HMAC to use (it is reset afterwards)
+	 * @param values the values to calculate the HMAC of
+	 * @return the HMAC, as a lowercase hexadecimal string
+	 */
+	static String hex(Mac mac, String... values)
+	{
+		for (String value : values)
+		{
+			mac.update(value.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte)0);
+		}
+		return Digests.toHex(mac.doFinal());
+	}
+
+
+	/**
+	 * Create a new secret. It is written to a temporary file first, so other processes never read a partial secret.
+	 */
+	private static byte[] createSecret(Path secretFile) throws IOException
+	{
+		byte[] secret = new byte[SECRET_LENGTH];
+		new SecureRandom().nextBytes(secret);
+
+		Path directory = secretFile.toAbsolutePath().getParent();
+		Path newSecretFile = secretFile.resolveSibling(secretFile.getFileName() + ".new");
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+		{
+			if (!Files.isDirectory(directory))
+			{
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(
+						PosixFilePermissions.fromString("rwx------")));
+			}
+			Files.deleteIfExists(newSecretFile);
+			Files.createFile(newSecretFile,
+			                 PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else
+		{
+			LOGGER.warning(String.format("Cannot restrict access to %s to its owner: protect it yourself.",
+			                             secretFile));
+			Files.createDirectories(directory);
+			Files.deleteIfExists(newSecretFile);
+		}
+		Files.write(newSecretFile, secret);
+		Files.move(newSecretFile, secretFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return secret;
+	}
+}
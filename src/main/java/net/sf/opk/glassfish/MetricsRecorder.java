@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.embeddable.CommandResult;
+import org.glassfish.embeddable.CommandRunner;
+
+
+/**
+ * <p>Periodically samples the GlassFish monitoring data (HTTP service, thread pools, connection pools and web
+ * container) together with JVM heap, garbage collection and thread data, and appends the samples to a file as a time
+ * series. Each sample is a line with a JSON object (JSON Lines), with the sample time in milliseconds since the epoch
+ * as {@code timestamp} and all numeric metrics by name.</p>
+ *
+ * <p>The GlassFish monitoring levels must be enabled for the monitoring data to be available.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class MetricsRecorder implements AutoCloseable
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(MetricsRecorder.class.getName());
+	/**
+	 * The monitoring data to sample, as dotted name patterns for {@code asadmin get -m}.
+	 */
+	private static final List<String> MONITORING_PATTERNS = Arrays.asList("server.http-service.*", "server.network.*",
+	                                                                      "server.resources.*", "server.web.*");
+	private final CommandRunner commandRunner;
+	private final BufferedWriter writer;
+	private final ScheduledExecutorService executor;
+
+
+	/**
+	 * Create a metrics recorder, and start sampling.
+	 *
+	 * @param commandRunner  the command runner to query the monitoring data with (used only by this recorder)
+	 * @param metricsFile    the file to append the samples to
+	 * @param intervalMillis the time between samples, in milliseconds
+	 * @throws IOException when the file cannot be opened
+	 */
+	public MetricsRecorder(CommandRunner commandRunner, File metricsFile, long intervalMillis) throws IOException
+	{
+		this.commandRunner = commandRunner;
+		Files.createDirectories(metricsFile.getAbsoluteFile().getParentFile().toPath());
+		writer = Files.newBufferedWriter(metricsFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+		                                 StandardOpenOption.APPEND);
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "glassfish-metrics-recorder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					sample();
+				}
+				catch (IOException | RuntimeException e)
+				{
+					// An exception would cancel the schedule.
+					LOGGER.log(Level.WARNING, "Failed to record the metrics", e);
+				}
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+		LOGGER.log(Level.INFO, "Recording metrics every {0}ms in {1}", new Object[]{intervalMillis, metricsFile});
+	}
+
+
+	/**
+	 * Take a sample, and append it to the file.
+	 *
+	 * @throws IOException when the sample cannot be written
+	 */
+	void sample() throws IOException
+	{
+		SortedMap<String, Number> metrics = new TreeMap<>();
+		addJvmMetrics(metrics);
+		for (String pattern : MONITORING_PATTERNS)
+		{
+			CommandResult result = commandRunner.run("get", "-m", pattern);
+			if (result.getExitStatus() != CommandResult.ExitStatus.FAILURE)
+			{
+				metrics.putAll(parseMonitoringData(result.getOutput()));
+			}
+		}
+
+		synchronized (writer)
+		{
+			writer.write(toJson(System.currentTimeMillis(), metrics));
+			writer.newLine();
+			writer.flush();
+		}
+	}
+
+
+	private static void addJvmMetrics(Map<String, Number> metrics)
+	{
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		MemoryUsage heap = memory.getHeapMemoryUsage();
+		metrics.put("jvm.heap.used", heap.getUsed());
+		metrics.put("jvm.heap.committed", heap.getCommitted());
+		metrics.put("jvm.heap.max", heap.getMax());
+		metrics.put("jvm.nonheap.used", memory.getNonHeapMemoryUsage().getUsed());
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			String name = collector.getName().replace(' ', '-');
+			metrics.put("jvm.gc." + name + ".count", collector.getCollectionCount());
+			metrics.put("jvm.gc." + name + ".time", collector.getCollectionTime());
+		}
+		metrics.put("jvm.threads.live", ManagementFactory.getThreadMXBean().getThreadCount());
+		metrics.put("jvm.cpu.loadaverage", ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage());
+	}
+
+
+	/**
+	 * Parse the output of {@code asadmin get -m}: lines like {@code name = value}. Only numeric values are kept, except
+	 * timestamps (names ending in {@code time}, like {@code lastsampletime}).
+	 *
+	 * @param output the output of the command
+	 * @return the numeric monitoring values, by name
+	 */
+	static SortedMap<String, Long> parseMonitoringData(String output)
+	{
+		SortedMap<String, Long> values = new TreeMap<>();
+		for (String line : output.split("\\r?\\n"))
+		{
+			int separator = line.indexOf(" = ");
+			if (separator != -1)
+			{
+				String name = line.substring(0, separator).trim();
+				String value = line.substring(separator + 3).trim();
+				if (!name.endsWith("time") && value.matches("-?\\d+"))
+				{
+					values.put(name, Long.valueOf(value));
+				}
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Format a sample as a JSON object.
+	 *
+	 * @param timestamp the sample time, in milliseconds since the epoch
+	 * @param metrics   the metrics, by name
+	 * @return the sample as JSON
+	 */
+	static String toJson(long timestamp, Map<String, Number> metrics)
+	{
+		StringBuilder json = new StringBuilder("{\"timestamp\":").append(timestamp);
+		for (Map.Entry<String, Number> metric : metrics.entrySet())
+		{
+			json.append(",\"").append(metric.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\":");
+			json.append(metric.getValue());
+		}
+		return json.append('}').toString();
+	}
+
+
+	/**
+	 * Stop sampling, and close the file.
+	 *
+	 * @throws IOException when the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		// Interrupting a sample would close the file channel, so let a running sample finish.
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		synchronized (writer)
+		{
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Simple JavaBean to represent the tuning of the HTTP listeners and their thread pool. Settings that are not set
+ * ({@code null}) keep their GlassFish default.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class NetworkSettings
+{
+	private static final String THREAD_POOL = "thread-pools.thread-pool.http-thread-pool.";
+	private static final String TRANSPORT = "network-config.transports.transport.tcp.";
+	private static final String PROTOCOL = "network-config.protocols.protocol.%s.http.";
+	/**
+	 * The minimum number of worker threads of the HTTP thread pool.
+	 */
+	private Integer minThreads;
+	/**
+	 * The maximum number of worker threads of the HTTP thread pool.
+	 */
+	private Integer maxThreads;
+	/**
+	 * The maximum number of requests waiting for a worker thread; -1 means unlimited.
+	 */
+	private Integer maxQueueSize;
+	/**
+	 * The number of threads accepting new connections.
+	 */
+	private Integer acceptorThreads;
+	/**
+	 * The number of seconds an idle keep-alive connection is kept open; -1 means forever.
+	 */
+	private Integer keepAliveTimeout;
+	/**
+	 * The maximum number of requests per keep-alive connection; -1 means unlimited.
+	 */
+	private Integer maxKeepAliveRequests;
+
+
+	public Integer getMinThreads()
+	{
+		return minThreads;
+	}
+
+
+	public void setMinThreads(Integer minThreads)
+	{
+		this.minThreads = minThreads;
+	}
+
+
+	public Integer getMaxThreads()
+	{
+		return maxThreads;
+	}
+
+
+	public void setMaxThreads(Integer maxThreads)
+	{
+		this.maxThreads = maxThreads;
+	}
+
+
+	public Integer getMaxQueueSize()
+	{
+		return maxQueueSize;
+	}
+
+
+	public void setMaxQueueSize(Integer maxQueueSize)
+	{
+		this.maxQueueSize = maxQueueSize;
+	}
+
+
+	public Integer getAcceptorThreads()
+	{
+		return acceptorThreads;
+	}
+
+
+	public void setAcceptorThreads(Integer acceptorThreads)
+	{
+		this.acceptorThreads = acceptorThreads;
+	}
+
+
+	public Integer getKeepAliveTimeout()
+	{
+		return keepAliveTimeout;
+	}
+
+
+	public void setKeepAliveTimeout(Integer keepAliveTimeout)
+	{
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+
+	public Integer getMaxKeepAliveRequests()
+	{
+		return maxKeepAliveRequests;
+	}
+
+
+	public void setMaxKeepAliveRequests(Integer maxKeepAliveRequests)
+	{
+		this.maxKeepAliveRequests = maxKeepAliveRequests;
+	}
+
+
+	/**
+	 * Write these settings in the binary configuration format.
+	 *
+	 * @param output the output to write to
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(DataOutput output) throws IOException
+	{
+		ConfigurationFormat.writeInteger(output, minThreads);
+		ConfigurationFormat.writeInteger(output, maxThreads);
+		ConfigurationFormat.writeInteger(output, maxQueueSize);
+		ConfigurationFormat.writeInteger(output, acceptorThreads);
+		ConfigurationFormat.writeInteger(output, keepAliveTimeout);
+		ConfigurationFormat.writeInteger(output, maxKeepAliveRequests);
+	}
+
+
+	/**
+	 * Read settings in the binary configuration format.
+	 *
+	 * @param input the input to read from
+	 * @return the settings
+	 * @throws IOException when reading fails
+	 */
+	public static NetworkSettings readFrom(DataInput input) throws IOException
+	{
+		NetworkSettings settings = new NetworkSettings();
+		settings.setMinThreads(ConfigurationFormat.readInteger(input));
+		settings.setMaxThreads(ConfigurationFormat.readInteger(input));
+		settings.setMaxQueueSize(ConfigurationFormat.readInteger(input));
+		settings.setAcceptorThreads(ConfigurationFormat.readInteger(input));
+		settings.setKeepAliveTimeout(ConfigurationFormat.readInteger(input));
+		settings.setMaxKeepAliveRequests(ConfigurationFormat.readInteger(input));
+		return settings;
+	}
+
+
+	/**
+	 * Validate the settings.
+	 *
+	 * @throws IllegalArgumentException when a setting is out of range, or the thread pool bounds are inconsistent
+	 */
+	public void validate()
+	{
+		checkAtLeast("minThreads", minThreads, 0);
+		checkAtLeast("maxThreads", maxThreads, 1);
+		checkAtLeast("maxQueueSize", maxQueueSize, -1);
+		checkAtLeast("acceptorThreads", acceptorThreads, 1);
+		checkAtLeast("keepAliveTimeout", keepAliveTimeout, -1);
+		checkAtLeast("maxKeepAliveRequests", maxKeepAliveRequests, -1);
+		if (minThreads != null && maxThreads != null && minThreads > maxThreads)
+		{
+			throw new IllegalArgumentException(String.format("minThreads (%d) cannot exceed maxThreads (%d)",
+			                                                 minThreads, maxThreads));
+		}
+	}
+
+
+	private static void checkAtLeast(String name, Integer value, int minimum)
+	{
+		if (value != null && value < minimum)
+		{
+			throw new IllegalArgumentException(String.format("%s must be at least %d, but is %d", name, minimum,
+			                                                 value));
+		}
+	}
+
+
+	/**
+	 * Convert the settings to GlassFish configuration attributes. The attribute names are dotted names, relative to the
+	 * server configuration.
+	 *
+	 * @param protocols the names of the HTTP protocols to apply the keep-alive settings to
+	 * @return all attributes for these settings, with their value ({@code null} if not set)
+	 */
+	public Map<String, Integer> toAttributes(String... protocols)
+	{
+		Map<String, Integer> attributes = new LinkedHashMap<>();
+		attributes.put(THREAD_POOL + "min-thread-pool-size", minThreads);
+		attributes.put(THREAD_POOL + "max-thread-pool-size", maxThreads);
+		attributes.put(THREAD_POOL + "max-queue-size", maxQueueSize);
+		attributes.put(TRANSPORT + "acceptor-threads", acceptorThreads);
+		for (String protocol : protocols)
+		{
+			attributes.put(String.format(PROTOCOL, protocol) + "timeout-seconds", keepAliveTimeout);
+			attributes.put(String.format(PROTOCOL, protocol) + "max-connections", maxKeepAliveRequests);
+		}
+		return attributes;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+
+/**
+ * Compares the results of a load test (as written by {@link LoadMojo}) with a baseline. Latencies that increased too
+ * much and throughputs that decreased too much are regressions.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class PerformanceComparison
+{
+	private static final String LATENCY_INFIX = ".latency.";
+	private static final String THROUGHPUT_SUFFIX = ".throughput";
+	private final Properties baseline;
+	private final Properties results;
+
+
+	public PerformanceComparison(Properties baseline, Properties results)
+	{
+		this.baseline = baseline;
+		this.results = results;
+	}
+
+
+	/**
+	 * Load a results file.
+	 *
+	 * @param file the file to load
+	 * @return the results in the file
+	 * @throws IOException when the file cannot be read
+	 */
+	public static Properties load(File file) throws IOException
+	{
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1))
+		{
+			properties.load(reader);
+		}
+		return properties;
+	}
+
+
+	/**
+	 * Compare the results with the baseline. Only the metrics in the baseline are compared.
+	 *
+	 * @param latencyMetrics        the latency metrics to compare (e.g. {@code p99} or {@code mean})
+	 * @param maxLatencyIncrease    the maximum allowed latency increase, in percent
+	 * @param maxThroughputDecrease the maximum allowed throughput decrease, in percent
+	 * @return the differences, sorted by metric
+	 */
+	public List<Difference> compare(Collection<String> latencyMetrics, double maxLatencyIncrease,
+	                                double maxThroughputDecrease)
+	{
+		List<Difference> differences = new ArrayList<>();
+		for (String key : new TreeSet<>(baseline.stringPropertyNames()))
+		{
+			int latencyIndex = key.lastIndexOf(LATENCY_INFIX);
+			if (latencyIndex != -1 && latencyMetrics.contains(key.substring(latencyIndex + LATENCY_INFIX.length())))
+			{
+				differences.add(new Difference(key, value(baseline, key), value(results, key), maxLatencyIncrease));
+			}
+			else if (key.endsWith(THROUGHPUT_SUFFIX))
+			{
+				differences.add(new Difference(key, value(baseline, key), value(results, key),
+				                               -maxThroughputDecrease));
+			}
+		}
+		return differences;
+	}
+
+
+	private static double value(Properties properties, String key)
+	{
+		String value = properties.getProperty(key);
+		try
+		{
+			return value == null ? Double.NaN : Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException ignored)
+		{
+			return Double.NaN;
+		}
+	}
+
+
+	/**
+	 * The difference of a metric between the baseline and the results.
+	 */
+	public static class Difference
+	{
+		private final String key;
+		private final double baselineValue;
+		private final double actualValue;
+		/**
+		 * The allowed change, in percent. Positive for a maximum increase, negative for a maximum decrease.
+		 */
+		private final double allowedChange;
+
+
+		Difference(String key, double baselineValue, double actualValue, double allowedChange)
+		{
+			this.key = key;
+			this.baselineValue = baselineValue;
+			this.actualValue = actualValue;
+			this.allowedChange = allowedChange;
+		}
+
+
+		public String getKey()
+		{
+			return key;
+		}
+
+
+		/**
+		 * Determine if the metric is missing from the results (or the baseline value is invalid).
+		 *
+		 * @return true if the metric cannot be compared
+		 */
+		public boolean isMissing()
+		{
+			return Double.isNaN(baselineValue) || Double.isNaN(actualValue);
+		}
+
+
+		/**
+		 * Return the change of the metric, relative to the baseline.
+		 *
+		 * @return the change in percent
+		 */
+		public double getChange()
+		{
+			if (baselineValue == 0)
+			{
+				return actualValue == 0 ? 0.0 : Double.POSITIVE_INFINITY * Math.signum(actualValue);
+			}
+			return (actualValue - baselineValue) / baselineValue * 100.0;
+		}
+
+
+		/**
+		 * Determine if the metric changed more than allowed.
+		 *
+		 * @return true if this difference is a regression
+		 */
+		public boolean isRegression()
+		{
+			if (isMissing())
+			{
+				return false;
+			}
+			double change = getChange();
+			return allowedChange >= 0 ? change > allowedChange : change < allowedChange;
+		}
+
+
+		@Override
+		public String toString()
+		{
+			if (isMissing())
+			{
+				return String.format("%s: %s (baseline) vs. missing", key, baselineValue);
+			}
+			return String.format("%s: %.3f (baseline) vs. %.3f: %+.1f%% (allowed: %+.1f%%)", key, baselineValue,
+			                     actualValue, getChange(), allowedChange);
+		}
+	}
+}
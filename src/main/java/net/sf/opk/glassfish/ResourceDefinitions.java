@@ -0,0 +1,334 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * <p>The resources defined in a GlassFish resources file ({@code glassfish-resources.xml}), as used by {@code asadmin
+ * add-resources}. Each top-level resource (like a JDBC connection pool or resource) is identified by a key of the
+ * element name and its name (like {@code jdbc-resource:jdbc/myDataSource}), and has a digest of its definition. This
+ * allows comparing the resources with those already defined in a domain, so only the changes need to be applied.</p>
+ *
+ * <p>Files are parsed without loading the DTD, and cached by the digest of their content.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class ResourceDefinitions
+{
+	/**
+	 * Parsed resource files, by the digest of their content.
+	 */
+	private static final ConcurrentMap<String, ResourceDefinitions> PARSED_FILES = new ConcurrentHashMap<>();
+	/**
+	 * The attributes that identify a resource, in order of preference.
+	 */
+	private static final String[] IDENTITY_ATTRIBUTES = {"jndi-name", "name", "resource-adapter-name"};
+	/**
+	 * The {@code asadmin} commands to delete a resource, by element name.
+	 */
+	private static final Map<String, String[]> DELETE_COMMANDS;
+	private final DocumentType doctype;
+	/**
+	 * The resource elements, by key (in document order).
+	 */
+	private final Map<String, Element> elements;
+	/**
+	 * The digests of the resource definitions, by key.
+	 */
+	private final Map<String, String> digests;
+
+
+	static
+	{
+		Map<String, String[]> deleteCommands = new HashMap<>();
+		// Cascading also deletes the resources that use the pool.
+		deleteCommands.put("jdbc-connection-pool", new String[]{"delete-jdbc-connection-pool", "--cascade=true"});
+		deleteCommands.put("connector-connection-pool",
+		                   new String[]{"delete-connector-connection-pool", "--cascade=true"});
+		deleteCommands.put("jdbc-resource", new String[]{"delete-jdbc-resource"});
+		deleteCommands.put("connector-resource", new String[]{"delete-connector-resource"});
+		deleteCommands.put("admin-object-resource", new String[]{"delete-admin-object"});
+		deleteCommands.put("custom-resource", new String[]{"delete-custom-resource"});
+		deleteCommands.put("external-jndi-resource", new String[]{"delete-jndi-resource"});
+		deleteCommands.put("mail-resource", new String[]{"delete-javamail-resource"});
+		deleteCommands.put("resource-adapter-config", new String[]{"delete-resource-adapter-config"});
+		DELETE_COMMANDS = Collections.unmodifiableMap(deleteCommands);
+	}
+
+
+	private ResourceDefinitions(Document document)
+	{
+		doctype = document.getDoctype();
+		elements = new LinkedHashMap<>();
+		digests = new TreeMap<>();
+		NodeList children = document.getDocumentElement().getChildNodes();
+		for (int i = 0; i < children.getLength(); i++)
+		{
+			Node child = children.item(i);
+			if (child.getNodeType() == Node.ELEMENT_NODE)
+			{
+				Element element = (Element)child;
+				String key = element.getTagName() + ':' + identity(element);
+				MessageDigest digest = Digests.createDigest();
+				updateDigest(digest, element);
+				elements.put(key, element);
+				digests.put(key, Digests.toHex(digest.digest()));
+			}
+		}
+	}
+
+
+	/**
+	 * Parse a resources file, or return the cached result if a file with the same content was parsed before.
+	 *
+	 * @param resourceFile the file to parse
+	 * @return the resource definitions in the file
+	 * @throws IOException when the file cannot be read or parsed
+	 */
+	public static ResourceDefinitions parse(File resourceFile) throws IOException
+	{
+		byte[] content = Files.readAllBytes(resourceFile.toPath());
+		String contentDigest = Digests.toHex(Digests.createDigest().digest(content));
+		ResourceDefinitions definitions = PARSED_FILES.get(contentDigest);
+		if (definitions == null)
+		{
+			try
+			{
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setValidating(false);
+				factory.setIgnoringComments(true);
+				DocumentBuilder builder = factory.newDocumentBuilder();
+				builder.setEntityResolver(new EntityResolver()
+				{
+					@Override
+					public InputSource resolveEntity(String publicId, String systemId)
+					{
+						// The DTD is only needed for validation, which asadmin does anyway.
+						return new InputSource(new StringReader(""));
+					}
+				});
+				definitions = new ResourceDefinitions(builder.parse(new ByteArrayInputStream(content)));
+			}
+			catch (ParserConfigurationException | SAXException e)
+			{
+				throw new IOException("Cannot parse the resources file " + resourceFile, e);
+			}
+			PARSED_FILES.put(contentDigest, definitions);
+		}
+		return definitions;
+	}
+
+
+	private static String identity(Element element)
+	{
+		for (String attribute : IDENTITY_ATTRIBUTES)
+		{
+			if (element.hasAttribute(attribute))
+			{
+				return element.getAttribute(attribute);
+			}
+		}
+		return "";
+	}
+
+
+	/**
+	 * Add an element to a digest: its name, its attributes (sorted, as their order does not matter), its child
+	 * elements and its text (ignoring whitespace between elements).
+	 */
+	private static void updateDigest(MessageDigest digest, Element element)
+	{
+		update(digest, "<" + element.getTagName());
+		NamedNodeMap attributes = element.getAttributes();
+		Map<String, String> sortedAttributes = new TreeMap<>();
+		for (int i = 0; i < attributes.getLength(); i++)
+		{
+			sortedAttributes.put(attributes.item(i).getNodeName(), attributes.item(i).getNodeValue());
+		}
+		for (Map.Entry<String, String> attribute : sortedAttributes.entrySet())
+		{
+			update(digest, attribute.getKey());
+			update(digest, attribute.getValue());
+		}
+		NodeList children = element.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++)
+		{
+			Node child = children.item(i);
+			if (child.getNodeType() == Node.ELEMENT_NODE)
+			{
+				updateDigest(digest, (Element)child);
+			}
+			else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE)
+			{
+				String text = child.getNodeValue().trim();
+				if (!text.isEmpty())
+				{
+					update(digest, text);
+				}
+			}
+		}
+		update(digest, ">");
+	}
+
+
+	private static void update(MessageDigest digest, String value)
+	{
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+
+	/**
+	 * Return the keys of the resources, in document order.
+	 *
+	 * @return the resource keys
+	 */
+	public List<String> getKeys()
+	{
+		return new ArrayList<>(elements.keySet());
+	}
+
+
+	/**
+	 * Return the digests of the resource definitions.
+	 *
+	 * @return the digest of each resource definition, by key
+	 */
+	public Map<String, String> getDigests()
+	{
+		return Collections.unmodifiableMap(digests);
+	}
+
+
+	/**
+	 * Determine the key of the connection pool a resource uses.
+	 *
+	 * @param key the key of a resource
+	 * @return the key of the connection pool used by the resource, or {@code null} if it does not use one
+	 */
+	public String getPoolKey(String key)
+	{
+		Element element = elements.get(key);
+		if (element == null || !element.hasAttribute("pool-name"))
+		{
+			return null;
+		}
+		String poolType = element.getTagName().replace("-resource", "-connection-pool");
+		return poolType + ':' + element.getAttribute("pool-name");
+	}
+
+
+	/**
+	 * Write a resources file with a subset of the resources (in document order).
+	 *
+	 * @param keys   the keys of the resources to write
+	 * @param output where to write the resources file to
+	 * @throws IOException when the resources file cannot be written
+	 */
+	public synchronized void writeSubset(Collection<String> keys, OutputStream output) throws IOException
+	{
+		try
+		{
+			Document subset = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			Element root = subset.createElement("resources");
+			subset.appendChild(root);
+			for (Map.Entry<String, Element> entry : elements.entrySet())
+			{
+				if (keys.contains(entry.getKey()))
+				{
+					root.appendChild(subset.importNode(entry.getValue(), true));
+				}
+			}
+
+			Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			if (doctype != null)
+			{
+				// asadmin add-resources uses the DOCTYPE to determine the resource file version.
+				if (doctype.getPublicId() != null)
+				{
+					transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+				}
+				transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+			}
+			transformer.transform(new DOMSource(subset), new StreamResult(output));
+		}
+		catch (ParserConfigurationException | TransformerException e)
+		{
+			throw new IOException("Cannot write the resources", e);
+		}
+	}
+
+
+	/**
+	 * Create the command to delete a resource.
+	 *
+	 * @param key the key of the resource
+	 * @return the command to delete the resource, or {@code null} if the type of resource cannot be deleted
+	 */
+	public static Command deleteCommand(String key)
+	{
+		int separator = key.indexOf(':');
+		String[] command = DELETE_COMMANDS.get(key.substring(0, separator));
+		if (command == null)
+		{
+			return null;
+		}
+		String[] parameters = new String[command.length];
+		System.arraycopy(command, 1, parameters, 0, command.length - 1);
+		parameters[command.length - 1] = key.substring(separator + 1);
+		return new Command(command[0], parameters);
+	}
+}
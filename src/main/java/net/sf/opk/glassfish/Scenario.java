@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+/**
+ * Simple JavaBean to represent a load test scenario: a request that is sent repeatedly to the web application.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class Scenario
+{
+	/**
+	 * The name of the scenario, used to report the results. Defaults to the method and path.
+	 */
+	private String name;
+	/**
+	 * The HTTP method to use. Defaults to GET.
+	 */
+	private String method = "GET";
+	/**
+	 * The path to request, relative to the context root.
+	 */
+	private String path;
+	/**
+	 * The request body to send, if any.
+	 */
+	private String body;
+	/**
+	 * The content type of the request body, if any.
+	 */
+	private String contentType;
+	/**
+	 * The relative frequency of this scenario. Defaults to 1.
+	 */
+	private int weight = 1;
+
+
+	public String getName()
+	{
+		return name == null ? method + ' ' + path : name;
+	}
+
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+
+	public String getMethod()
+	{
+		return method;
+	}
+
+
+	public void setMethod(String method)
+	{
+		this.method = method;
+	}
+
+
+	public String getPath()
+	{
+		return path;
+	}
+
+
+	public void setPath(String path)
+	{
+		this.path = path;
+	}
+
+
+	public String getBody()
+	{
+		return body;
+	}
+
+
+	public void setBody(String body)
+	{
+		this.body = body;
+	}
+
+
+	public String getContentType()
+	{
+		return contentType;
+	}
+
+
+	public void setContentType(String contentType)
+	{
+		this.contentType = contentType;
+	}
+
+
+	public int getWeight()
+	{
+		return weight;
+	}
+
+
+	public void setWeight(int weight)
+	{
+		this.weight = weight;
+	}
+}
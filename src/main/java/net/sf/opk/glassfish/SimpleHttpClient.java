@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+
+/**
+ * Minimal HTTP client to send requests to the embedded GlassFish instance. Responses are read completely and
+ * discarded, which allows the JVM to reuse the (keep-alive) connection for the next request.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public final class SimpleHttpClient
+{
+	private static final int TIMEOUT_MILLIS = 60000;
+
+
+	private SimpleHttpClient()
+	{
+		// Utility class: do not instantiate.
+	}
+
+
+	/**
+	 * Resolve a path relative to the context root of a web application.
+	 *
+	 * @param baseUrl the URL of the server, including the context root of the web application
+	 * @param path    the path to resolve
+	 * @return the URL for the path
+	 * @throws IOException when the resulting URL is invalid
+	 */
+	public static URL resolve(URL baseUrl, String path) throws IOException
+	{
+		String contextPath = baseUrl.getPath();
+		if (contextPath.endsWith("/"))
+		{
+			contextPath = contextPath.substring(0, contextPath.length() - 1);
+		}
+		return new URL(baseUrl, contextPath + (path.startsWith("/") ? path : "/" + path));
+	}
+
+
+	/**
+	 * Send a GET request, and consume the response.
+	 *
+	 * @param url the URL to request
+	 * @return the HTTP status code
+	 * @throws IOException when the request fails
+	 */
+	public static int get(URL url) throws IOException
+	{
+		return execute("GET", url, null, null);
+	}
+
+
+	/**
+	 * Send a request, and consume the response. Redirects are not followed.
+	 *
+	 * @param method      the HTTP method to use
+	 * @param url         the URL to request
+	 * @param body        the request body, if any
+	 * @param contentType the content type of the request body, if any
+	 * @return the HTTP status code
+	 * @throws IOException when the request fails
+	 */
+	public static int execute(String method, URL url, byte[] body, String contentType) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setRequestMethod(method);
+		connection.setInstanceFollowRedirects(false);
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		if (body != null)
+		{
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(body.length);
+			if (contentType != null)
+			{
+				connection.setRequestProperty("Content-Type", contentType);
+			}
+			try (OutputStream output = connection.getOutputStream())
+			{
+				output.write(body);
+			}
+		}
+		int status = connection.getResponseCode();
+
+		InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (response != null)
+		{
+			try (InputStream input = response)
+			{
+				byte[] buffer = new byte[8192];
+				//noinspection StatementWithEmptyBody
+				while (input.read(buffer) != -1)
+				{
+					// Discard the response.
+				}
+			}
+		}
+		return status;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * <p>Startup profiles, that trim the services GlassFish starts to what an application needs. GlassFish starts most
+ * containers only when an application needs them, so the profiles disable the services that would start anyway:
+ * those that poll for (re)deployments, and (for applications without CDI) implicit bean discovery, which scans every
+ * class of the application for bean defining annotations.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public enum StartupProfile
+{
+	/**
+	 * Servlets and JSP only: no implicit CDI, and no polling for (re)deployments.
+	 */
+	SERVLET(false, false),
+	/**
+	 * Servlets, JSP and CDI: no polling for (re)deployments.
+	 */
+	WEB_CDI(false, true),
+	/**
+	 * Everything the embedded GlassFish distribution provides (the default).
+	 */
+	FULL_WEB(true, true);
+
+	private static final String DAS_CONFIG = "admin-service.das-config.";
+	private final boolean deploymentPolling;
+	private final boolean implicitCdi;
+
+
+	StartupProfile(boolean deploymentPolling, boolean implicitCdi)
+	{
+		this.deploymentPolling = deploymentPolling;
+		this.implicitCdi = implicitCdi;
+	}
+
+
+	/**
+	 * Find a startup profile by name.
+	 *
+	 * @param name the name of a profile, like {@code web-cdi}
+	 * @return the startup profile
+	 * @throws IllegalArgumentException when there is no profile with the name
+	 */
+	public static StartupProfile forName(String name)
+	{
+		for (StartupProfile profile : values())
+		{
+			if (profile.getName().equals(name))
+			{
+				return profile;
+			}
+		}
+		List<String> names = new ArrayList<>();
+		for (StartupProfile profile : values())
+		{
+			names.add(profile.getName());
+		}
+		throw new IllegalArgumentException("Unknown startup profile '" + name + "'; use one of " + names);
+	}
+
+
+	/**
+	 * Return the name of the profile, as used in the plugin configuration.
+	 *
+	 * @return the name of the profile, like {@code web-cdi}
+	 */
+	public String getName()
+	{
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+
+
+	/**
+	 * Determine the server configuration for the profile, to apply when GlassFish starts.
+	 *
+	 * @return the settings, as dotted names relative to the server configuration, with their value
+	 */
+	public Map<String, String> getServerSettings()
+	{
+		Map<String, String> settings = new LinkedHashMap<>();
+		if (!deploymentPolling)
+		{
+			settings.put(DAS_CONFIG + "autodeploy-enabled", "false");
+			settings.put(DAS_CONFIG + "dynamic-reload-enabled", "false");
+		}
+		return settings;
+	}
+
+
+	/**
+	 * Determine the extra parameters to deploy applications with.
+	 *
+	 * @return the parameters for the {@code deploy} command
+	 */
+	public List<String> getDeployParameters()
+	{
+		if (implicitCdi)
+		{
+			return Collections.emptyList();
+		}
+		List<String> parameters = new ArrayList<>();
+		parameters.add("--property");
+		parameters.add("implicitCdiEnabled=false");
+		return parameters;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * <p>Histogram of latencies (in microseconds) for recording from many threads at once, with the buckets of a
+ * {@link LatencyHistogram}. Recording is lock-free and does not allocate: each thread records into one of several
+ * stripes of atomic counters (chosen by thread id), so threads rarely contend for the same counters. The stripes are
+ * combined when a {@linkplain #snapshot() snapshot} is taken.</p>
+ *
+ * <p>Latencies above an hour are recorded as an hour, to limit the memory needed per stripe.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class StripedLatencyHistogram
+{
+	/**
+	 * The highest latency that is recorded: one hour.
+	 */
+	private static final long MAX_VALUE = 3600L * 1000 * 1000;
+	private static final int BUCKET_COUNT = LatencyHistogram.bucketIndex(MAX_VALUE) + 1;
+	private static final int MAX_STRIPES = 16;
+	private final int stripeMask;
+	/**
+	 * The bucket counts per stripe; created when first used.
+	 */
+	private final AtomicReferenceArray<AtomicLongArray> stripeCounts;
+	private final AtomicLongArray stripeTotals;
+	private final AtomicLong maxValue;
+
+
+	public StripedLatencyHistogram()
+	{
+		int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+		stripeMask = stripes - 1;
+		stripeCounts = new AtomicReferenceArray<>(stripes);
+		stripeTotals = new AtomicLongArray(stripes);
+		maxValue = new AtomicLong(0);
+	}
+
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param microseconds the latency to record
+	 */
+	public void record(long microseconds)
+	{
+		long value = Math.min(MAX_VALUE, Math.max(0, microseconds));
+		int stripe = (int)Thread.currentThread().getId() & stripeMask;
+		AtomicLongArray counts = stripeCounts.get(stripe);
+		if (counts == null)
+		{
+			stripeCounts.compareAndSet(stripe, null, new AtomicLongArray(BUCKET_COUNT));
+			counts = stripeCounts.get(stripe);
+		}
+		counts.incrementAndGet(LatencyHistogram.bucketIndex(value));
+		stripeTotals.addAndGet(stripe, value);
+
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value))
+		{
+			max = maxValue.get();
+		}
+	}
+
+
+	/**
+	 * Combine the stripes into a histogram. Latencies that are recorded while the snapshot is taken may or may not be
+	 * included.
+	 *
+	 * @return a histogram of the latencies recorded so far
+	 */
+	public LatencyHistogram snapshot()
+	{
+		long[] bucketCounts = new long[BUCKET_COUNT];
+		long totalValue = 0;
+		for (int stripe = 0; stripe < stripeCounts.length(); stripe++)
+		{
+			AtomicLongArray counts = stripeCounts.get(stripe);
+			if (counts != null)
+			{
+				for (int i = 0; i < BUCKET_COUNT; i++)
+				{
+					bucketCounts[i] += counts.get(i);
+				}
+				totalValue += stripeTotals.get(stripe);
+			}
+		}
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.addBucketCounts(bucketCounts, totalValue, maxValue.get());
+		return histogram;
+	}
+}
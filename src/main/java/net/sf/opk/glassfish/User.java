@@ -15,7 +15,9 @@
  */
 package net.sf.opk.glassfish;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 
 
@@ -24,7 +26,7 @@ import java.util.Arrays;
  *
  * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
  */
-public class User implements Serializable
+public class User
 {
 	/**
 	 * The name of the user.
@@ -76,6 +78,37 @@ public class User implements Serializable
 	}
 
 
+	/**
+	 * Write this user in the binary configuration format.
+	 *
+	 * @param output the output to write to
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(DataOutput output) throws IOException
+	{
+		ConfigurationFormat.writeString(output, username);
+		ConfigurationFormat.writeString(output, password);
+		ConfigurationFormat.writeStrings(output, roles);
+	}
+
+
+	/**
+	 * Read a user in the binary configuration format.
+	 *
+	 * @param input the input to read from
+	 * @return the user
+	 * @throws IOException when reading fails
+	 */
+	public static User readFrom(DataInput input) throws IOException
+	{
+		User user = new User();
+		user.setUsername(ConfigurationFormat.readString(input));
+		user.setPassword(ConfigurationFormat.readString(input));
+		user.setRoles(ConfigurationFormat.readStrings(input));
+		return user;
+	}
+
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+
+/**
+ * <p>Reads the users of a FileRealm from a CSV or TSV file, one user at a time, so large files need not fit in
+ * memory.</p>
+ *
+ * <p>Each line contains a username, a password and zero or more roles (groups), like
+ * {@code alice,secret,users,admins}. Files ending in {@code .tsv} are separated by tabs; other files by commas.
+ * Quoting is not supported. Empty lines and lines starting with {@code #} are skipped.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class UserFileReader implements Closeable
+{
+	private static final Pattern TAB = Pattern.compile("\t");
+	private static final Pattern COMMA = Pattern.compile(",");
+	private final File file;
+	private final Pattern separator;
+	private final BufferedReader reader;
+	private int lineNumber;
+
+
+	/**
+	 * Open a users file.
+	 *
+	 * @param file the file to read
+	 * @throws IOException when the file cannot be opened
+	 */
+	public UserFileReader(File file) throws IOException
+	{
+		this.file = file;
+		separator = file.getName().toLowerCase().endsWith(".tsv") ? TAB : COMMA;
+		reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		lineNumber = 0;
+	}
+
+
+	/**
+	 * Read the next user.
+	 *
+	 * @return the next user, or {@code null} if there are no more users
+	 * @throws IOException when the file cannot be read, or contains an invalid line
+	 */
+	public User read() throws IOException
+	{
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] fields = separator.split(line);
+			if (fields.length < 2 || fields[0].trim().isEmpty())
+			{
+				throw new IOException(String.format("%s, line %d: expected a username, a password and optional roles",
+				                                    file, lineNumber));
+			}
+			User user = new User();
+			user.setUsername(fields[0].trim());
+			user.setPassword(fields[1].trim());
+			String[] roles = Arrays.copyOfRange(fields, 2, fields.length);
+			for (int i = 0; i < roles.length; i++)
+			{
+				roles[i] = roles[i].trim();
+			}
+			user.setRoles(roles);
+			return user;
+		}
+		return null;
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Simple JavaBean to generate numbered users for a FileRealm, like {@code user0001} to {@code user1000}. Useful for
+ * load tests with many users.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class UserGenerator implements Iterable<User>
+{
+	/**
+	 * The number of users to generate.
+	 */
+	private int count;
+	/**
+	 * The pattern for the username, as used by {@link String#format(String, Object...)} with the user number (starting
+	 * at 1).
+	 */
+	private String usernamePattern = "user%04d";
+	/**
+	 * The pattern for the password, like the username pattern. Defaults to the username pattern.
+	 */
+	private String passwordPattern;
+	/**
+	 * The roles (groups) of each user.
+	 */
+	private String[] roles;
+
+
+	public int getCount()
+	{
+		return count;
+	}
+
+
+	public void setCount(int count)
+	{
+		this.count = count;
+	}
+
+
+	public String getUsernamePattern()
+	{
+		return usernamePattern;
+	}
+
+
+	public void setUsernamePattern(String usernamePattern)
+	{
+		this.usernamePattern = usernamePattern;
+	}
+
+
+	public String getPasswordPattern()
+	{
+		return passwordPattern == null ? usernamePattern : passwordPattern;
+	}
+
+
+	public void setPasswordPattern(String passwordPattern)
+	{
+		this.passwordPattern = passwordPattern;
+	}
+
+
+	public String[] getRoles()
+	{
+		return roles;
+	}
+
+
+	public void setRoles(String[] roles)
+	{
+		this.roles = roles;
+	}
+
+
+	/**
+	 * Generate the users, one at a time.
+	 *
+	 * @return an iterator over the generated users
+	 */
+	@Override
+	public Iterator<User> iterator()
+	{
+		return new Iterator<User>()
+		{
+			private int number = 0;
+
+
+			@Override
+			public boolean hasNext()
+			{
+				return number < count;
+			}
+
+
+			@Override
+			public User next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				number++;
+				User user = new User();
+				user.setUsername(String.format(usernamePattern, number));
+				user.setPassword(String.format(getPasswordPattern(), number));
+				user.setRoles(roles);
+				return user;
+			}
+
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+
+	/**
+	 * Write this generator in the binary configuration format.
+	 *
+	 * @param output the output to write to
+	 * @throws IOException when writing fails
+	 */
+	public void writeTo(DataOutput output) throws IOException
+	{
+		output.writeInt(count);
+		ConfigurationFormat.writeString(output, usernamePattern);
+		ConfigurationFormat.writeString(output, passwordPattern);
+		ConfigurationFormat.writeStrings(output, roles);
+	}
+
+
+	/**
+	 * Read a generator in the binary configuration format.
+	 *
+	 * @param input the input to read from
+	 * @return the generator
+	 * @throws IOException when reading fails
+	 */
+	public static UserGenerator readFrom(DataInput input) throws IOException
+	{
+		UserGenerator generator = new UserGenerator();
+		generator.setCount(input.readInt());
+		generator.setUsernamePattern(ConfigurationFormat.readString(input));
+		generator.setPasswordPattern(ConfigurationFormat.readString(input));
+		generator.setRoles(ConfigurationFormat.readStrings(input));
+		return generator;
+	}
+
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+		{
+			return true;
+		}
+		if (o == null || getClass() != o.getClass())
+		{
+			return false;
+		}
+
+		UserGenerator that = (UserGenerator)o;
+		return count == that.count && usernamePattern.equals(that.usernamePattern) &&
+		       getPasswordPattern().equals(that.getPasswordPattern()) && Arrays.equals(roles, that.roles);
+	}
+
+
+	@Override
+	public int hashCode()
+	{
+		int result = count;
+		result = 31 * result + usernamePattern.hashCode();
+		result = 31 * result + getPasswordPattern().hashCode();
+		result = 31 * result + Arrays.hashCode(roles);
+		return result;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d user(s) like %s", count, String.format(usernamePattern, 1));
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+
+import org.glassfish.security.common.SSHA;
+
+
+/**
+ * <p>Writes the key file for a GlassFish file realm, hashing the passwords with salted SHA (SSHA). Users are read,
+ * hashed and written in chunks, so memory use does not depend on the number of users. The users of a chunk are hashed
+ * in parallel, each thread using its own source of salts.</p>
+ *
+ * <p>Optionally, the key file lines are cached on disk, by an HMAC of the username, password and roles. Users that
+ * did not change are then not hashed again. The cache is read along with the users, so it works best if the users
+ * are listed in the same order each time. The HMAC is keyed with the {@link LocalSecret} of the user, which is not
+ * stored in the build directory: a plain digest would let anyone with a copy of the cache (for example from an
+ * archived build directory) test password guesses far faster than against the salted hashes.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class UserHasher
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(UserHasher.class.getName());
+	/**
+	 * The number of users hashed per task.
+	 */
+	private static final int BATCH_SIZE = 500;
+	private static final ThreadLocal<SecureRandom> SALT_SOURCE = new ThreadLocal<SecureRandom>()
+	{
+		@Override
+		protected SecureRandom initialValue()
+		{
+			return new SecureRandom();
+		}
+	};
+	private final File cacheDirectory;
+	/**
+	 * The file with the secret for the cache keys.
+	 */
+	private final Path secretFile;
+	private final int threads;
+	/**
+	 * The number of users to read, hash and write at a time.
+	 */
+	private final int chunkSize;
+
+
+	/**
+	 * Create a user hasher.
+	 *
+	 * @param cacheDirectory the directory to cache key file lines in, or {@code null} to disable the cache
+	 */
+	public UserHasher(File cacheDirectory)
+	{
+		this(cacheDirectory, LocalSecret.defaultLocation());
+	}
+
+
+	/**
+	 * Create a user hasher.
+	 *
+	 * @param cacheDirectory the directory to cache key file lines in, or {@code null} to disable the cache
+	 * @param secretFile     the file with the secret for the cache keys (created if needed)
+	 */
+	UserHasher(File cacheDirectory, Path secretFile)
+	{
+		this.cacheDirectory = cacheDirectory;
+		this.secretFile = secretFile;
+		threads = Runtime.getRuntime().availableProcessors();
+		chunkSize = threads * BATCH_SIZE;
+	}
+
+
+	/**
+	 * Write the key file lines for the users of a realm: the inline users, the generated users and the users from the
+	 * users file, in that order.
+	 *
+	 * @param fileRealm the realm to write the users of
+	 * @param keyFile   the key file to write to
+	 * @return the number of users written
+	 * @throws IOException when the users file, the key file or the cache cannot be read or written
+	 */
+	public int writeKeyFile(FileRealm fileRealm, Writer keyFile) throws IOException
+	{
+		String realmName = fileRealm.getRealmName();
+		Iterator<User> inlineUsers = fileRealm.getUsers() == null ? Collections.<User>emptyIterator() :
+		                             Arrays.asList(fileRealm.getUsers()).iterator();
+		Iterator<User> generatedUsers = fileRealm.getGeneratedUsers() == null ? Collections.<User>emptyIterator() :
+		                                fileRealm.getGeneratedUsers().iterator();
+		Path cacheFile = cacheDirectory == null ? null : cacheDirectory.toPath().resolve(realmName + ".cache");
+		Path newCacheFile = cacheFile == null ? null : cacheFile.resolveSibling(realmName + ".cache.new");
+		Mac cacheKeyMac = cacheFile == null ? null : LocalSecret.createMac(secretFile);
+		int userCount = 0;
+		int hashCount = 0;
+
+		ExecutorService executor = null;
+		try (UserFileReader usersFile = fileRealm.getUsersFile() == null ? null :
+		                                new UserFileReader(fileRealm.getUsersFile());
+		     BufferedReader cacheReader = cacheFile == null || !Files.isRegularFile(cacheFile) ? null :
+		                                  Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8);
+		     BufferedWriter cacheWriter = cacheFile == null ? null : createCacheWriter(newCacheFile))
+		{
+			Map<String, String> cachedLines = new LinkedHashMap<>();
+			List<User> users = new ArrayList<>(chunkSize);
+			while (true)
+			{
+				users.clear();
+				while (users.size() < chunkSize && inlineUsers.hasNext())
+				{
+					users.add(inlineUsers.next());
+				}
+				while (users.size() < chunkSize && generatedUsers.hasNext())
+				{
+					users.add(generatedUsers.next());
+				}
+				User user;
+				while (users.size() < chunkSize && usersFile != null && (user = usersFile.read()) != null)
+				{
+					users.add(user);
+				}
+				if (users.isEmpty())
+				{
+					break;
+				}
+
+				readCache(cacheReader, cachedLines);
+				String[] cacheKeys = new String[users.size()];
+				String[] lines = new String[users.size()];
+				List<Integer> missing = new ArrayList<>();
+				for (int i = 0; i < lines.length; i++)
+				{
+					cacheKeys[i] = cacheKeyMac == null ? null : cacheKey(cacheKeyMac, users.get(i));
+					lines[i] = cachedLines.remove(cacheKeys[i]);
+					if (lines[i] == null)
+					{
+						missing.add(i);
+					}
+				}
+				if (missing.size() > BATCH_SIZE && executor == null)
+				{
+					executor = Executors.newFixedThreadPool(threads);
+				}
+				hash(executor, users, missing, lines);
+
+				for (int i = 0; i < lines.length; i++)
+				{
+					keyFile.write(lines[i]);
+					keyFile.write(System.lineSeparator());
+					if (cacheWriter != null)
+					{
+						cacheWriter.write(cacheKeys[i]);
+						cacheWriter.write('\t');
+						cacheWriter.write(lines[i]);
+						cacheWriter.newLine();
+					}
+				}
+				userCount += lines.length;
+				hashCount += missing.size();
+			}
+		}
+		finally
+		{
+			if (executor != null)
+			{
+				executor.shutdownNow();
+			}
+		}
+
+		if (newCacheFile != null)
+		{
+			// Replacing the cache only now keeps the old one if anything failed.
+			Files.move(newCacheFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		LOGGER.log(Level.FINE, "Wrote {0} user(s) for realm {1}; {2} of them were hashed, the others were cached",
+		           new Object[]{userCount, realmName, hashCount});
+		return userCount;
+	}
+
+
+	private BufferedWriter createCacheWriter(Path newCacheFile) throws IOException
+	{
+		Files.createDirectories(newCacheFile.getParent());
+		return Files.newBufferedWriter(newCacheFile, StandardCharsets.UTF_8);
+	}
+
+
+	private void hash(ExecutorService executor, final List<User> users, List<Integer> indices, final String[] lines)
+			throws IOException
+	{
+		if (executor == null || indices.size() <= BATCH_SIZE)
+		{
+			for (int index : indices)
+			{
+				lines[index] = toKeyFileLine(users.get(index));
+			}
+			return;
+		}
+
+		try
+		{
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int start = 0; start < indices.size(); start += BATCH_SIZE)
+			{
+				final List<Integer> batch = indices.subList(start, Math.min(start + BATCH_SIZE, indices.size()));
+				tasks.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						// Each task writes distinct elements; Future.get() makes them visible to the caller.
+						for (int index : batch)
+						{
+							lines[index] = toKeyFileLine(users.get(index));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> task : tasks)
+			{
+				task.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while hashing passwords", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Failed to hash a password", e.getCause());
+		}
+	}
+
+
+	/**
+	 * Convert a user into a key file line.
+	 *
+	 * @param user the user to convert
+	 * @return the key file line for the user, like
+	 *         {@code anonymous;{SSHA}w9WBMj/jphXlgDWPgozFSSzUgy5Fd/ONd7nPtw==;asadmin}
+	 */
+	static String toKeyFileLine(User user)
+	{
+		byte[] salt = new byte[8];
+		SALT_SOURCE.get().nextBytes(salt);
+		byte[] password = user.getPassword().getBytes(Charset.defaultCharset());
+		byte[] hash = SSHA.compute(salt, password, "SHA");
+		String ssha = SSHA.encode(salt, hash, "SHA");
+		return user.getUsername() + ';' + ssha + ';' + joinRoles(user);
+	}
+
+
+	private static String joinRoles(User user)
+	{
+		StringBuilder buffer = new StringBuilder();
+		if (user.getRoles() != null)
+		{
+			for (String role : user.getRoles())
+			{
+				if (buffer.length() > 0)
+				{
+					buffer.append(',');
+				}
+				buffer.append(role);
+			}
+		}
+		return buffer.toString();
+	}
+
+
+	private static String cacheKey(Mac cacheKeyMac, User user)
+	{
+		return LocalSecret.hex(cacheKeyMac, user.getUsername(), user.getPassword(), joinRoles(user));
+	}
+
+
+	/**
+	 * Read ahead in the cache, keeping about two chunks of entries: the entries for the previous chunk that were not
+	 * used (in case users moved a little), and the entries for the next chunk.
+	 */
+	private void readCache(BufferedReader cacheReader, Map<String, String> cachedLines) throws IOException
+	{
+		if (cacheReader == null)
+		{
+			return;
+		}
+		Iterator<String> eldest = cachedLines.keySet().iterator();
+		while (cachedLines.size() > chunkSize)
+		{
+			eldest.next();
+			eldest.remove();
+		}
+		String line;
+		while (cachedLines.size() < 2 * chunkSize && (line = cacheReader.readLine()) != null)
+		{
+			int separator = line.indexOf('\t');
+			if (separator != -1)
+			{
+				cachedLines.put(line.substring(0, separator), line.substring(separator + 1));
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Warms up a deployed web application by requesting a list of paths a number of times, so JSP compilation, class
+ * loading and JIT compilation have happened before the application is used. The latencies are logged per iteration,
+ * and summarized per path at the end, to show when the application reaches a steady state.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class WarmUp
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(WarmUp.class.getName());
+	private static final int TIMEOUT_MILLIS = 60000;
+	private final URL baseUrl;
+	private final List<String> paths;
+	private final int concurrency;
+	private final int iterations;
+
+
+	/**
+	 * Create a warm-up for a web application.
+	 *
+	 * @param baseUrl     the URL of the server, including the context root of the web application
+	 * @param paths       the paths to request, relative to {@code baseUrl}
+	 * @param concurrency the maximum number of requests to have in flight
+	 * @param iterations  the number of times to request each path
+	 */
+	public WarmUp(URL baseUrl, List<String> paths, int concurrency, int iterations)
+	{
+		this.baseUrl = baseUrl;
+		this.paths = new ArrayList<>(new LinkedHashSet<>(paths));
+		this.concurrency = Math.max(1, concurrency);
+		this.iterations = iterations;
+	}
+
+
+	/**
+	 * Find all JSP files in the web resources of an application. Resources in {@code WEB-INF} and {@code META-INF}
+	 * are skipped, as they cannot be requested directly.
+	 *
+	 * @param webResourcesRoot the web resources directory
+	 * @return the paths of the JSP files, relative to the context root (and starting with a {@code /})
+	 * @throws IOException when the web resources cannot be read
+	 */
+	public static List<String> findJsps(final Path webResourcesRoot) throws IOException
+	{
+		final List<String> jsps = new ArrayList<>();
+		if (!Files.isDirectory(webResourcesRoot))
+		{
+			return jsps;
+		}
+		Files.walkFileTree(webResourcesRoot, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+			{
+				Path relativePath = webResourcesRoot.relativize(directory);
+				if (relativePath.startsWith("WEB-INF") || relativePath.startsWith("META-INF"))
+				{
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+			{
+				String fileName = file.getFileName().toString();
+				if (fileName.endsWith(".jsp") || fileName.endsWith(".jspx"))
+				{
+					StringBuilder path = new StringBuilder();
+					for (Path element : webResourcesRoot.relativize(file))
+					{
+						path.append('/').append(element);
+					}
+					jsps.add(path.toString());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return jsps;
+	}
+
+
+	/**
+	 * Warm up the web application.
+	 *
+	 * @return the latencies per path
+	 * @throws InterruptedException when interrupted while waiting for the requests to finish
+	 */
+	public Map<String, LatencyHistogram> run() throws InterruptedException
+	{
+		Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+		for (String path : paths)
+		{
+			latencies.put(path, new LatencyHistogram());
+		}
+		if (paths.isEmpty() || iterations < 1)
+		{
+			return latencies;
+		}
+
+		LOGGER.log(Level.INFO, "Warming up {0} with {1} path(s), {2} iteration(s) and concurrency {3}",
+		           new Object[]{baseUrl, paths.size(), iterations, concurrency});
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try
+		{
+			for (int iteration = 1; iteration <= iterations; iteration++)
+			{
+				LatencyHistogram iterationLatencies = new LatencyHistogram();
+				List<Callable<Void>> requests = new ArrayList<>(paths.size());
+				for (String path : paths)
+				{
+					requests.add(new TimedRequest(path, latencies.get(path), iterationLatencies));
+				}
+				executor.invokeAll(requests);
+				LOGGER.log(Level.INFO, "Warm-up iteration {0}/{1}: {2}",
+				           new Object[]{iteration, iterations, iterationLatencies});
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet())
+		{
+			LOGGER.log(Level.INFO, "Warm-up of {0}: {1}", new Object[]{entry.getKey(), entry.getValue()});
+		}
+		return latencies;
+	}
+
+
+	private class TimedRequest implements Callable<Void>
+	{
+		private final String path;
+		private final LatencyHistogram pathLatencies;
+		private final LatencyHistogram iterationLatencies;
+
+
+		private TimedRequest(String path, LatencyHistogram pathLatencies, LatencyHistogram iterationLatencies)
+		{
+			this.path = path;
+			this.pathLatencies = pathLatencies;
+			this.iterationLatencies = iterationLatencies;
+		}
+
+
+		@Override
+		public Void call()
+		{
+			long start = System.nanoTime();
+			try
+			{
+				int status = SimpleHttpClient.get(SimpleHttpClient.resolve(baseUrl, path));
+				long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+				pathLatencies.record(latency);
+				iterationLatencies.record(latency);
+				if (status >= 400)
+				{
+					LOGGER.log(Level.WARNING, "Warm-up request for {0} returned HTTP status {1}",
+					           new Object[]{path, status});
+				}
+			}
+			catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Warm-up request for " + path + " failed", e);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package net.sf.opk.glassfish.archive;
+
+import com.sun.nio.file.SensitivityWatchEventModifier;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipFile;
+
+
+/**
+ * <p>Class to synchronize libraries (jar files) into {@code WEB-INF/lib}. Each library is copied, as the build
+ * overwrites the original when it is rebuilt. When a library changes, its copy is replaced atomically: the new content
+ * is copied to a temporary file, which is then renamed. The web application keeps using the old file (which it has
+ * open) until it is redeployed.</p>
+ *
+ * <p>A library is only replaced once it is a complete zip file: while the build writes it, it is not.</p>
+ *
+ * <p>While {@linkplain #watch() watching}, only the directory of each library is watched (not its subdirectories,
+ * like {@code target/classes} next to a jar), and only events for the libraries themselves are handled. The libraries
+ * use their own watch service, so their directories may overlap with other watched directories.</p>
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public class LibrarySynchronizer implements DirectoryEventHandler, AutoCloseable
+{
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(LibrarySynchronizer.class.getName());
+	/**
+	 * The directory we're synchronizing into.
+	 */
+	private final Path targetDirectory;
+	/**
+	 * The copy of each library, by absolute path of the library.
+	 */
+	private final Map<Path, Path> copies;
+	/**
+	 * The modification time of each library when it was last copied.
+	 */
+	private final Map<Path, FileTime> copiedModificationTimes;
+	/**
+	 * Listeners to notify of replaced libraries.
+	 */
+	private final List<PathChangeListener> changeListeners;
+	/**
+	 * The service to watch the directories of the libraries with; {@code null} if not watching.
+	 */
+	private WatchService watchService;
+
+
+	public LibrarySynchronizer(Path targetDirectory)
+	{
+		if (!Files.isDirectory(targetDirectory))
+		{
+			throw new IllegalArgumentException(targetDirectory + " is not a directory.");
+		}
+		this.targetDirectory = targetDirectory.toAbsolutePath();
+		copies = new ConcurrentHashMap<>();
+		copiedModificationTimes = new ConcurrentHashMap<>();
+		changeListeners = new CopyOnWriteArrayList<>();
+	}
+
+
+	/**
+	 * Copy a library into the target directory, and keep it synchronized.
+	 *
+	 * @param library the library to add
+	 * @throws IOException when the library cannot be copied
+	 */
+	public void addLibrary(Path library) throws IOException
+	{
+		Path source = library.toAbsolutePath();
+		Path copy = RealScatteredArchive.makeUnique(targetDirectory.resolve(source.getFileName()), 1);
+		FileTime modificationTime = Files.getLastModifiedTime(source);
+		Files.copy(source, copy);
+		copies.put(source, copy);
+		copiedModificationTimes.put(source, modificationTime);
+	}
+
+
+	/**
+	 * Determine the directories that contain the libraries, to watch for changes.
+	 *
+	 * @return the directories containing the libraries
+	 */
+	public Set<Path> getSourceDirectories()
+	{
+		Set<Path> sourceDirectories = new LinkedHashSet<>();
+		for (Path library : copies.keySet())
+		{
+			sourceDirectories.add(library.getParent());
+		}
+		return sourceDirectories;
+	}
+
+
+	/**
+	 * Start watching the libraries, and replace their copies when they are rebuilt. Call this after adding the
+	 * libraries.
+	 *
+	 * @throws IOException when the directory of a library cannot be watched
+	 */
+	public synchronized void watch() throws IOException
+	{
+		if (watchService != null || copies.isEmpty())
+		{
+			return;
+		}
+		final WatchService newWatchService = targetDirectory.getFileSystem().newWatchService();
+		try
+		{
+			for (Path directory : getSourceDirectories())
+			{
+				directory.register(newWatchService, handledEvents(), SensitivityWatchEventModifier.HIGH);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			newWatchService.close();
+			throw e;
+		}
+		watchService = newWatchService;
+
+		Thread watcherThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!Thread.currentThread().isInterrupted())
+					{
+						WatchKey watchKey = newWatchService.take();
+						Path directory = (Path)watchKey.watchable();
+						for (WatchEvent<?> event : watchKey.pollEvents())
+						{
+							handleWatchEvent(event, directory);
+						}
+						if (!watchKey.reset())
+						{
+							LOGGER.log(Level.WARNING, "Cannot watch {0} for rebuilt libraries anymore", directory);
+						}
+					}
+				}
+				catch (InterruptedException | ClosedWatchServiceException ignored)
+				{
+					// Ignore: we're closed.
+				}
+			}
+		}, "library-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		LOGGER.log(Level.INFO, "Watching {0} libraries for changes", copies.size());
+	}
+
+
+	/**
+	 * Handle a watch event for a directory with libraries. When events were lost, all libraries in the directory are
+	 * checked.
+	 */
+	private void handleWatchEvent(WatchEvent<?> event, Path directory)
+	{
+		List<Path> fileNames = new ArrayList<>();
+		if (event.context() != null)
+		{
+			fileNames.add((Path)event.context());
+		}
+		else
+		{
+			for (Path library : copies.keySet())
+			{
+				if (library.getParent().equals(directory))
+				{
+					fileNames.add(library.getFileName());
+				}
+			}
+		}
+		for (Path fileName : fileNames)
+		{
+			try
+			{
+				handle(event.kind(), directory, fileName);
+			}
+			catch (Exception e)
+			{
+				LOGGER.log(Level.WARNING, "Failed to handle the change of " + directory.resolve(fileName), e);
+			}
+		}
+	}
+
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (watchService != null)
+		{
+			watchService.close();
+			watchService = null;
+		}
+	}
+
+
+	/**
+	 * Add a listener to notify of libraries that are replaced after the initial synchronization.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addChangeListener(PathChangeListener listener)
+	{
+		changeListeners.add(listener);
+	}
+
+
+	@Override
+	public WatchEvent.Kind<?>[] handledEvents()
+	{
+		return new WatchEvent.Kind<?>[]{StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY};
+	}
+
+
+	@Override
+	public void handle(WatchEvent.Kind<?> event, Path root, Path path) throws IOException
+	{
+		Path source = root.resolve(path).toAbsolutePath();
+		Path copy = copies.get(source);
+		if (copy == null || !Files.isRegularFile(source))
+		{
+			return;
+		}
+		FileTime modificationTime = Files.getLastModifiedTime(source);
+		if (modificationTime.equals(copiedModificationTimes.get(source)))
+		{
+			return;
+		}
+		if (!isCompleteZipFile(source))
+		{
+			LOGGER.log(Level.FINE, "Not replacing {0}: {1} is still being written", new Object[]{copy, source});
+			return;
+		}
+
+		Path temporaryCopy = targetDirectory.resolve('.' + copy.getFileName().toString() + ".new");
+		Files.copy(source, temporaryCopy, StandardCopyOption.REPLACE_EXISTING);
+		Files.move(temporaryCopy, copy, StandardCopyOption.ATOMIC_MOVE);
+		copiedModificationTimes.put(source, modificationTime);
+		LOGGER.log(Level.INFO, "Replaced {0} with the rebuilt {1}", new Object[]{copy.getFileName(), source});
+
+		for (PathChangeListener listener : changeListeners)
+		{
+			listener.pathChanged(root, path);
+		}
+	}
+
+
+	/**
+	 * Determine if a file is a complete zip file, by reading its central directory (which is written last).
+	 *
+	 * @param file the file to check
+	 * @return true if the file is a complete zip file, false otherwise
+	 */
+	static boolean isCompleteZipFile(Path file)
+	{
+		try (ZipFile zipFile = new ZipFile(file.toFile()))
+		{
+			return zipFile.size() >= 0;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package net.sf.opk.glassfish.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+
+/**
+ * Listener for changed files, as reported by a synchronizer after it has processed the change.
+ *
+ * @author <a href="mailto:oscar@westravanholthe.nl">Oscar Westra van Holthe - Kind</a>
+ */
+public interface PathChangeListener
+{
+	/**
+	 * Called after a file has been created or modified.
+	 *
+	 * @param root the source root that contains the file
+	 * @param path the path of the file, relative to {@code root}
+	 * @throws IOException when handling the change fails
+	 */
+	void pathChanged(Path root, Path path) throws IOException;
+}
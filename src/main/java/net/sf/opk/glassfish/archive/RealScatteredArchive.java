@@ -9,8 +9,8 @@ import java.util.List;
 
 /**
  * <p>A better ScatteredArchive than the {@link org.glassfish.embeddable.archive.ScatteredArchive ScatteredArchive} from
- * GlassFish. This class provides a realtime view of the web resources and classes, and a static view of all
- * libraries.</p>
+ * GlassFish. This class provides a realtime view of the web resources and classes, and a copy of all libraries
+ * that is replaced when a library is rebuilt.</p>
  *
  * <p><strong>ASSUMPTION:</strong> all sources and build results reside on the same filesystem.</p>
  *
@@ -24,7 +24,10 @@ public class RealScatteredArchive implements AutoCloseable
 	private static final String LIB = "lib";
 
 	private final DirectoryEventSource directoryEventSource;
+	private final WebResourcesSynchronizer webResources;
+	private final LibrarySynchronizer libraries;
 	private final Path archiveRoot;
+	private final Path archiveLib;
 
 
 	public RealScatteredArchive(Path tempDir, Path webResourcesPath, Iterable<Path> classpath)
@@ -34,12 +37,13 @@ public class RealScatteredArchive implements AutoCloseable
 		directoryEventSource = new DirectoryEventSource(webResourcesRoot.getFileSystem());
 		archiveRoot = Files.createTempDirectory(tempDir, ARCHIVE_ROOT_PREFIX);
 
-		WebResourcesSynchronizer webResources = new WebResourcesSynchronizer(webResourcesRoot, archiveRoot);
+		webResources = new WebResourcesSynchronizer(webResourcesRoot, archiveRoot);
 		directoryEventSource.register(webResourcesPath, webResources);
 
 		final Path archiveClasses = Files.createDirectories(archiveRoot.resolve(WEBINF).resolve(CLASSES));
-		final Path archiveLib = Files.createDirectories(archiveClasses.resolveSibling(LIB));
+		archiveLib = Files.createDirectories(archiveClasses.resolveSibling(LIB));
 
+		libraries = new LibrarySynchronizer(archiveLib);
 		List<Path> classpathEntries = new ArrayList<>();
 		for (final Path classpathEntry : classpath)
 		{
@@ -49,8 +53,7 @@ public class RealScatteredArchive implements AutoCloseable
 			}
 			else
 			{
-				Path library = makeUnique(archiveLib.resolve(classpathEntry.getFileName()), 1);
-				Files.copy(classpathEntry, library);
+				libraries.addLibrary(classpathEntry);
 			}
 		}
 		ClasspathEntriesSynchronizer classpathSynchronizer =
@@ -59,6 +62,8 @@ public class RealScatteredArchive implements AutoCloseable
 		{
 			directoryEventSource.register(classpathEntry, classpathSynchronizer);
 		}
+		// The libraries are watched separately: only their own files, not everything next to (or below) them.
+		libraries.watch();
 
 		Thread watcherThread = new Thread(directoryEventSource);
 		watcherThread.setDaemon(true);
@@ -72,10 +77,45 @@ public class RealScatteredArchive implements AutoCloseable
 	}
 
 
+	/**
+	 * Add a library to the archive. Call this before the archive is deployed.
+	 *
+	 * @param library the library (jar file) to add
+	 * @throws IOException when the library cannot be copied into the archive
+	 */
+	public void addLibrary(Path library) throws IOException
+	{
+		Files.copy(library, makeUnique(archiveLib.resolve(library.getFileName()), 1));
+	}
+
+
+	/**
+	 * Add a listener to notify of libraries that are replaced because they were rebuilt while the archive is in use.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addLibraryListener(PathChangeListener listener)
+	{
+		libraries.addChangeListener(listener);
+	}
+
+
+	/**
+	 * Add a listener to notify of web resources that are created or modified while the archive is in use.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addWebResourceListener(PathChangeListener listener)
+	{
+		webResources.addChangeListener(listener);
+	}
+
+
 	@Override
 	public void close() throws IOException
 	{
 		directoryEventSource.stop();
+		libraries.close();
 	}
 
 
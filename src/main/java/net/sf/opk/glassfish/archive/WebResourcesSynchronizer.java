@@ -10,6 +10,8 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +53,10 @@ public class WebResourcesSynchronizer implements DirectoryEventHandler
 	 * and {@link #webinfLib}.</p>
 	 */
 	private final FileVisitor<Path> recursiveWebResourceDeleter;
+	/**
+	 * Listeners to notify of created and modified web resources.
+	 */
+	private final List<PathChangeListener> changeListeners;
 
 
 	public WebResourcesSynchronizer(final Path sourceDirectory, final Path targetDirectory) throws IOException
@@ -63,6 +69,7 @@ public class WebResourcesSynchronizer implements DirectoryEventHandler
 		Path webinf = sourceDirectory.resolve("WEB-INF");
 		webinfClasses = sourceDirectory.relativize(webinf.resolve("classes"));
 		webinfLib = sourceDirectory.relativize(webinf.resolve("lib"));
+		changeListeners = new CopyOnWriteArrayList<>();
 
 		recursiveWebResourceCopier = new SimpleFileVisitor<Path>()
 		{
@@ -93,6 +100,7 @@ public class WebResourcesSynchronizer implements DirectoryEventHandler
 					final Path linkTarget = file.toAbsolutePath();
 					Files.createLink(fileInTarget, linkTarget);
 					LOGGER.log(Level.FINE, "Linked {0} to {1}", new Object[]{fileInTarget, linkTarget});
+					notifyChangeListeners(relativePath);
 				}
 
 				return FileVisitResult.CONTINUE;
@@ -151,6 +159,26 @@ public class WebResourcesSynchronizer implements DirectoryEventHandler
 	}
 
 
+	/**
+	 * Add a listener to notify of web resources that are created or modified after the initial synchronization.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addChangeListener(PathChangeListener listener)
+	{
+		changeListeners.add(listener);
+	}
+
+
+	private void notifyChangeListeners(Path relativePath) throws IOException
+	{
+		for (PathChangeListener listener : changeListeners)
+		{
+			listener.pathChanged(sourceDirectory, relativePath);
+		}
+	}
+
+
 	private void requireDirectory(Path directory)
 	{
 		if (!Files.isDirectory(directory))
@@ -249,6 +277,15 @@ public class WebResourcesSynchronizer implements DirectoryEventHandler
 			visitedPath = targetDirectory.resolve(sourcePath);
 			visitor = recursiveWebResourceDeleter;
 		}
+		else if (StandardWatchEventKinds.ENTRY_MODIFY.equals(event) && isWebResourcePath(sourcePath))
+		{
+			// The target is a hard link, so it already has the new content.
+			if (Files.isRegularFile(sourceDirectory.resolve(sourcePath)))
+			{
+				notifyChangeListeners(sourcePath);
+			}
+			return;
+		}
 		else
 		{
 			// Unknown event type, or not a web resource: exit.
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class CheckPerformanceMojoTest
+{
+	private Path baselineFile;
+	private Path resultsFile;
+
+
+	@Before
+	public void createFiles() throws IOException
+	{
+		baselineFile = Files.createTempFile(getClass().getSimpleName(), ".properties");
+		resultsFile = Files.createTempFile(getClass().getSimpleName(), ".properties");
+		Files.write(baselineFile, Arrays.asList("page.throughput=100.0", "page.latency.p99=20.0"),
+		            StandardCharsets.ISO_8859_1);
+	}
+
+
+	@After
+	public void deleteFiles() throws IOException
+	{
+		Files.delete(baselineFile);
+		Files.delete(resultsFile);
+	}
+
+
+	@Test
+	public void testWithinThresholds() throws Exception
+	{
+		Files.write(resultsFile, Arrays.asList("page.throughput=95.0", "page.latency.p99=21.0"),
+		            StandardCharsets.ISO_8859_1);
+
+		createMojo(true).execute();
+	}
+
+
+	@Test(expected = MojoFailureException.class)
+	public void testMissingMetricFails() throws Exception
+	{
+		Files.write(resultsFile, Arrays.asList("page.throughput=95.0", "page.latency.p95=21.0"),
+		            StandardCharsets.ISO_8859_1);
+
+		createMojo(true).execute();
+	}
+
+
+	@Test
+	public void testMissingMetricIsAllowed() throws Exception
+	{
+		// An empty run.
+		Files.write(resultsFile, new byte[0]);
+
+		createMojo(false).execute();
+	}
+
+
+	@Test(expected = MojoFailureException.class)
+	public void testNothingComparedFails() throws Exception
+	{
+		Files.write(baselineFile, Arrays.asList("page.requests=1000"), StandardCharsets.ISO_8859_1);
+		Files.write(resultsFile, Arrays.asList("page.requests=1000"), StandardCharsets.ISO_8859_1);
+
+		createMojo(true).execute();
+	}
+
+
+	private CheckPerformanceMojo createMojo(boolean failOnMissingMetric) throws Exception
+	{
+		CheckPerformanceMojo mojo = new CheckPerformanceMojo();
+		setField(mojo, "resultsFile", resultsFile.toFile());
+		setField(mojo, "baselineFile", baselineFile.toFile());
+		setField(mojo, "maxLatencyIncrease", 15.0);
+		setField(mojo, "maxThroughputDecrease", 15.0);
+		setField(mojo, "failOnMissingMetric", failOnMissingMetric);
+		return mojo;
+	}
+
+
+	private static void setField(CheckPerformanceMojo mojo, String fieldName, Object value) throws Exception
+	{
+		Field field = CheckPerformanceMojo.class.getDeclaredField(fieldName);
+		field.setAccessible(true);
+		field.set(mojo, value);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ClassDataSharingArchiveTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testIsSupported()
+	{
+		assertFalse(ClassDataSharingArchive.isSupported("1.7"));
+		assertFalse(ClassDataSharingArchive.isSupported("1.8"));
+		assertFalse(ClassDataSharingArchive.isSupported("11"));
+		assertTrue(ClassDataSharingArchive.isSupported("13"));
+		assertTrue(ClassDataSharingArchive.isSupported("17"));
+		assertTrue(ClassDataSharingArchive.isSupported("21.0"));
+		assertFalse(ClassDataSharingArchive.isSupported("unknown"));
+	}
+
+
+	@Test
+	public void testCreateAndUseArchive() throws IOException
+	{
+		ClassDataSharingArchive archive = new ClassDataSharingArchive(directory.resolve("cds").toFile(),
+		                                                              "4.1-0123456789ab", "17.0.2+8");
+		Path archiveFile = directory.resolve("cds/4.1-0123456789ab-17.0.2_8.jsa");
+		assertEquals(archiveFile, archive.getArchive());
+		assertEquals(Collections.singletonList("-XX:ArchiveClassesAtExit=" + archiveFile + ".new"),
+		             archive.getJvmArgs());
+
+		// The forked JVM failed to create the archive.
+		archive.forkedJvmExited();
+		assertFalse(Files.exists(archiveFile));
+
+		Files.write(directory.resolve("cds/4.1-0123456789ab-17.0.2_8.jsa.new"), new byte[]{1, 2, 3});
+		archive.forkedJvmExited();
+		assertTrue(Files.exists(archiveFile));
+		assertEquals(Collections.singletonList("-XX:SharedArchiveFile=" + archiveFile), archive.getJvmArgs());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class ClassLoaderLeakDetectorTest
+{
+	@Test
+	public void testCollectedClassLoaderIsNoLeak()
+	{
+		ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector();
+		detector.track("collected", new URLClassLoader(new URL[0]));
+
+		assertEquals(0, detector.findLeaks());
+	}
+
+
+	@Test
+	public void testReachableClassLoaderIsLeak() throws InterruptedException
+	{
+		ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector();
+		URLClassLoader classLoader = new URLClassLoader(new URL[0]);
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(60000);
+				}
+				catch (InterruptedException ignored)
+				{
+					// Done.
+				}
+			}
+		}, "leaking-thread");
+		thread.setContextClassLoader(classLoader);
+		thread.setDaemon(true);
+		thread.start();
+		try
+		{
+			detector.track("leaked", classLoader);
+
+			assertEquals(1, detector.findLeaks());
+			List<String> leakPaths = ClassLoaderLeakDetector.findLeakPaths(classLoader);
+			assertEquals(Collections.singletonList("context class loader of thread 'leaking-thread'"), leakPaths);
+
+			detector.forgetTrackedClassLoaders();
+			assertEquals(0, detector.findLeaks());
+		}
+		finally
+		{
+			thread.interrupt();
+			thread.join();
+		}
+	}
+
+
+	@Test
+	public void testFindLeakPathsWithoutClassLoader()
+	{
+		assertTrue(ClassLoaderLeakDetector.findLeakPaths(null).isEmpty());
+	}
+
+
+	@Test
+	public void testMetaspaceIsMeasured()
+	{
+		assertTrue(ClassLoaderLeakDetector.getMetaspaceUsed() > 0);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class ConfigurationFingerprintTest
+{
+	private Path resources;
+	private Path jar;
+	private Path fingerprintFile;
+	private Path secretFile;
+
+
+	@Before
+	public void createFiles() throws IOException
+	{
+		resources = Files.createTempFile("resources", ".xml");
+		Files.write(resources, "<resources/>".getBytes(StandardCharsets.UTF_8));
+		jar = Files.createTempFile("library", ".jar");
+		Files.write(jar, "version 1".getBytes(StandardCharsets.UTF_8));
+		fingerprintFile = Files.createTempFile("fingerprint", ".properties");
+		Files.delete(fingerprintFile);
+		secretFile = Files.createTempFile("secret", ".bin");
+		Files.delete(secretFile);
+	}
+
+
+	@After
+	public void deleteFiles() throws IOException
+	{
+		Files.delete(resources);
+		Files.delete(jar);
+		Files.deleteIfExists(fingerprintFile);
+		Files.deleteIfExists(secretFile);
+	}
+
+
+	@Test
+	public void testStableFingerprint() throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(createConfiguration(8080));
+		ConfigurationFingerprint sameFingerprint = new ConfigurationFingerprint(createConfiguration(8080));
+
+		assertEquals(fingerprint.getFingerprint(), sameFingerprint.getFingerprint());
+		assertEquals(fingerprint.getDomainFingerprint(), sameFingerprint.getDomainFingerprint());
+		assertEquals(Collections.<String>emptyList(), fingerprint.getChangedInputs(sameFingerprint));
+	}
+
+
+	@Test
+	public void testChangedInputs() throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(createConfiguration(8080));
+
+		Files.write(resources, "<resources></resources>".getBytes(StandardCharsets.UTF_8));
+		ConfigurationFingerprint changedResources = new ConfigurationFingerprint(createConfiguration(8081));
+		assertEquals(Arrays.asList("glassFishResources[" + resources + ']', "httpPort"),
+		             changedResources.getChangedInputs(fingerprint));
+		assertNotEquals(fingerprint.getDomainFingerprint(), changedResources.getDomainFingerprint());
+
+		GlassFishConfiguration withCommand = createConfiguration(8081);
+		withCommand.addExtraCommands(new Command[]{new Command("set", "a=b")});
+		assertEquals(Collections.singletonList("extraCommands"),
+		             new ConfigurationFingerprint(withCommand).getChangedInputs(changedResources));
+	}
+
+
+	@Test
+	public void testResourcesChangeOnlyTheFullFingerprint() throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(createConfiguration(8080));
+
+		Files.write(resources, "<resources></resources>".getBytes(StandardCharsets.UTF_8));
+		ConfigurationFingerprint changedResources = new ConfigurationFingerprint(createConfiguration(8080));
+
+		assertNotEquals(fingerprint.getFingerprint(), changedResources.getFingerprint());
+		assertEquals(fingerprint.getDomainFingerprint(), changedResources.getDomainFingerprint());
+	}
+
+
+	@Test
+	public void testClassPathChangesOnlyTheFullFingerprint() throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(createConfiguration(8080));
+
+		FileTime modified = Files.getLastModifiedTime(jar);
+		Files.write(jar, "version 2".getBytes(StandardCharsets.UTF_8));
+		// Ensure the change is noticed, even if the file system has a coarse timestamp resolution.
+		Files.setLastModifiedTime(jar, FileTime.fromMillis(modified.toMillis() + 2000));
+		ConfigurationFingerprint changedJar = new ConfigurationFingerprint(createConfiguration(8080));
+
+		assertEquals(Collections.singletonList("classPath[" + jar + ']'), changedJar.getChangedInputs(fingerprint));
+		assertNotEquals(fingerprint.getFingerprint(), changedJar.getFingerprint());
+		assertEquals(fingerprint.getDomainFingerprint(), changedJar.getDomainFingerprint());
+	}
+
+
+	@Test
+	public void testPasswordsAreKeyedBySecret() throws IOException
+	{
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(createConfiguration("secret"), secretFile);
+		String credentials = fingerprint.getInputDigests().get("fileRealm[realm].credentials");
+		assertNotEquals(Digests.toHex(Digests.createDigest().digest("secret\0".getBytes(StandardCharsets.UTF_8))),
+		                credentials);
+
+		ConfigurationFingerprint changedPassword =
+				new ConfigurationFingerprint(createConfiguration("changed"), secretFile);
+		assertEquals(Collections.singletonList("fileRealm[realm].credentials"),
+		             changedPassword.getChangedInputs(fingerprint));
+		assertNotEquals(fingerprint.getDomainFingerprint(), changedPassword.getDomainFingerprint());
+
+		// A different secret yields a different digest for the same password.
+		Files.delete(secretFile);
+		ConfigurationFingerprint otherSecret = new ConfigurationFingerprint(createConfiguration("secret"), secretFile);
+		assertNotEquals(credentials, otherSecret.getInputDigests().get("fileRealm[realm].credentials"));
+	}
+
+
+	@Test
+	public void testSaveAndLoad() throws IOException
+	{
+		assertNull(ConfigurationFingerprint.load(fingerprintFile.toFile()));
+
+		GlassFishConfiguration configuration = createConfiguration(8080);
+		// Input names outside ISO 8859-1 must survive.
+		FileRealm firstRealm = new FileRealm();
+		firstRealm.setRealmName("\u65e5\u672c");
+		FileRealm secondRealm = new FileRealm();
+		secondRealm.setRealmName("\u4e2d\u6587");
+		configuration.addFileRealms(new FileRealm[]{firstRealm, secondRealm});
+		ConfigurationFingerprint fingerprint = new ConfigurationFingerprint(configuration);
+		fingerprint.save(fingerprintFile.toFile());
+		ConfigurationFingerprint loaded = ConfigurationFingerprint.load(fingerprintFile.toFile());
+
+		assertEquals(fingerprint.getInputDigests(), loaded.getInputDigests());
+		assertEquals(fingerprint.getFingerprint(), loaded.getFingerprint());
+	}
+
+
+	private GlassFishConfiguration createConfiguration(int httpPort)
+	{
+		GlassFishConfiguration configuration = new GlassFishConfiguration(httpPort, null, "/app", new File("webapp"),
+		                                                                  new File("target"));
+		configuration.addGlassFishResources(resources.toFile());
+		configuration.addToWebApplicationClassPath(jar.toFile());
+		return configuration;
+	}
+
+
+	private GlassFishConfiguration createConfiguration(String password)
+	{
+		User user = new User();
+		user.setUsername("alice");
+		user.setPassword(password);
+		user.setRoles(new String[]{"role1"});
+		FileRealm fileRealm = new FileRealm();
+		fileRealm.setRealmName("realm");
+		fileRealm.setUsers(new User[]{user});
+		GlassFishConfiguration configuration = createConfiguration(8080);
+		configuration.addFileRealms(new FileRealm[]{fileRealm});
+		return configuration;
+	}
+}
@@ -41,7 +41,9 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.artifact.metadata.ArtifactMetadata;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
@@ -166,6 +168,37 @@ public class ConfiguredEmbeddedGlassFishMojoTest extends MojoTestBase
 	}
 
 
+	@Test
+	public void testReactorClassesDirectory() throws Exception
+	{
+		ConfiguredEmbeddedGlassFishMojo mojo =
+				createAndconfigureMojo(HTTP_PORT, 0, null, null, APP_PATH, WEBAPP_DIRECTORY,
+						NONEXISTING_DIRECTORY, false, NONEXISTING_DIRECTORY, PLUGIN_CLASSPATH,
+						Collections.<FileRealm>emptyList(), Collections.<Command>emptyList());
+		MavenProject module = new MavenProject();
+		module.setGroupId("net.sf.opk");
+		module.setArtifactId("module");
+		module.setVersion("1.0-SNAPSHOT");
+		module.getBuild().setOutputDirectory(CLASSES_DIRECTORY.getPath());
+		getField(ConfiguredEmbeddedGlassFishMojo.class, "reactorProjects").set(mojo,
+				Collections.singletonList(module));
+		getField(ConfiguredEmbeddedGlassFishMojo.class, "useReactorClassesDirectories").setBoolean(mojo,
+				true);
+
+		assertEquals(CLASSES_DIRECTORY, mojo.findReactorClassesDirectory(
+				createArtifact("module", Artifact.SCOPE_COMPILE, "jar", null)));
+		assertNull(mojo.findReactorClassesDirectory(
+				createArtifact("other", Artifact.SCOPE_COMPILE, "jar", null)));
+		assertNull(mojo.findReactorClassesDirectory(
+				createArtifact("module", Artifact.SCOPE_TEST, "test-jar", "tests")));
+
+		getField(ConfiguredEmbeddedGlassFishMojo.class, "useReactorClassesDirectories").setBoolean(mojo,
+				false);
+		assertNull(mojo.findReactorClassesDirectory(
+				createArtifact("module", Artifact.SCOPE_COMPILE, "jar", null)));
+	}
+
+
 	@Test
 	public void testConfigurationFull() throws Exception
 	{
@@ -300,6 +333,13 @@ public class ConfiguredEmbeddedGlassFishMojoTest extends MojoTestBase
 	}
 
 
+	private Artifact createArtifact(String artifactId, String scope, String type, String classifier)
+	{
+		return new DefaultArtifact("net.sf.opk", artifactId, "1.0-SNAPSHOT", scope, type, classifier,
+				new DefaultArtifactHandler(type));
+	}
+
+
 	private List<FileRealm> createFileRealms()
 	{
 		FileRealm realm1 = new FileRealm();
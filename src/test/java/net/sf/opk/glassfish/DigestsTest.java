@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class DigestsTest
+{
+	@Test
+	public void testToHex()
+	{
+		assertEquals("", Digests.toHex(new byte[0]));
+		assertEquals("00017f80ff", Digests.toHex(new byte[]{0, 1, 127, -128, -1}));
+	}
+
+
+	@Test
+	public void testDigestFile() throws IOException
+	{
+		Path file = Files.createTempFile(getClass().getSimpleName(), ".txt");
+		try
+		{
+			Files.write(file, "abc".getBytes(StandardCharsets.UTF_8));
+
+			assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digests.digestFile(file));
+			byte[] digest = Digests.createDigest().digest(Files.readAllBytes(file));
+			assertEquals(Digests.toHex(digest), Digests.digestFile(file));
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+}
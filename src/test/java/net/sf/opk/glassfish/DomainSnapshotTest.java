@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class DomainSnapshotTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testSaveAndRestore() throws IOException
+	{
+		Path instanceConfig = Files.createDirectories(directory.resolve("instance/config"));
+		Path domainXml = Files.write(instanceConfig.resolve("domain.xml"),
+		                             "<domain/>".getBytes(StandardCharsets.UTF_8));
+		Files.write(instanceConfig.resolve("keyfile"), "user;hash;role".getBytes(StandardCharsets.UTF_8));
+
+		DomainSnapshot snapshot = new DomainSnapshot(directory.resolve("snapshots/fingerprint").toFile());
+		assertFalse(snapshot.exists());
+		File customKeyFile = snapshot.createKeyFile("custom");
+		assertTrue(customKeyFile.isFile());
+		assertFalse(snapshot.exists());
+
+		assertEquals(Collections.<String, String>emptyMap(), snapshot.loadResourceLedger());
+		snapshot.save(domainXml.toFile(), instanceConfig.toFile(),
+		              Collections.singletonMap("jdbc-resource:jdbc/test", "digest"));
+		assertTrue(snapshot.exists());
+		assertEquals(Collections.singletonMap("jdbc-resource:jdbc/test", "digest"), snapshot.loadResourceLedger());
+		assertEquals("<domain/>", new String(Files.readAllBytes(snapshot.getDomainXml().toPath()),
+		                                     StandardCharsets.UTF_8));
+
+		Path newInstanceConfig = Files.createDirectories(directory.resolve("newInstance/config"));
+		snapshot.restoreKeyFiles(newInstanceConfig.toFile());
+		assertEquals("user;hash;role", new String(Files.readAllBytes(newInstanceConfig.resolve("keyfile")),
+		                                          StandardCharsets.UTF_8));
+		assertFalse(Files.exists(newInstanceConfig.resolve("admin-keyfile")));
+	}
+}
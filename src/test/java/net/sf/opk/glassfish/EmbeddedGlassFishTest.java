@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class EmbeddedGlassFishTest
+{
+	@Test
+	public void testCombineSetCommands()
+	{
+		List<Command> commands = Arrays.asList(new Command("set", "a=1"), new Command("set", "b=2", "c=3"),
+		                                       new Command("create-jdbc-connection-pool", "pool"),
+		                                       new Command("set", "d=4"), new Command("set", "d=5"),
+		                                       new Command("set", "--target", "server", "e=6"),
+		                                       new Command("set", "f=7"));
+
+		List<Command> expected = Arrays.asList(new Command("set", "a=1", "b=2", "c=3"),
+		                                       new Command("create-jdbc-connection-pool", "pool"),
+		                                       new Command("set", "d=4"), new Command("set", "d=5"),
+		                                       new Command("set", "--target", "server", "e=6"),
+		                                       new Command("set", "f=7"));
+		assertEquals(expected, EmbeddedGlassFish.combineSetCommands(commands));
+	}
+
+
+	@Test
+	public void testVersionedName()
+	{
+		assertEquals("webapp:2", EmbeddedGlassFish.versionedName("webapp", 2));
+		assertEquals("webapp:3", EmbeddedGlassFish.versionedName("webapp:2", 3));
+	}
+
+
+	@Test
+	public void testChangedResources() throws IOException
+	{
+		Path resourceFile = Files.createTempFile("resources", ".xml");
+		try
+		{
+			String resource = "<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>";
+			List<ResourceDefinitions> original = Collections.singletonList(ResourceDefinitions.parse(
+					ResourceDefinitionsTest.writeResources(resourceFile, "<jdbc-connection-pool name=\"pool\"/>",
+					                                       resource)));
+			Map<String, String> applied = new HashMap<>(original.get(0).getDigests());
+			List<ResourceDefinitions> changedPool = Collections.singletonList(ResourceDefinitions.parse(
+					ResourceDefinitionsTest.writeResources(resourceFile, "<jdbc-connection-pool name=\"pool\" " +
+					                                                     "steady-pool-size=\"1\"/>", resource)));
+			List<ResourceDefinitions> newResource = Collections.singletonList(ResourceDefinitions.parse(
+					ResourceDefinitionsTest.writeResources(resourceFile, "<jdbc-connection-pool name=\"pool\"/>",
+					                                       resource + "<custom-resource jndi-name=\"custom\"/>")));
+
+			assertEquals(Collections.<String>emptySet(), EmbeddedGlassFish.changedResources(original, applied));
+			assertEquals(new HashSet<>(original.get(0).getKeys()), EmbeddedGlassFish.changedResources(
+					original, Collections.<String, String>emptyMap()));
+			// Recreating the pool also deletes its resource.
+			assertEquals(new HashSet<>(Arrays.asList("jdbc-connection-pool:pool", "jdbc-resource:jdbc/test")),
+			             EmbeddedGlassFish.changedResources(changedPool, applied));
+			assertEquals(Collections.singleton("custom-resource:custom"),
+			             EmbeddedGlassFish.changedResources(newResource, applied));
+		}
+		finally
+		{
+			Files.delete(resourceFile);
+		}
+	}
+}
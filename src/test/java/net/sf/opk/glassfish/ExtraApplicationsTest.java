@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.glassfish.embeddable.GlassFishException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class ExtraApplicationsTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testRedeployOnlyChangedApplications() throws IOException, GlassFishException
+	{
+		File first = Files.write(directory.resolve("first.war"), new byte[]{1}).toFile();
+		File second = Files.write(directory.resolve("second.war"), new byte[]{2}).toFile();
+		EmbeddedGlassFish glassFish = mock(EmbeddedGlassFish.class);
+		when(glassFish.deployApplication(first)).thenReturn("first");
+		when(glassFish.deployApplication(second)).thenReturn("second");
+
+		try (ExtraApplications extraApplications = new ExtraApplications())
+		{
+			extraApplications.deployAll(glassFish, Arrays.asList(first, second));
+			assertEquals(Collections.<String>emptyList(), extraApplications.redeployChanged(glassFish));
+			verify(glassFish, never()).redeployApplication(anyString(), any(File.class));
+
+			Files.write(second.toPath(), new byte[]{3});
+			assertEquals(Collections.singletonList("second"), extraApplications.redeployChanged(glassFish));
+			verify(glassFish).redeployApplication("second", second.getAbsoluteFile());
+
+			// Redeploying updates the ledger.
+			assertEquals(Collections.<String>emptyList(), extraApplications.redeployChanged(glassFish));
+		}
+	}
+
+
+	@Test
+	public void testMissingFilesAreSkipped() throws IOException, GlassFishException
+	{
+		File application = Files.write(directory.resolve("application.war"), new byte[]{1}).toFile();
+		EmbeddedGlassFish glassFish = mock(EmbeddedGlassFish.class);
+		when(glassFish.deployApplication(application)).thenReturn("application");
+
+		try (ExtraApplications extraApplications = new ExtraApplications())
+		{
+			extraApplications.deployAll(glassFish, Collections.singletonList(application));
+			Files.delete(application.toPath());
+			assertEquals(Collections.<String>emptyList(), extraApplications.redeployChanged(glassFish));
+		}
+	}
+
+
+	@Test
+	public void testParentDirectories()
+	{
+		Path parent = Paths.get("target").toAbsolutePath();
+		assertEquals(new LinkedHashSet<>(Collections.singletonList(parent)), ExtraApplications.parentDirectories(
+				Arrays.asList(parent.resolve("first.war"), parent.resolve("second.ear"))));
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ForkedGlassFishWebPluginRunnerTest
+{
+	@Test
+	public void testSplitJvmArgs()
+	{
+		assertEquals(Collections.<String>emptyList(), ForkedGlassFishWebPluginRunner.splitJvmArgs(null));
+		assertEquals(Collections.<String>emptyList(), ForkedGlassFishWebPluginRunner.splitJvmArgs("  "));
+		assertEquals(Arrays.asList("-Xmx2g", "-XX:+UseG1GC"),
+		             ForkedGlassFishWebPluginRunner.splitJvmArgs(" -Xmx2g \t-XX:+UseG1GC\n"));
+	}
+
+
+	@Test
+	public void testProtocol() throws Exception
+	{
+		ForkedGlassFishWebPluginRunner runner = createRunner(new byte[]{1, 2, 3});
+
+		runner.call();
+		runner.getRedeployHook().call();
+		runner.getRedeployHook().call();
+		runner.getShutdownHook().call();
+	}
+
+
+	@Test
+	public void testOutputIsReadBetweenCommands() throws Exception
+	{
+		Path marker = Files.createTempFile(getClass().getSimpleName(), ".marker");
+		Files.delete(marker);
+		ForkedGlassFishWebPluginRunner runner = createRunner(new byte[]{1, 2, 3},
+		                                                     "-D" + FakeGlassFishMain.NOISE_MARKER + '=' + marker);
+
+		runner.call();
+		// The forked JVM can only create the marker when its output (far more than a pipe buffer) has been read.
+		for (int attempt = 0; attempt < 100 && !Files.exists(marker); attempt++)
+		{
+			Thread.sleep(100);
+		}
+		assertTrue(Files.exists(marker));
+		runner.getRedeployHook().call();
+		runner.getShutdownHook().call();
+		Files.delete(marker);
+	}
+
+
+	@Test(expected = IOException.class)
+	public void testFailedStart() throws Exception
+	{
+		createRunner(new byte[0]).call();
+	}
+
+
+	@Test(expected = IOException.class)
+	public void testHangingStart() throws Exception
+	{
+		ForkedGlassFishWebPluginRunner runner = createRunner(new byte[]{1, 2, 3},
+		                                                     "-D" + FakeGlassFishMain.HANG + "=start");
+		runner.setTimeouts(2000, 2000);
+		runner.call();
+	}
+
+
+	@Test
+	public void testHangingShutdown() throws Exception
+	{
+		ForkedGlassFishWebPluginRunner runner = createRunner(new byte[]{1, 2, 3},
+		                                                     "-D" + FakeGlassFishMain.HANG + "=shutdown");
+		runner.setTimeouts(2000, 2000);
+		runner.call();
+		runner.getRedeployHook().call();
+
+		long start = System.currentTimeMillis();
+		try
+		{
+			runner.getShutdownHook().call();
+			fail("The shutdown did not time out");
+		}
+		catch (IOException expected)
+		{
+			// The forked JVM does not respond, and is destroyed.
+		}
+		assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+
+	private ForkedGlassFishWebPluginRunner createRunner(byte[] configurationBytes, String... jvmArgs)
+	{
+		File javaExecutable = new File(new File(System.getProperty("java.home"), "bin"), "java");
+		List<File> classPath = new ArrayList<>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+		{
+			classPath.add(new File(entry));
+		}
+		List<String> allJvmArgs = new ArrayList<>();
+		allJvmArgs.add("-Xmx32m");
+		allJvmArgs.addAll(Arrays.asList(jvmArgs));
+		return new ForkedGlassFishWebPluginRunner(javaExecutable, allJvmArgs, classPath,
+		                                          FakeGlassFishMain.class.getName(), configurationBytes);
+	}
+
+
+	/**
+	 * Replaces {@link ForkedGlassFishMain} in the forked JVM: it fails to start for an empty configuration, and
+	 * otherwise acknowledges every command (with some noise on the standard output in between). If the system property
+	 * {@value #NOISE_MARKER} is set, it writes a lot of noise after starting, and then creates the file it names. If
+	 * the system property {@value #HANG} is set to {@code start} or {@code shutdown}, it hangs at that point.
+	 */
+	public static class FakeGlassFishMain
+	{
+		static final String NOISE_MARKER = "fake.noiseMarker";
+		static final String HANG = "fake.hang";
+
+
+		public static void main(String[] args) throws IOException, InterruptedException
+		{
+			String hang = System.getProperty(HANG, "");
+			DataInputStream commands = new DataInputStream(System.in);
+			byte[] configurationBytes = new byte[commands.readInt()];
+			commands.readFully(configurationBytes);
+			if (configurationBytes.length == 0)
+			{
+				System.out.println(ForkedGlassFishWebPluginRunner.RESPONSE_PREFIX + "failed no configuration");
+				return;
+			}
+			System.out.println("[GC (Allocation Failure) 1024K->512K(2048K), 0.0001 secs]");
+			if ("start".equals(hang))
+			{
+				Thread.sleep(Long.MAX_VALUE);
+			}
+			System.out.println(ForkedGlassFishWebPluginRunner.RESPONSE_PREFIX + "ready");
+			String noiseMarker = System.getProperty(NOISE_MARKER);
+			if (noiseMarker != null)
+			{
+				for (int i = 0; i < 10000; i++)
+				{
+					System.out.println("[GC (Allocation Failure) 1024K->512K(2048K), 0.0001 secs] #" + i);
+				}
+				Files.createFile(Paths.get(noiseMarker));
+			}
+
+			try
+			{
+				while (!ForkedGlassFishWebPluginRunner.SHUTDOWN.equals(commands.readUTF()))
+				{
+					System.out.println(ForkedGlassFishWebPluginRunner.RESPONSE_PREFIX + "done");
+				}
+				if ("shutdown".equals(hang))
+				{
+					Thread.sleep(Long.MAX_VALUE);
+				}
+				System.out.println(ForkedGlassFishWebPluginRunner.RESPONSE_PREFIX + "done");
+			}
+			catch (EOFException e)
+			{
+				// The parent JVM has gone.
+			}
+		}
+	}
+}
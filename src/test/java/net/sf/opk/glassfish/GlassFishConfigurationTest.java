@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class GlassFishConfigurationTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		GlassFishConfiguration configuration = new GlassFishConfiguration(8080, 8443, "/app", new File("webapp"),
+		                                                                  new File("target"));
+		configuration.addLoggingProperties(new File("logging.properties"));
+		configuration.addGlassFishResources(new File("resources.xml"));
+		User user = new User();
+		user.setUsername("user");
+		user.setPassword("p\u00e4ssword");
+		user.setRoles(new String[]{"admin", "user"});
+		User userWithoutRoles = new User();
+		userWithoutRoles.setUsername("guest");
+		userWithoutRoles.setPassword("");
+		FileRealm fileRealm = new FileRealm();
+		fileRealm.setRealmName("realm");
+		fileRealm.setUsers(new User[]{user, userWithoutRoles});
+		fileRealm.setUsersFile(new File("users.csv"));
+		UserGenerator generator = new UserGenerator();
+		generator.setCount(100);
+		generator.setRoles(new String[]{"role"});
+		fileRealm.setGeneratedUsers(generator);
+		configuration.addFileRealms(new FileRealm[]{fileRealm});
+		configuration.addExtraCommands(new Command[]{new Command("set", "a=b"), new Command("list")});
+		configuration.addExtraApplication(new File("other.war"));
+		configuration.addToWebApplicationClassPath(new File("classes"));
+		configuration.addToWebApplicationClassPath(new File("library.jar"));
+		configuration.addWarmUpRequests(new String[]{"/", "/index.jsp"});
+		configuration.configureWarmUp(true, 3, 2);
+		configuration.configureJspPrecompilation(true, 4);
+		configuration.setWarmUpConnectionPools(true);
+		configuration.configureMetrics(new File("metrics.jsonl"), 10);
+		configuration.setRequestLatenciesFile(new File("latencies.properties"));
+		configuration.configureClassLoaderLeakDetection(true, 256);
+		configuration.setVersionedRedeploy(true);
+		configuration.setWatchExtraApplications(true);
+		configuration.setRedeployOnLibraryChange(true);
+		NetworkSettings networkSettings = new NetworkSettings();
+		networkSettings.setMaxThreads(100);
+		networkSettings.setKeepAliveTimeout(-1);
+		configuration.setNetworkSettings(networkSettings);
+		configuration.setDomainSnapshotDirectory(new File("snapshot"));
+		configuration.setInstallRootDirectory(new File("install-root"));
+		configuration.setStartupProfile(StartupProfile.WEB_CDI);
+
+		GlassFishConfiguration copy = GlassFishConfiguration.fromByteArray(configuration.toByteArray());
+
+		assertEquals(8080, copy.getHttpPort());
+		assertEquals((Integer)8443, copy.getHttpsPort());
+		assertEquals("/app", copy.getContextRoot());
+		assertEquals(new File("webapp"), copy.getWebApplicationSourceDirectory());
+		assertEquals(new File("target"), copy.getTempDirectory());
+		assertEquals(configuration.getLoggingProperties(), copy.getLoggingProperties());
+		assertEquals(configuration.getGlassFishResources(), copy.getGlassFishResources());
+		assertEquals(configuration.getFileRealms(), copy.getFileRealms());
+		assertNull(copy.getFileRealms().get(0).getUsers()[1].getRoles());
+		assertEquals(configuration.getExtraCommands(), copy.getExtraCommands());
+		assertEquals(configuration.getExtraApplications(), copy.getExtraApplications());
+		assertEquals(configuration.getWebApplicationClassPath(), copy.getWebApplicationClassPath());
+		assertEquals(Arrays.asList("/", "/index.jsp"), copy.getWarmUpRequests());
+		assertTrue(copy.isWarmUpJsps());
+		assertEquals(3, copy.getWarmUpIterations());
+		assertEquals(2, copy.getWarmUpConcurrency());
+		assertTrue(copy.isPrecompileJsps());
+		assertEquals(4, copy.getPrecompileJspThreads());
+		assertTrue(copy.isWarmUpConnectionPools());
+		assertEquals(new File("metrics.jsonl"), copy.getMetricsFile());
+		assertEquals(10, copy.getMetricsInterval());
+		assertEquals(new File("latencies.properties"), copy.getRequestLatenciesFile());
+		assertTrue(copy.isDetectClassLoaderLeaks());
+		assertEquals(256, copy.getMaxRetainedMetaspace());
+		assertTrue(copy.isVersionedRedeploy());
+		assertTrue(copy.isWatchExtraApplications());
+		assertTrue(copy.isRedeployOnLibraryChange());
+		assertEquals(networkSettings.toAttributes("http-listener"),
+		             copy.getNetworkSettings().toAttributes("http-listener"));
+		assertEquals(new File("snapshot"), copy.getDomainSnapshotDirectory());
+		assertEquals(new File("install-root"), copy.getInstallRootDirectory());
+		assertEquals(StartupProfile.WEB_CDI, copy.getStartupProfile());
+	}
+
+
+	@Test
+	public void testMinimalRoundTrip() throws IOException
+	{
+		GlassFishConfiguration configuration = new GlassFishConfiguration(8080, null, "/", new File("webapp"),
+		                                                                  new File("target"));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		configuration.writeTo(output);
+
+		GlassFishConfiguration copy = GlassFishConfiguration.readFrom(new ByteArrayInputStream(output.toByteArray()));
+
+		assertNull(copy.getHttpsPort());
+		assertEquals(Collections.<FileRealm>emptyList(), copy.getFileRealms());
+		assertEquals(Collections.<String>emptyList(), copy.getWarmUpRequests());
+		assertFalse(copy.isWarmUpJsps());
+		assertFalse(copy.isDetectClassLoaderLeaks());
+		assertFalse(copy.isVersionedRedeploy());
+		assertFalse(copy.isWatchExtraApplications());
+		assertFalse(copy.isRedeployOnLibraryChange());
+		assertNull(copy.getDomainSnapshotDirectory());
+		assertNull(copy.getInstallRootDirectory());
+		assertEquals(StartupProfile.FULL_WEB, copy.getStartupProfile());
+	}
+
+
+	@Test(expected = IOException.class)
+	public void testInvalidData() throws IOException
+	{
+		GlassFishConfiguration.fromByteArray(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+	}
+
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedVersion() throws IOException
+	{
+		byte[] data = new GlassFishConfiguration(8080, null, "/", null, null).toByteArray();
+		data[7]++;
+		GlassFishConfiguration.fromByteArray(data);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.glassfish.embeddable.GlassFishException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sf.opk.glassfish.archive.RealScatteredArchive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class GlassFishWebPluginRunnerTest
+{
+	private Path directory;
+	private Path webResources;
+	private CountDownLatch glassFishStarting;
+	private AtomicBoolean archiveClosed;
+
+
+	@Before
+	public void createDirectories() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+		webResources = Files.createDirectory(directory.resolve("webapp"));
+		glassFishStarting = new CountDownLatch(1);
+		archiveClosed = new AtomicBoolean(false);
+	}
+
+
+	@After
+	public void deleteDirectories() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testArchiveIsBuiltWhileGlassFishStarts() throws Exception
+	{
+		final RealScatteredArchive[] builtArchive = new RealScatteredArchive[1];
+		GlassFishWebPluginRunner runner = new TestRunner(null)
+		{
+			@Override
+			RealScatteredArchive createWebApplicationArchive() throws IOException
+			{
+				builtArchive[0] = super.createWebApplicationArchive();
+				return builtArchive[0];
+			}
+		};
+
+		// The archive is only built once GlassFish is starting, so it is joined after GlassFish has started.
+		try (RealScatteredArchive archive = runner.startGlassFishAndBuildArchive())
+		{
+			assertSame(builtArchive[0], archive);
+		}
+	}
+
+
+	@Test
+	public void testArchiveFailureIsStartupFailure() throws Exception
+	{
+		GlassFishWebPluginRunner runner = new TestRunner(null)
+		{
+			@Override
+			RealScatteredArchive createWebApplicationArchive() throws IOException
+			{
+				awaitGlassFishStarting();
+				throw new IOException("Cannot build the archive");
+			}
+		};
+
+		try
+		{
+			runner.startGlassFishAndBuildArchive();
+			fail("Expected an IOException");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Cannot build the archive", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testArchiveIsClosedWhenGlassFishFailsToStart() throws Exception
+	{
+		GlassFishWebPluginRunner runner = new TestRunner(new GlassFishException("Cannot start GlassFish"));
+
+		try
+		{
+			runner.startGlassFishAndBuildArchive();
+			fail("Expected a GlassFishException");
+		}
+		catch (GlassFishException e)
+		{
+			assertEquals("Cannot start GlassFish", e.getMessage());
+		}
+		assertTrue(archiveClosed.get());
+	}
+
+
+	private void awaitGlassFishStarting() throws IOException
+	{
+		try
+		{
+			if (!glassFishStarting.await(10, TimeUnit.SECONDS))
+			{
+				throw new IOException("GlassFish was not started while building the archive");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+
+	/**
+	 * Runner that does not start GlassFish, and builds an (empty) archive only while GlassFish is starting.
+	 */
+	private class TestRunner extends GlassFishWebPluginRunner
+	{
+		private final GlassFishException startupFailure;
+
+
+		private TestRunner(GlassFishException startupFailure) throws IOException, GlassFishException
+		{
+			super(new GlassFishConfiguration(8080, null, "/", webResources.toFile(), directory.toFile()).toByteArray());
+			this.startupFailure = startupFailure;
+		}
+
+
+		@Override
+		EmbeddedGlassFish startGlassFish() throws GlassFishException
+		{
+			glassFishStarting.countDown();
+			if (startupFailure != null)
+			{
+				throw startupFailure;
+			}
+			return null;
+		}
+
+
+		@Override
+		RealScatteredArchive createWebApplicationArchive() throws IOException
+		{
+			awaitGlassFishStarting();
+			return new RealScatteredArchive(directory, webResources, Collections.<Path>emptyList())
+			{
+				@Override
+				public void close() throws IOException
+				{
+					archiveClosed.set(true);
+					super.close();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class InstallRootTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testKey() throws IOException
+	{
+		File jar = Files.write(directory.resolve("library.jar"), new byte[]{1, 2, 3}).toFile();
+		String key = InstallRoot.key("4.1", Collections.singletonList(jar));
+
+		assertTrue(key.matches("4\\.1-[0-9a-f]{12}"));
+		assertEquals(key, InstallRoot.key("4.1", Collections.singletonList(jar)));
+		assertNotEquals(key, InstallRoot.key("4.1.1", Collections.singletonList(jar)));
+
+		Files.write(jar.toPath(), new byte[]{1, 2, 3, 4});
+		assertNotEquals(key, InstallRoot.key("4.1", Collections.singletonList(jar)));
+		assertNotEquals(key, InstallRoot.key("4.1", Arrays.asList(jar, jar)));
+	}
+
+
+	@Test
+	public void testSaveAndReuseInstanceTemplate() throws IOException
+	{
+		Path instanceConfig = Files.createDirectories(directory.resolve("instance/config"));
+		Files.write(instanceConfig.resolve("domain.xml"), "<domain/>".getBytes(StandardCharsets.UTF_8));
+		Files.write(instanceConfig.resolve("keyfile"), new byte[0]);
+
+		InstallRoot installRoot = new InstallRoot(directory.resolve("roots/4.1-0123456789ab").toFile());
+		assertFalse(installRoot.hasInstanceTemplate());
+		assertTrue(installRoot.getInstallDirectory().isDirectory());
+
+		installRoot.saveInstanceTemplate(directory.resolve("instance").toFile());
+		assertTrue(installRoot.hasInstanceTemplate());
+
+		File instanceRoot = installRoot.createInstanceRoot(directory.resolve("target").toFile());
+		assertEquals("<domain/>", new String(Files.readAllBytes(instanceRoot.toPath().resolve("config/domain.xml")),
+		                                     StandardCharsets.UTF_8));
+		assertTrue(Files.exists(instanceRoot.toPath().resolve("config/keyfile")));
+		assertNotEquals(instanceRoot, installRoot.createInstanceRoot(directory.resolve("target").toFile()));
+	}
+
+
+	@Test
+	public void testExistingInstanceTemplateIsKept() throws IOException
+	{
+		Path instanceConfig = Files.createDirectories(directory.resolve("instance/config"));
+		Files.write(instanceConfig.resolve("domain.xml"), "<domain/>".getBytes(StandardCharsets.UTF_8));
+		InstallRoot installRoot = new InstallRoot(directory.resolve("root").toFile());
+		installRoot.saveInstanceTemplate(directory.resolve("instance").toFile());
+
+		Files.write(instanceConfig.resolve("domain.xml"), "<changed/>".getBytes(StandardCharsets.UTF_8));
+		installRoot.saveInstanceTemplate(directory.resolve("instance").toFile());
+
+		File instanceRoot = installRoot.createInstanceRoot(directory.resolve("target").toFile());
+		assertEquals("<domain/>", new String(Files.readAllBytes(instanceRoot.toPath().resolve("config/domain.xml")),
+		                                     StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class JspPrecompilerTest
+{
+	private HttpServer server;
+	private List<String> requests;
+	private Path webapp;
+	private Path jsp;
+	private JspPrecompiler precompiler;
+
+
+	@Before
+	public void initialize() throws IOException
+	{
+		requests = Collections.synchronizedList(new ArrayList<String>());
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				requests.add(exchange.getRequestURI().toString());
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+
+		webapp = Files.createTempDirectory(getClass().getSimpleName());
+		jsp = Files.write(webapp.resolve("index.jsp"), "<p>1</p>".getBytes(StandardCharsets.UTF_8));
+
+		URL baseUrl = new URL("http", "localhost", server.getAddress().getPort(), "/app");
+		precompiler = new JspPrecompiler(baseUrl, webapp, 2);
+	}
+
+
+	@After
+	public void cleanup() throws IOException
+	{
+		precompiler.close();
+		server.stop(0);
+		Files.delete(jsp);
+		Files.delete(webapp);
+	}
+
+
+	@Test
+	public void testPrecompilation() throws Exception
+	{
+		precompiler.precompileAll();
+		awaitRequests(1);
+		assertEquals("/app/index.jsp?jsp_precompile=true", requests.get(0));
+
+		// Unchanged JSP files are not compiled again.
+		precompiler.pathChanged(webapp, Paths.get("index.jsp"));
+		precompiler.precompileAll();
+		Thread.sleep(500);
+		assertEquals(1, requests.size());
+
+		// Changed JSP files are.
+		Files.write(jsp, "<p>2</p>".getBytes(StandardCharsets.UTF_8));
+		precompiler.pathChanged(webapp, Paths.get("index.jsp"));
+		awaitRequests(2);
+
+		// And after a reset, all JSP files are.
+		precompiler.reset();
+		precompiler.precompileAll();
+		awaitRequests(3);
+	}
+
+
+	private void awaitRequests(int count) throws InterruptedException
+	{
+		for (int i = 0; i < 100 && requests.size() < count; i++)
+		{
+			Thread.sleep(50);
+		}
+		assertEquals(count, requests.size());
+	}
+}
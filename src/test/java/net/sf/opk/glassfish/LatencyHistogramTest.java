@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void testBucketsAreContiguous()
+	{
+		assertEquals(0, LatencyHistogram.bucketIndex(-5));
+		for (long value = 0; value < 100000; value++)
+		{
+			int bucket = LatencyHistogram.bucketIndex(value);
+			assertTrue(value <= LatencyHistogram.bucketUpperBound(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.bucketUpperBound(bucket - 1));
+		}
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+	}
+
+
+	@Test
+	public void testStatistics()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+
+		for (long value = 1; value <= 1000; value++)
+		{
+			histogram.record(value * 1000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMin());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500.0, histogram.getMean(), 0.1);
+		assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 64);
+		assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 64);
+		assertEquals(1000000, histogram.getValueAtPercentile(100));
+	}
+
+
+	@Test
+	public void testAdd()
+	{
+		LatencyHistogram histogram1 = new LatencyHistogram();
+		histogram1.record(10);
+		histogram1.record(20);
+		LatencyHistogram histogram2 = new LatencyHistogram();
+		histogram2.record(5);
+		histogram2.record(30);
+
+		histogram1.add(histogram2);
+
+		assertEquals(4, histogram1.getCount());
+		assertEquals(5, histogram1.getMin());
+		assertEquals(30, histogram1.getMax());
+		assertEquals(16.25, histogram1.getMean(), 0.001);
+		assertEquals(10, histogram1.getValueAtPercentile(50));
+	}
+}
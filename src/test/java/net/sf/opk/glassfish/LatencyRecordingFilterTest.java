@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.jar.JarFile;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class LatencyRecordingFilterTest
+{
+	@Test
+	public void testLatenciesPerServletPath() throws Exception
+	{
+		File resultsFile = File.createTempFile("latencies", ".properties");
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("resultsFile")).thenReturn(resultsFile.getPath());
+		when(filterConfig.getServletContext()).thenReturn(mock(ServletContext.class));
+
+		LatencyRecordingFilter filter = new LatencyRecordingFilter();
+		filter.init(filterConfig);
+		FilterChain chain = mock(FilterChain.class);
+		ServletResponse response = mock(ServletResponse.class);
+		filter.doFilter(request("/index.jsp", null), response, chain);
+		filter.doFilter(request("/index.jsp", null), response, chain);
+		filter.doFilter(request("/api", "/users"), response, chain);
+		filter.doFilter(request("", null), response, chain);
+		// Paths outside ISO 8859-1 must not collide.
+		filter.doFilter(request("/\u65e5\u672c", null), response, chain);
+		filter.doFilter(request("/\u4e2d\u6587", null), response, chain);
+		filter.destroy();
+
+		Properties results = new Properties();
+		try (InputStream input = new FileInputStream(resultsFile))
+		{
+			results.load(input);
+		}
+		assertEquals("2", results.getProperty("/index.jsp.requests"));
+		assertEquals("1", results.getProperty("/api/*.requests"));
+		assertEquals("1", results.getProperty("/.requests"));
+		assertEquals("1", results.getProperty("/\u65e5\u672c.requests"));
+		assertEquals("1", results.getProperty("/\u4e2d\u6587.requests"));
+		assertNotNull(results.getProperty("/index.jsp.latency.p99"));
+		assertEquals(35, results.size());
+		Files.delete(resultsFile.toPath());
+	}
+
+
+	@Test
+	public void testAsyncRequestsAreRecordedWhenComplete() throws Exception
+	{
+		File resultsFile = File.createTempFile("latencies", ".properties");
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("resultsFile")).thenReturn(resultsFile.getPath());
+		when(filterConfig.getServletContext()).thenReturn(mock(ServletContext.class));
+
+		LatencyRecordingFilter filter = new LatencyRecordingFilter();
+		filter.init(filterConfig);
+		HttpServletRequest request = request("/async", null);
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		when(request.isAsyncStarted()).thenReturn(true);
+		when(request.getAsyncContext()).thenReturn(asyncContext);
+		filter.doFilter(request, mock(ServletResponse.class), mock(FilterChain.class));
+
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		verify(asyncContext).addListener(listener.capture());
+		Thread.sleep(20);
+		listener.getValue().onComplete(new AsyncEvent(asyncContext));
+		filter.destroy();
+
+		Properties results = new Properties();
+		try (InputStream input = new FileInputStream(resultsFile))
+		{
+			results.load(input);
+		}
+		assertEquals("1", results.getProperty("/async.requests"));
+		// Recorded on completion, so the latency includes the asynchronous processing.
+		assertTrue(Double.parseDouble(results.getProperty("/async.latency.max")) >= 20);
+		Files.delete(resultsFile.toPath());
+	}
+
+
+	private HttpServletRequest request(String servletPath, String pathInfo)
+	{
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getServletPath()).thenReturn(servletPath);
+		when(request.getPathInfo()).thenReturn(pathInfo);
+		return request;
+	}
+
+
+	@Test
+	public void testWebFragment() throws IOException
+	{
+		Path jarFile = Files.createTempFile("fragment", ".jar");
+		LatencyRecordingFilter.createWebFragment(jarFile, new File("latencies.properties"));
+
+		try (JarFile jar = new JarFile(jarFile.toFile()))
+		{
+			assertNotNull(jar.getEntry("META-INF/web-fragment.xml"));
+			assertNotNull(jar.getEntry("net/sf/opk/glassfish/LatencyRecordingFilter.class"));
+			assertNotNull(jar.getEntry("net/sf/opk/glassfish/LatencyRecordingFilter$AsyncLatencyRecorder.class"));
+			assertNotNull(jar.getEntry("net/sf/opk/glassfish/StripedLatencyHistogram.class"));
+			assertNotNull(jar.getEntry("net/sf/opk/glassfish/LatencyHistogram.class"));
+		}
+		Files.delete(jarFile);
+	}
+
+
+	@Test
+	public void testWebFragmentXmlEscapesTheResultsFile()
+	{
+		String xml = LatencyRecordingFilter.webFragmentXml(new File("/tmp/a&b/latencies.properties"));
+
+		assertTrue(xml.contains("<param-value>/tmp/a&amp;b/latencies.properties</param-value>"));
+		assertTrue(xml.contains("<url-pattern>/*</url-pattern>"));
+	}
+}
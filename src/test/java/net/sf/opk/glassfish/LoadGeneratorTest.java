@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LoadGeneratorTest
+{
+	private HttpServer server;
+	private List<String> requests;
+
+
+	@Before
+	public void startServer() throws IOException
+	{
+		requests = Collections.synchronizedList(new ArrayList<String>());
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+				try (InputStream input = exchange.getRequestBody())
+				{
+					byte[] buffer = new byte[1024];
+					int count;
+					while ((count = input.read(buffer)) != -1)
+					{
+						requestBody.write(buffer, 0, count);
+					}
+				}
+				String path = exchange.getRequestURI().getPath();
+				requests.add(exchange.getRequestMethod() + ' ' + path + ' ' +
+				             new String(requestBody.toByteArray(), StandardCharsets.UTF_8));
+
+				byte[] response = "OK".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(path.endsWith("missing") ? 404 : 200, response.length);
+				try (OutputStream body = exchange.getResponseBody())
+				{
+					body.write(response);
+				}
+			}
+		});
+		server.start();
+	}
+
+
+	@After
+	public void stopServer()
+	{
+		server.stop(0);
+	}
+
+
+	@Test
+	public void testLoad() throws Exception
+	{
+		Scenario page = new Scenario();
+		page.setPath("/page");
+		Scenario post = new Scenario();
+		post.setName("post");
+		post.setMethod("POST");
+		post.setPath("form");
+		post.setBody("a=1");
+		post.setContentType("application/x-www-form-urlencoded");
+		Scenario missing = new Scenario();
+		missing.setPath("/missing");
+		Scenario never = new Scenario();
+		never.setPath("/never");
+		never.setWeight(0);
+
+		URL baseUrl = new URL("http", "localhost", server.getAddress().getPort(), "/app");
+		Map<String, LoadResult> results = new LoadGenerator(baseUrl, Arrays.asList(page, post, missing, never), 4,
+		                                                    500).run();
+
+		assertEquals(Arrays.asList("GET /page", "post", "GET /missing", "GET /never", "total"),
+		             new ArrayList<>(results.keySet()));
+		assertEquals(0, results.get("GET /page").getErrors());
+		assertEquals(0, results.get("post").getErrors());
+		assertEquals(results.get("GET /missing").getRequests(), results.get("GET /missing").getErrors());
+		assertEquals(0, results.get("GET /never").getRequests());
+		assertTrue(results.get("GET /page").getRequests() > 0);
+		assertTrue(results.get("post").getRequests() > 0);
+		assertTrue(results.get("total").getThroughput() > 0);
+
+		LoadResult total = results.get("total");
+		assertEquals(requests.size(), total.getRequests());
+		assertEquals(results.get("GET /missing").getErrors(), total.getErrors());
+		assertEquals(total.getRequests() - total.getErrors(), total.getLatencies().getCount());
+		assertTrue(requests.contains("POST /app/form a=1"));
+		assertTrue(requests.contains("GET /app/page "));
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testScenarioWithoutPath() throws Exception
+	{
+		new LoadGenerator(new URL("http://localhost/"), Arrays.asList(new Scenario()), 1, 1);
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoScenarios() throws Exception
+	{
+		new LoadGenerator(new URL("http://localhost/"), Collections.<Scenario>emptyList(), 1, 1);
+	}
+
+
+	@Test
+	public void testResultProperties()
+	{
+		LoadResult result = new LoadResult("test", 2000000000L);
+		for (int i = 1; i <= 100; i++)
+		{
+			result.getLatencies().record(i * 1000);
+		}
+		result.recordError();
+
+		Map<String, String> properties = new TreeMap<>();
+		result.addTo("test", properties);
+
+		assertEquals("101", properties.get("test.requests"));
+		assertEquals("1", properties.get("test.errors"));
+		assertEquals("50.000", properties.get("test.throughput"));
+		assertEquals("50.500", properties.get("test.latency.mean"));
+		assertEquals("100.000", properties.get("test.latency.max"));
+		assertEquals(Arrays.asList("test.errors", "test.latency.max", "test.latency.mean", "test.latency.p50",
+		                           "test.latency.p90", "test.latency.p99", "test.latency.p999", "test.requests",
+		                           "test.throughput"), new ArrayList<>(properties.keySet()));
+		assertEquals("my_scenario_1", LoadMojo.propertyKey("my scenario/1"));
+	}
+}
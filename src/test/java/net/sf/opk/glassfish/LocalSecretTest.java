@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class LocalSecretTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testSecretIsCreatedOnceAndReused() throws IOException
+	{
+		Path secretFile = directory.resolve("home").resolve("secret");
+		String hmac = LocalSecret.hex(LocalSecret.createMac(secretFile), "user", "password");
+		assertTrue(Files.isRegularFile(secretFile));
+		assertEquals(32, Files.size(secretFile));
+
+		assertEquals(hmac, LocalSecret.hex(LocalSecret.createMac(secretFile), "user", "password"));
+		assertFalse(hmac.equals(LocalSecret.hex(LocalSecret.createMac(secretFile), "user", "passwor", "d")));
+
+		Files.delete(secretFile);
+		assertFalse(hmac.equals(LocalSecret.hex(LocalSecret.createMac(secretFile), "user", "password")));
+	}
+
+
+	@Test
+	public void testSecretIsOwnerOnly() throws IOException
+	{
+		if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+		{
+			return;
+		}
+		Path secretFile = directory.resolve("home").resolve("secret");
+		LocalSecret.createMac(secretFile);
+		assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile)));
+		assertEquals("rwx------",
+		             PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile.getParent())));
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class MetricsRecorderTest
+{
+	@Test
+	public void testParseMonitoringData()
+	{
+		String output = "server.network.http-listener-1.thread-pool.currentthreadsbusy-count = 3\n" +
+		                "server.network.http-listener-1.thread-pool.currentthreadsbusy-description = Busy threads\r\n" +
+		                "server.network.http-listener-1.thread-pool.currentthreadsbusy-lastsampletime = 1400000000\n" +
+		                "server.resources.HsqlConnectionPool.numconnused-current = 0\n" +
+		                "server.resources.HsqlConnectionPool.waitqueuelength-count = 12\n" +
+		                "Command get executed successfully.";
+		SortedMap<String, Long> values = MetricsRecorder.parseMonitoringData(output);
+
+		assertEquals(3, values.size());
+		assertEquals((Long)3L, values.get("server.network.http-listener-1.thread-pool.currentthreadsbusy-count"));
+		assertEquals((Long)0L, values.get("server.resources.HsqlConnectionPool.numconnused-current"));
+		assertEquals((Long)12L, values.get("server.resources.HsqlConnectionPool.waitqueuelength-count"));
+	}
+
+
+	@Test
+	public void testToJson()
+	{
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		metrics.put("jvm.heap.used", 1024L);
+		metrics.put("jvm.cpu.loadaverage", 0.5);
+		metrics.put("odd\"name", 1);
+
+		assertEquals("{\"timestamp\":42,\"jvm.heap.used\":1024,\"jvm.cpu.loadaverage\":0.5,\"odd\\\"name\":1}",
+		             MetricsRecorder.toJson(42, metrics));
+	}
+}
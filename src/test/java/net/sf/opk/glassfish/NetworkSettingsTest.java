@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class NetworkSettingsTest
+{
+	@Test
+	public void testAttributes()
+	{
+		NetworkSettings settings = new NetworkSettings();
+		settings.setMaxThreads(200);
+		settings.setAcceptorThreads(2);
+		settings.setKeepAliveTimeout(30);
+		settings.validate();
+
+		Map<String, Integer> expected = new LinkedHashMap<>();
+		expected.put("thread-pools.thread-pool.http-thread-pool.min-thread-pool-size", null);
+		expected.put("thread-pools.thread-pool.http-thread-pool.max-thread-pool-size", 200);
+		expected.put("thread-pools.thread-pool.http-thread-pool.max-queue-size", null);
+		expected.put("network-config.transports.transport.tcp.acceptor-threads", 2);
+		expected.put("network-config.protocols.protocol.http-listener.http.timeout-seconds", 30);
+		expected.put("network-config.protocols.protocol.http-listener.http.max-connections", null);
+		expected.put("network-config.protocols.protocol.https-listener.http.timeout-seconds", 30);
+		expected.put("network-config.protocols.protocol.https-listener.http.max-connections", null);
+		Map<String, Integer> attributes = settings.toAttributes("http-listener", "https-listener");
+		assertEquals(expected, attributes);
+		assertEquals(Arrays.asList(expected.keySet().toArray()), Arrays.asList(attributes.keySet().toArray()));
+	}
+
+
+	@Test
+	public void testDefaultsAreValid()
+	{
+		new NetworkSettings().validate();
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMinThreadsExceedsMaxThreads()
+	{
+		NetworkSettings settings = new NetworkSettings();
+		settings.setMinThreads(10);
+		settings.setMaxThreads(5);
+		settings.validate();
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidAcceptorThreads()
+	{
+		NetworkSettings settings = new NetworkSettings();
+		settings.setAcceptorThreads(0);
+		settings.validate();
+	}
+}
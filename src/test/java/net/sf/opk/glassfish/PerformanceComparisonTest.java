@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class PerformanceComparisonTest
+{
+	@Test
+	public void testCompare()
+	{
+		Properties baseline = new Properties();
+		baseline.setProperty("page.requests", "1000");
+		baseline.setProperty("page.throughput", "100.0");
+		baseline.setProperty("page.latency.p50", "10.0");
+		baseline.setProperty("page.latency.p99", "20.0");
+		baseline.setProperty("page.latency.max", "30.0");
+		baseline.setProperty("removed.latency.p99", "5.0");
+		Properties results = new Properties();
+		results.setProperty("page.requests", "500");
+		results.setProperty("page.throughput", "90.0");
+		results.setProperty("page.latency.p50", "20.0");
+		results.setProperty("page.latency.p99", "23.5");
+		results.setProperty("page.latency.max", "300.0");
+
+		List<PerformanceComparison.Difference> differences = new PerformanceComparison(baseline, results)
+				.compare(Arrays.asList("p50", "p99"), 15, 5);
+
+		assertEquals(4, differences.size());
+		PerformanceComparison.Difference p50 = differences.get(0);
+		assertEquals("page.latency.p50", p50.getKey());
+		assertEquals(100.0, p50.getChange(), 0.001);
+		assertTrue(p50.isRegression());
+
+		PerformanceComparison.Difference p99 = differences.get(1);
+		assertEquals("page.latency.p99", p99.getKey());
+		assertEquals(17.5, p99.getChange(), 0.001);
+		assertTrue(p99.isRegression());
+
+		PerformanceComparison.Difference throughput = differences.get(2);
+		assertEquals("page.throughput", throughput.getKey());
+		assertEquals(-10.0, throughput.getChange(), 0.001);
+		assertTrue(throughput.isRegression());
+
+		PerformanceComparison.Difference removed = differences.get(3);
+		assertEquals("removed.latency.p99", removed.getKey());
+		assertTrue(removed.isMissing());
+		assertFalse(removed.isRegression());
+	}
+
+
+	@Test
+	public void testWithinThresholds()
+	{
+		Properties baseline = new Properties();
+		baseline.setProperty("total.throughput", "100.0");
+		baseline.setProperty("total.latency.p99", "20.0");
+		Properties results = new Properties();
+		results.setProperty("total.throughput", "120.0");
+		results.setProperty("total.latency.p99", "22.0");
+
+		for (PerformanceComparison.Difference difference : new PerformanceComparison(baseline, results)
+				.compare(Arrays.asList("p99"), 15, 15))
+		{
+			assertFalse(difference.toString(), difference.isRegression());
+		}
+	}
+}
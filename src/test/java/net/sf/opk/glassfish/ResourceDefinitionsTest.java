@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class ResourceDefinitionsTest
+{
+	static final String DOCTYPE =
+			"<!DOCTYPE resources PUBLIC \"-//GlassFish.org//DTD GlassFish Application Server 3.1 Resource " +
+			"Definitions//EN\" \"http://glassfish.org/dtds/glassfish-resources_1_5.dtd\">";
+	private Path resourceFile;
+
+
+	@After
+	public void deleteResourceFile() throws IOException
+	{
+		if (resourceFile != null)
+		{
+			Files.deleteIfExists(resourceFile);
+		}
+	}
+
+
+	static File writeResources(Path file, String pool, String resource) throws IOException
+	{
+		String xml = "<?xml version=\"1.0\"?>\n" + DOCTYPE + "\n<resources>\n" + pool + '\n' + resource +
+		             "\n</resources>";
+		return Files.write(file, xml.getBytes(StandardCharsets.UTF_8)).toFile();
+	}
+
+
+	@Test
+	public void testParse() throws IOException
+	{
+		resourceFile = Files.createTempFile("resources", ".xml");
+		ResourceDefinitions definitions = ResourceDefinitions.parse(writeResources(
+				resourceFile, "<jdbc-connection-pool name=\"pool\" res-type=\"javax.sql.DataSource\">\n" +
+				              "  <property name=\"Url\" value=\"jdbc:hsqldb:mem:TestDB\"/>\n</jdbc-connection-pool>",
+				"<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>"));
+
+		assertEquals(Arrays.asList("jdbc-connection-pool:pool", "jdbc-resource:jdbc/test"), definitions.getKeys());
+		assertEquals("jdbc-connection-pool:pool", definitions.getPoolKey("jdbc-resource:jdbc/test"));
+		assertNull(definitions.getPoolKey("jdbc-connection-pool:pool"));
+		assertSame(definitions, ResourceDefinitions.parse(resourceFile.toFile()));
+	}
+
+
+	@Test
+	public void testDigestIgnoresFormatting() throws IOException
+	{
+		resourceFile = Files.createTempFile("resources", ".xml");
+		ResourceDefinitions definitions = ResourceDefinitions.parse(writeResources(
+				resourceFile, "<jdbc-connection-pool name=\"pool\" res-type=\"javax.sql.DataSource\"/>",
+				"<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>"));
+		ResourceDefinitions reformatted = ResourceDefinitions.parse(writeResources(
+				resourceFile, "<!-- A pool -->\n" +
+				              "<jdbc-connection-pool res-type=\"javax.sql.DataSource\"  name=\"pool\">\n" +
+				              "</jdbc-connection-pool>",
+				"<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>"));
+		ResourceDefinitions changed = ResourceDefinitions.parse(writeResources(
+				resourceFile, "<jdbc-connection-pool name=\"pool\" res-type=\"javax.sql.XADataSource\"/>",
+				"<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>"));
+
+		assertEquals(definitions.getDigests(), reformatted.getDigests());
+		assertNotEquals(definitions.getDigests().get("jdbc-connection-pool:pool"),
+		                changed.getDigests().get("jdbc-connection-pool:pool"));
+		assertEquals(definitions.getDigests().get("jdbc-resource:jdbc/test"),
+		             changed.getDigests().get("jdbc-resource:jdbc/test"));
+	}
+
+
+	@Test
+	public void testWriteSubset() throws IOException
+	{
+		resourceFile = Files.createTempFile("resources", ".xml");
+		ResourceDefinitions definitions = ResourceDefinitions.parse(writeResources(
+				resourceFile, "<jdbc-connection-pool name=\"pool\" res-type=\"javax.sql.DataSource\"/>",
+				"<jdbc-resource pool-name=\"pool\" jndi-name=\"jdbc/test\"/>"));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		definitions.writeSubset(Collections.singleton("jdbc-resource:jdbc/test"), output);
+		String subset = output.toString("UTF-8");
+
+		assertTrue(subset, subset.contains("glassfish-resources_1_5.dtd"));
+		assertTrue(subset, subset.contains("jdbc/test"));
+		assertFalse(subset, subset.contains("jdbc-connection-pool"));
+	}
+
+
+	@Test
+	public void testDeleteCommand()
+	{
+		assertEquals(new Command("delete-jdbc-connection-pool", "--cascade=true", "pool"),
+		             ResourceDefinitions.deleteCommand("jdbc-connection-pool:pool"));
+		assertEquals(new Command("delete-jdbc-resource", "jdbc/test"),
+		             ResourceDefinitions.deleteCommand("jdbc-resource:jdbc/test"));
+		assertNull(ResourceDefinitions.deleteCommand("connector-work-security-map:map"));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class StartupProfileTest
+{
+	@Test
+	public void testNames()
+	{
+		for (StartupProfile profile : StartupProfile.values())
+		{
+			assertEquals(profile, StartupProfile.forName(profile.getName()));
+		}
+		assertEquals("web-cdi", StartupProfile.WEB_CDI.getName());
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownName()
+	{
+		StartupProfile.forName("WEB_CDI");
+	}
+
+
+	@Test
+	public void testServlet()
+	{
+		assertEquals("false",
+		             StartupProfile.SERVLET.getServerSettings().get("admin-service.das-config.autodeploy-enabled"));
+		assertEquals(Arrays.asList("--property", "implicitCdiEnabled=false"),
+		             StartupProfile.SERVLET.getDeployParameters());
+	}
+
+
+	@Test
+	public void testWebCdi()
+	{
+		assertEquals("false",
+		             StartupProfile.WEB_CDI.getServerSettings().get("admin-service.das-config.dynamic-reload-enabled"));
+		assertEquals(Collections.<String>emptyList(), StartupProfile.WEB_CDI.getDeployParameters());
+	}
+
+
+	@Test
+	public void testFullWeb()
+	{
+		assertTrue(StartupProfile.FULL_WEB.getServerSettings().isEmpty());
+		assertEquals(Collections.<String>emptyList(), StartupProfile.FULL_WEB.getDeployParameters());
+	}
+}
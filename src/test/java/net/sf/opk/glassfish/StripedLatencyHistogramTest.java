@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class StripedLatencyHistogramTest
+{
+	@Test
+	public void testSnapshot()
+	{
+		StripedLatencyHistogram histogram = new StripedLatencyHistogram();
+		assertEquals(0, histogram.snapshot().getCount());
+
+		for (long value = 1; value <= 1000; value++)
+		{
+			histogram.record(value * 1000);
+		}
+
+		LatencyHistogram snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000, snapshot.getMin(), 1000 / 64);
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500500.0, snapshot.getMean(), 0.1);
+		assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 / 64);
+		assertEquals(1000000, snapshot.getValueAtPercentile(100));
+	}
+
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException
+	{
+		final StripedLatencyHistogram histogram = new StripedLatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+		{
+			final long value = i + 1;
+			threads.add(new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 10000; j++)
+					{
+						histogram.record(value);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		LatencyHistogram snapshot = histogram.snapshot();
+		assertEquals(80000, snapshot.getCount());
+		assertEquals(4.5, snapshot.getMean(), 0.001);
+		assertEquals(1, snapshot.getMin());
+		assertEquals(8, snapshot.getMax());
+	}
+
+
+	@Test
+	public void testLatenciesAreCapped()
+	{
+		StripedLatencyHistogram histogram = new StripedLatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		LatencyHistogram snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getMin());
+		assertEquals(3600L * 1000 * 1000, snapshot.getMax());
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class UserHasherTest
+{
+	private Path directory;
+
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory(getClass().getSimpleName());
+	}
+
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		InstallRoot.deleteDirectory(directory);
+	}
+
+
+	@Test
+	public void testKeyFileLines() throws IOException
+	{
+		User[] users = users(5000, "secret");
+		List<String> lines = writeKeyFile(new UserHasher(null), realm("realm", users));
+
+		assertEquals(users.length, lines.size());
+		for (int i = 0; i < users.length; i++)
+		{
+			String line = lines.get(i);
+			assertTrue(line, line.startsWith("user" + i + ";{SSHA}"));
+			assertTrue(line, line.endsWith(";users,role" + i));
+		}
+		// Every password is salted differently.
+		assertEquals(users.length, new HashSet<>(lines).size());
+	}
+
+
+	@Test
+	public void testGeneratedUsersAndUsersFile() throws IOException
+	{
+		Path usersFile = Files.write(directory.resolve("users.tsv"), Arrays.asList(
+				"# username, password, roles", "alice\tsecret\tusers\tadmins", "", "bob\tpassword"),
+		                             StandardCharsets.UTF_8);
+		FileRealm fileRealm = realm("realm", users(1, "secret"));
+		fileRealm.setUsersFile(usersFile.toFile());
+		UserGenerator generator = new UserGenerator();
+		generator.setCount(2);
+		generator.setRoles(new String[]{"generated"});
+		fileRealm.setGeneratedUsers(generator);
+
+		List<String> lines = writeKeyFile(new UserHasher(null), fileRealm);
+
+		assertEquals(5, lines.size());
+		assertTrue(lines.get(0).startsWith("user0;"));
+		assertTrue(lines.get(1).startsWith("user0001;") && lines.get(1).endsWith(";generated"));
+		assertTrue(lines.get(2).startsWith("user0002;"));
+		assertTrue(lines.get(3).startsWith("alice;") && lines.get(3).endsWith(";users,admins"));
+		assertTrue(lines.get(4).startsWith("bob;") && lines.get(4).endsWith(";"));
+	}
+
+
+	@Test(expected = IOException.class)
+	public void testInvalidUsersFile() throws IOException
+	{
+		Path usersFile = Files.write(directory.resolve("users.csv"), Arrays.asList("alice"), StandardCharsets.UTF_8);
+		FileRealm fileRealm = realm("realm", null);
+		fileRealm.setUsersFile(usersFile.toFile());
+
+		writeKeyFile(new UserHasher(null), fileRealm);
+	}
+
+
+	@Test
+	public void testCache() throws IOException
+	{
+		Path cacheDirectory = directory.resolve("cache");
+		Path secretFile = directory.resolve("home").resolve("secret");
+		UserHasher hasher = new UserHasher(cacheDirectory.toFile(), secretFile);
+		List<String> lines = writeKeyFile(hasher, realm("realm", users(3, "secret")));
+		assertTrue(Files.isRegularFile(cacheDirectory.resolve("realm.cache")));
+		assertTrue(Files.isRegularFile(secretFile));
+		assertEquals(1, cacheDirectory.toFile().list().length);
+
+		// As salts are random, equal lines can only come from the cache.
+		assertEquals(lines, writeKeyFile(new UserHasher(cacheDirectory.toFile(), secretFile),
+		                                 realm("realm", users(3, "secret"))));
+
+		List<String> changedLines = writeKeyFile(hasher, realm("realm", users(3, "changed")));
+		for (int i = 0; i < 3; i++)
+		{
+			assertFalse(lines.get(i).equals(changedLines.get(i)));
+		}
+		// Only the current users are cached, so the old passwords are hashed again.
+		assertFalse(lines.get(0).equals(writeKeyFile(hasher, realm("realm", users(1, "secret"))).get(0)));
+	}
+
+
+	@Test
+	public void testCacheIsKeyedBySecret() throws IOException
+	{
+		Path secretFile = directory.resolve("home").resolve("secret");
+		UserHasher hasher = new UserHasher(directory.resolve("cache").toFile(), secretFile);
+		List<String> lines = writeKeyFile(hasher, realm("realm", users(3, "secret")));
+
+		// Without the secret, the cache keys cannot be reproduced, so all passwords are hashed again.
+		Files.delete(secretFile);
+		List<String> rehashedLines = writeKeyFile(hasher, realm("realm", users(3, "secret")));
+		for (int i = 0; i < 3; i++)
+		{
+			assertFalse(lines.get(i).equals(rehashedLines.get(i)));
+		}
+	}
+
+
+	private static List<String> writeKeyFile(UserHasher hasher, FileRealm fileRealm) throws IOException
+	{
+		StringWriter keyFile = new StringWriter();
+		hasher.writeKeyFile(fileRealm, keyFile);
+		return Arrays.asList(keyFile.toString().split(System.lineSeparator()));
+	}
+
+
+	private static FileRealm realm(String realmName, User[] users)
+	{
+		FileRealm fileRealm = new FileRealm();
+		fileRealm.setRealmName(realmName);
+		fileRealm.setUsers(users);
+		return fileRealm;
+	}
+
+
+	private static User[] users(int count, String password)
+	{
+		User[] users = new User[count];
+		for (int i = 0; i < count; i++)
+		{
+			users[i] = new User();
+			users[i].setUsername("user" + i);
+			users[i].setPassword(password);
+			users[i].setRoles(new String[]{"users", "role" + i});
+		}
+		return users;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012-2014 Oscar Westra van Holthe - Kind
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package net.sf.opk.glassfish;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class WarmUpTest
+{
+	private HttpServer server;
+	private List<String> requestedPaths;
+
+
+	@Before
+	public void startServer() throws IOException
+	{
+		requestedPaths = Collections.synchronizedList(new ArrayList<String>());
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				requestedPaths.add(exchange.getRequestURI().getPath());
+				byte[] response = "OK".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, response.length);
+				try (OutputStream body = exchange.getResponseBody())
+				{
+					body.write(response);
+				}
+			}
+		});
+		server.start();
+	}
+
+
+	@After
+	public void stopServer()
+	{
+		server.stop(0);
+	}
+
+
+	@Test
+	public void testWarmUp() throws Exception
+	{
+		URL baseUrl = new URL("http", "localhost", server.getAddress().getPort(), "/app");
+		WarmUp warmUp = new WarmUp(baseUrl, Arrays.asList("/index.jsp", "page.jsp", "/index.jsp"), 2, 3);
+
+		Map<String, LatencyHistogram> latencies = warmUp.run();
+
+		assertEquals(Arrays.asList("/index.jsp", "page.jsp"), new ArrayList<>(latencies.keySet()));
+		assertEquals(3, latencies.get("/index.jsp").getCount());
+		assertEquals(3, latencies.get("page.jsp").getCount());
+		assertEquals(6, requestedPaths.size());
+		assertEquals(3, Collections.frequency(requestedPaths, "/app/index.jsp"));
+		assertEquals(3, Collections.frequency(requestedPaths, "/app/page.jsp"));
+	}
+
+
+	@Test
+	public void testFindJsps() throws Exception
+	{
+		Path webapp = Files.createTempDirectory(getClass().getSimpleName());
+		List<Path> files = Arrays.asList(webapp.resolve("index.jsp"), webapp.resolve("sub/page.jspx"),
+		                                 webapp.resolve("sub/fragment.jspf"), webapp.resolve("style.css"),
+		                                 webapp.resolve("WEB-INF/hidden.jsp"), webapp.resolve("META-INF/hidden.jsp"));
+		try
+		{
+			for (Path file : files)
+			{
+				Files.createDirectories(file.getParent());
+				Files.createFile(file);
+			}
+
+			List<String> jsps = WarmUp.findJsps(webapp);
+			Collections.sort(jsps);
+
+			assertEquals(Arrays.asList("/index.jsp", "/sub/page.jspx"), jsps);
+			assertEquals(Collections.<String>emptyList(), WarmUp.findJsps(webapp.resolve("missing")));
+		}
+		finally
+		{
+			for (Path file : files)
+			{
+				Files.delete(file);
+			}
+			for (String directory : new String[]{"sub", "WEB-INF", "META-INF", ""})
+			{
+				Files.delete(webapp.resolve(directory));
+			}
+		}
+	}
+}
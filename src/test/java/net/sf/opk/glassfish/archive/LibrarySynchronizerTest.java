@@ -0,0 +1,152 @@
+package net.sf.opk.glassfish.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class LibrarySynchronizerTest extends FileBasedTestBase
+{
+	private Path source;
+	private Path library;
+	private Path dest;
+	private List<Path> changedPaths;
+
+
+	@Before
+	public void initialize() throws IOException
+	{
+		Path targetDirectory = Files.createDirectories(findTargetDirectory());
+		Path parentDirectory = Files.createTempDirectory(targetDirectory, getClass().getSimpleName());
+		source = Files.createDirectory(parentDirectory.resolve("src"));
+		library = writeJar(source.resolve("library.jar"), "first");
+		dest = Files.createDirectory(parentDirectory.resolve("dest"));
+		changedPaths = new CopyOnWriteArrayList<>();
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void canOnlyCreateForDirectories()
+	{
+		new LibrarySynchronizer(library);
+	}
+
+
+	@Test
+	public void testLibraryIsReplacedWhenRebuilt() throws IOException
+	{
+		LibrarySynchronizer synchronizer = createSynchronizer();
+		Path copy = dest.resolve("library.jar");
+		assertArrayEquals(Files.readAllBytes(library), Files.readAllBytes(copy));
+		assertEquals(Collections.singleton(source.toAbsolutePath()), synchronizer.getSourceDirectories());
+
+		// Unchanged: nothing happens.
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, source, library.getFileName());
+		assertEquals(Collections.<Path>emptyList(), changedPaths);
+
+		// Partially written: not replaced yet.
+		Files.write(library, new byte[]{'P', 'K', 3, 4});
+		touch(library, 1);
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, source, library.getFileName());
+		assertEquals(Collections.<Path>emptyList(), changedPaths);
+		assertTrue(LibrarySynchronizer.isCompleteZipFile(copy));
+
+		// Rebuilt: replaced.
+		writeJar(library, "second");
+		touch(library, 2);
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, source, library.getFileName());
+		assertEquals(Collections.singletonList(library.getFileName()), changedPaths);
+		assertArrayEquals(Files.readAllBytes(library), Files.readAllBytes(copy));
+		assertFalse(Files.exists(dest.resolve(".library.jar.new")));
+	}
+
+
+	@Test
+	public void testOtherFilesAreIgnored() throws IOException
+	{
+		LibrarySynchronizer synchronizer = createSynchronizer();
+		Path other = writeJar(source.resolve("other.jar"), "other");
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_CREATE, source, other.getFileName());
+
+		assertEquals(Collections.<Path>emptyList(), changedPaths);
+		assertFalse(Files.exists(dest.resolve("other.jar")));
+	}
+
+
+	@Test
+	public void testWatchReplacesRebuiltLibraries() throws IOException, InterruptedException
+	{
+		try (LibrarySynchronizer synchronizer = createSynchronizer())
+		{
+			synchronizer.watch();
+			// Subdirectories (like target/classes) are not watched.
+			writeJar(Files.createDirectory(source.resolve("classes")).resolve("nested.jar"), "nested");
+
+			// Write the new library next to it, and move it in place (in one step, so it is replaced only once).
+			Path rebuilt = writeJar(source.resolve("library.jar.tmp"), "second");
+			touch(rebuilt, 2);
+			Files.move(rebuilt, library, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while (changedPaths.isEmpty() && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(50);
+			}
+			assertEquals(Collections.singletonList(library.getFileName()), changedPaths);
+			assertArrayEquals(Files.readAllBytes(library), Files.readAllBytes(dest.resolve("library.jar")));
+		}
+	}
+
+
+	private LibrarySynchronizer createSynchronizer() throws IOException
+	{
+		LibrarySynchronizer synchronizer = new LibrarySynchronizer(dest);
+		synchronizer.addLibrary(library);
+		synchronizer.addChangeListener(new PathChangeListener()
+		{
+			@Override
+			public void pathChanged(Path root, Path path)
+			{
+				changedPaths.add(path);
+			}
+		});
+		return synchronizer;
+	}
+
+
+	private static Path writeJar(Path jar, String content) throws IOException
+	{
+		try (OutputStream output = Files.newOutputStream(jar);
+		     ZipOutputStream zip = new ZipOutputStream(output))
+		{
+			zip.putNextEntry(new ZipEntry("content.txt"));
+			zip.write(content.getBytes("UTF-8"));
+			zip.closeEntry();
+		}
+		return jar;
+	}
+
+
+	private static void touch(Path file, int secondsLater) throws IOException
+	{
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified + secondsLater * 1000L));
+	}
+}
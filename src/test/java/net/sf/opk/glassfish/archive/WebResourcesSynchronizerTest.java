@@ -18,6 +18,9 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 
 public class WebResourcesSynchronizerTest extends FileBasedTestBase
@@ -226,4 +229,24 @@ public class WebResourcesSynchronizerTest extends FileBasedTestBase
 		assertDestinationContents(Arrays.asList(srcDir1, srcWebinf, srcWebinfDir),
 		                          Arrays.asList(srcDir1File, srcWebinfFile1, srcWebinfFile2));
 	}
+
+
+	@Test
+	public void changeListenersAreNotifiedOfCreatedAndModifiedFiles() throws IOException
+	{
+		WebResourcesSynchronizer synchronizer = new WebResourcesSynchronizer(src, dest);
+		PathChangeListener listener = mock(PathChangeListener.class);
+		synchronizer.addChangeListener(listener);
+
+		Path newFile = Files.createFile(src.resolve("newfile"));
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_CREATE, src, src.relativize(newFile));
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, src, src.relativize(srcDir1File));
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, src, src.relativize(srcDir1));
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_MODIFY, src, src.relativize(srcWebinfClassesFile));
+		synchronizer.handle(StandardWatchEventKinds.ENTRY_DELETE, src, src.relativize(srcWebinfFile1));
+
+		verify(listener).pathChanged(src.toAbsolutePath(), src.relativize(newFile));
+		verify(listener).pathChanged(src.toAbsolutePath(), src.relativize(srcDir1File));
+		verifyNoMoreInteractions(listener);
+	}
 }